@@ -0,0 +1,55 @@
+package net.dean.ljgm.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * BenchmarkRunner.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.bench)
+ */
+/**
+ * Runs the benchmarks with the usual JMH command line options. Unless
+ * <code>-rf</code> or <code>-rff</code> is given, the results are written to
+ * <code>jmh-result.json</code> so that runs can be compared by tools. For
+ * instance, <code>java -jar benchmarks.jar Scan -p depth=4</code> runs the
+ * scanning benchmarks on deeper trees.
+ */
+public class BenchmarkRunner {
+
+	/** The file the results are written to by default. */
+	private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            The JMH command line options
+	 * @throws RunnerException
+	 *             If a benchmark failed
+	 */
+	public static void main(String[] args) throws RunnerException {
+		CommandLineOptions cmd;
+		try {
+			cmd = new CommandLineOptions(args);
+		} catch (CommandLineOptionException e) {
+			System.err.println("Error parsing the command line: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(cmd);
+		if (!cmd.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!cmd.getResult().hasValue()) {
+			options.result(DEFAULT_RESULT_FILE);
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,70 @@
+package net.dean.ljgm.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/*
+ * Fixtures.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.bench)
+ */
+/**
+ * Manages the temporary directories the benchmarks work in. What goes in them
+ * is written by the {@link LibraryGenerator}.
+ */
+public class Fixtures {
+
+	/**
+	 * Instantiates a new Fixtures.
+	 */
+	private Fixtures() {
+		// no instances
+	}
+
+	/**
+	 * Creates a temporary directory.
+	 * 
+	 * @param prefix
+	 *            The prefix of its name
+	 * @return The directory
+	 * @throws IOException
+	 *             If it could not be created
+	 */
+	public static File createTempDirectory(String prefix) throws IOException {
+		return Files.createTempDirectory("ljgm-" + prefix).toFile();
+	}
+
+	/**
+	 * Deletes a directory and everything in it.
+	 * 
+	 * @param dir
+	 *            The directory, or <code>null</code>
+	 * @throws IOException
+	 *             If something could not be deleted
+	 */
+	public static void delete(File dir) throws IOException {
+		if (dir == null || !dir.exists()) {
+			return;
+		}
+
+		Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+				Files.delete(d);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
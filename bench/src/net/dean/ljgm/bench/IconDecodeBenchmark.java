@@ -0,0 +1,159 @@
+package net.dean.ljgm.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.image.Image;
+import net.dean.ljgm.LJGMDefaults;
+import net.dean.ljgm.LJGMUtils;
+import net.dean.ljgm.image.IconDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * IconDecodeBenchmark.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.bench)
+ */
+/**
+ * Compares the ways {@link IconDecoder} makes icons: decoding the full image,
+ * decoding it with source subsampling, and decoding it from memory as the
+ * decode stage does. JavaFX needs a display to start, so this benchmark can't
+ * run on a headless machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IconDecodeBenchmark {
+
+	/** The amount of images decoded by every invocation. */
+	private static final int IMAGES = 8;
+
+	/** The formats decoded with source subsampling. */
+	private static final String[] SUBSAMPLE_FORMATS = LJGMDefaults.ICON_SUBSAMPLE_FORMATS.split(",");
+
+	/** The width of the images. */
+	@Param({ "1024", "4000" })
+	public int imageSize;
+
+	/** The directory of the images. */
+	private File directory;
+
+	/** The images. */
+	private File[] images;
+
+	/** The contents of {@link #images}. */
+	private byte[][] contents;
+
+	/**
+	 * Starts JavaFX and writes the images.
+	 * 
+	 * @throws IOException
+	 *             If an image could not be written
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		// Images can't be created until the JavaFX toolkit is running
+		new JFXPanel();
+
+		directory = Fixtures.createTempDirectory("decode");
+		LibraryGenerator generator = new LibraryGenerator(1, 0, 0, IMAGES);
+		generator.setImageSize(imageSize, imageSize * 3 / 4);
+		File root = new File(directory, "images");
+		generator.generate(root, new File(directory, "library.xml"));
+		images = LJGMUtils.getImagesFrom(new File(root, "gallery_0"), false).toArray(new File[0]);
+		contents = new byte[IMAGES][];
+		for (int i = 0; i < IMAGES; i++) {
+			contents[i] = Files.readAllBytes(images[i].toPath());
+		}
+	}
+
+	/**
+	 * Deletes the images.
+	 * 
+	 * @throws IOException
+	 *             If they could not be deleted
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Fixtures.delete(directory);
+	}
+
+	/**
+	 * Decodes the full images and scales them down.
+	 * 
+	 * @return The last icon
+	 */
+	@Benchmark
+	public Image full() {
+		Image img = null;
+		for (File f : images) {
+			img = check(IconDecoder.decodeFull(f, LJGMDefaults.ICON_WIDTH, LJGMDefaults.ICON_HEIGHT, true, true));
+		}
+		return img;
+	}
+
+	/**
+	 * Decodes the images with source subsampling.
+	 * 
+	 * @return The last icon
+	 */
+	@Benchmark
+	public Image subsampled() {
+		Image img = null;
+		for (File f : images) {
+			img = check(IconDecoder.decodeSubsampled(f, LJGMDefaults.ICON_WIDTH, LJGMDefaults.ICON_HEIGHT, true, true));
+		}
+		return img;
+	}
+
+	/**
+	 * Decodes the images from memory, as the decode stage does after they were
+	 * read.
+	 * 
+	 * @return The last icon
+	 */
+	@Benchmark
+	public Image inMemory() {
+		Image img = null;
+		for (int i = 0; i < IMAGES; i++) {
+			img = check(IconDecoder.decode(images[i], ByteBuffer.wrap(contents[i]), LJGMDefaults.ICON_WIDTH,
+					LJGMDefaults.ICON_HEIGHT, true, true, SUBSAMPLE_FORMATS));
+		}
+		return img;
+	}
+
+	/**
+	 * Makes sure an image was decoded, so that failures don't show up as fast
+	 * results.
+	 * 
+	 * @param img
+	 *            The decoded image
+	 * @return The image
+	 */
+	private static Image check(Image img) {
+		if (img == null || img.isError()) {
+			throw new IllegalStateException("Could not decode an image");
+		}
+		return img;
+	}
+}
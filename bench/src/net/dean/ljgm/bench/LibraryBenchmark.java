@@ -0,0 +1,142 @@
+package net.dean.ljgm.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.dean.ljgm.Gallery;
+import net.dean.ljgm.GalleryManager;
+import net.dean.ljgm.logging.LJGMLogger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * LibraryBenchmark.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.bench)
+ */
+/**
+ * Measures loading and saving libraries of different sizes with the
+ * {@link GalleryManager}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LibraryBenchmark {
+
+	/** The amount of galleries in the library. */
+	@Param({ "10", "1000", "100000" })
+	public int galleries;
+
+	/** The directory of the library and its images. */
+	private File directory;
+
+	/** The library file. */
+	private File library;
+
+	/** The manager of the library. */
+	private GalleryManager manager;
+
+	/**
+	 * Writes the library and loads it once.
+	 * 
+	 * @throws IOException
+	 *             If the library could not be written
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Fixtures.createTempDirectory("library");
+		library = new File(directory, "library.xml");
+		// Every gallery has a single small image, since only the library is
+		// read and written
+		LibraryGenerator generator = new LibraryGenerator(galleries, 0, 0, 1);
+		generator.setImageSize(16, 16);
+		generator.generate(new File(directory, "images"), library);
+		manager = new GalleryManager(library, new QuietLogger());
+		if (manager.getGalleries().size() != galleries) {
+			throw new IllegalStateException("Loaded " + manager.getGalleries().size() + " galleries instead of "
+					+ galleries);
+		}
+	}
+
+	/**
+	 * Deletes the library.
+	 * 
+	 * @throws IOException
+	 *             If it could not be deleted
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Fixtures.delete(directory);
+	}
+
+	/**
+	 * Parses the library.
+	 * 
+	 * @return The galleries
+	 */
+	@Benchmark
+	public List<Gallery> load() {
+		return manager.loadFromFile();
+	}
+
+	/**
+	 * Writes the galleries to the library.
+	 * 
+	 * @param unsaved
+	 *            Removes the library before every save
+	 */
+	@Benchmark
+	public void save(Unsaved unsaved) {
+		manager.save();
+	}
+
+	/**
+	 * Removes the library before it is saved, since saving over an existing
+	 * library backs it up first.
+	 */
+	@State(Scope.Benchmark)
+	public static class Unsaved {
+
+		/**
+		 * Removes the library.
+		 * 
+		 * @param benchmark
+		 *            The benchmark whose library is removed
+		 */
+		@Setup(Level.Invocation)
+		public void removeLibrary(LibraryBenchmark benchmark) {
+			if (!benchmark.library.delete()) {
+				throw new IllegalStateException("Could not delete " + benchmark.library.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * A logger that leaves out information messages, of which there is one
+	 * for every gallery loaded.
+	 */
+	private static class QuietLogger extends LJGMLogger {
+
+		@Override
+		public void info(String message) {
+			// Ignored
+		}
+	}
+}
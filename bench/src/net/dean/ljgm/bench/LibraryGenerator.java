@@ -0,0 +1,361 @@
+package net.dean.ljgm.bench;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/*
+ * LibraryGenerator.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.bench)
+ */
+/**
+ * Generates a library of fake galleries for benchmarks and soak tests. Every
+ * gallery is a directory under the image root with a tree of subdirectories
+ * below it, and every directory of the tree holds the same amount of images and
+ * a text file that is not an image. The images are valid JPEG, PNG or GIF files
+ * of a chosen size. A few of them are encoded for every format and copied, so
+ * that libraries of a million images can be written in minutes.<br>
+ * <br>
+ * The library file lists every gallery. Some galleries have a watched source
+ * that includes its subdirectories, the others a source that lists every image
+ * of the gallery, so that both kinds are loaded and resolved. For instance,
+ * 100 galleries with a fan-out of 10, a depth of 2 and 90 files give about a
+ * million images.
+ */
+public class LibraryGenerator {
+
+	/** The amount of different images encoded for every format. */
+	private static final int VARIANTS = 4;
+
+	/** The amount of galleries. */
+	private final int galleries;
+
+	/** The amount of subdirectories of every directory. */
+	private final int fanOut;
+
+	/** The amount of levels below the directory of every gallery. */
+	private final int depth;
+
+	/** The amount of images in every directory. */
+	private final int files;
+
+	/** The width of the images. */
+	private int width;
+
+	/** The height of the images. */
+	private int height;
+
+	/** The formats of the images, which are used in turn. */
+	private String[] formats;
+
+	/** The share of the galleries that have a watched source. */
+	private double watchedFraction;
+
+	/** The seed of the random choices. */
+	private long seed;
+
+	/**
+	 * Instantiates a new LibraryGenerator that writes 64x48 JPEG images, and
+	 * watches half of the galleries.
+	 * 
+	 * @param galleries
+	 *            The amount of galleries
+	 * @param fanOut
+	 *            The amount of subdirectories of every directory
+	 * @param depth
+	 *            The amount of levels below the directory of every gallery
+	 * @param files
+	 *            The amount of images in every directory
+	 */
+	public LibraryGenerator(int galleries, int fanOut, int depth, int files) {
+		this.galleries = galleries;
+		this.fanOut = fanOut;
+		this.depth = depth;
+		this.files = files;
+		this.width = 64;
+		this.height = 48;
+		this.formats = new String[] { "jpg" };
+		this.watchedFraction = 0.5;
+		this.seed = 0;
+	}
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            The directory, the amount of galleries, the fan-out, the
+	 *            depth, the amount of files, and optionally the size of the
+	 *            images, their formats and the share of watched galleries
+	 * @throws IOException
+	 *             If the library could not be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 5) {
+			System.err.println("Usage: LibraryGenerator <directory> <galleries> <fan-out> <depth> <files> "
+					+ "[WIDTHxHEIGHT] [jpg,png,gif] [watched fraction]");
+			System.exit(1);
+		}
+
+		LibraryGenerator generator = new LibraryGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+				Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+		if (args.length > 5) {
+			String[] size = args[5].toLowerCase().split("x");
+			generator.setImageSize(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+		}
+		if (args.length > 6) {
+			generator.setFormats(args[6].split(","));
+		}
+		if (args.length > 7) {
+			generator.setWatchedFraction(Double.parseDouble(args[7]));
+		}
+
+		File dir = new File(args[0]);
+		long start = System.currentTimeMillis();
+		int images = generator.generate(new File(dir, "images"), new File(dir, "library.xml"));
+		System.out.println("Wrote " + images + " images in " + generator.galleries + " galleries to "
+				+ dir.getAbsolutePath() + " in " + (System.currentTimeMillis() - start) / 1000 + "s");
+	}
+
+	/**
+	 * Sets the size of the images.
+	 * 
+	 * @param width
+	 *            The width
+	 * @param height
+	 *            The height
+	 */
+	public void setImageSize(int width, int height) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Sets the formats of the images, which are used in turn.
+	 * 
+	 * @param formats
+	 *            The extensions of the formats. Only jpg, png and gif are
+	 *            supported.
+	 */
+	public void setFormats(String... formats) {
+		if (formats.length == 0) {
+			throw new IllegalArgumentException("No formats given");
+		}
+		for (String format : formats) {
+			if (!format.equals("jpg") && !format.equals("png") && !format.equals("gif")) {
+				throw new IllegalArgumentException("Unsupported format: " + format);
+			}
+		}
+		this.formats = formats.clone();
+	}
+
+	/**
+	 * Sets the share of the galleries that have a watched source. The others
+	 * list their images.
+	 * 
+	 * @param watchedFraction
+	 *            A number from 0 to 1
+	 */
+	public void setWatchedFraction(double watchedFraction) {
+		if (watchedFraction < 0 || watchedFraction > 1) {
+			throw new IllegalArgumentException("Not a fraction: " + watchedFraction);
+		}
+		this.watchedFraction = watchedFraction;
+	}
+
+	/**
+	 * Sets the seed of the random choices, which are the same for the same
+	 * seed.
+	 * 
+	 * @param seed
+	 *            The seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Gets the amount of images every gallery will have.
+	 * 
+	 * @return The amount of images
+	 */
+	public int getImagesPerGallery() {
+		int directories = 0;
+		int level = 1;
+		for (int i = 0; i <= depth; i++) {
+			directories += level;
+			level *= fanOut;
+		}
+		return directories * files;
+	}
+
+	/**
+	 * Writes the images and the library.
+	 * 
+	 * @param root
+	 *            The directory the galleries are created in. It is created if
+	 *            it doesn't exist.
+	 * @param library
+	 *            The library file
+	 * @return The amount of images written
+	 * @throws IOException
+	 *             If a file could not be written
+	 */
+	public int generate(File root, File library) throws IOException {
+		Files.createDirectories(root.toPath());
+		Random random = new Random(seed);
+		byte[][][] images = encodeImages(random);
+
+		int written = 0;
+		try (BufferedWriter out = Files.newBufferedWriter(library.toPath(), StandardCharsets.UTF_8)) {
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<library>\n");
+			for (int g = 0; g < galleries; g++) {
+				File dir = new File(root, "gallery_" + g);
+				Files.createDirectory(dir.toPath());
+				List<String> paths = new ArrayList<>(getImagesPerGallery());
+				writeTree(dir, "", depth, images, random, paths);
+				written += paths.size();
+
+				boolean watched = random.nextDouble() < watchedFraction;
+				writeGallery(out, "Gallery " + g, dir, watched ? null : paths);
+			}
+			out.write("</library>\n");
+		}
+		return written;
+	}
+
+	/**
+	 * Encodes the images that are copied into the tree.
+	 * 
+	 * @param random
+	 *            Decides what the images look like
+	 * @return The encoded images of every format, in the order of
+	 *         {@link #formats}
+	 * @throws IOException
+	 *             If an image could not be encoded
+	 */
+	private byte[][][] encodeImages(Random random) throws IOException {
+		byte[][][] images = new byte[formats.length][VARIANTS][];
+		for (int f = 0; f < formats.length; f++) {
+			for (int v = 0; v < VARIANTS; v++) {
+				BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+				Graphics2D g = img.createGraphics();
+				g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt()), width, height, new Color(random
+						.nextInt())));
+				g.fillRect(0, 0, width, height);
+				// Shapes give the encoders some detail to work with
+				for (int s = 0; s < 50; s++) {
+					g.setColor(new Color(random.nextInt()));
+					g.fillOval(random.nextInt(width), random.nextInt(height), random.nextInt(width / 4 + 1),
+							random.nextInt(height / 4 + 1));
+				}
+				g.dispose();
+
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				if (!ImageIO.write(img, formats[f], bytes)) {
+					throw new IOException("No writer available for " + formats[f]);
+				}
+				images[f][v] = bytes.toByteArray();
+			}
+		}
+		return images;
+	}
+
+	/**
+	 * Writes the images and subdirectories of a directory.
+	 * 
+	 * @param dir
+	 *            The directory
+	 * @param prefix
+	 *            The path of the directory relative to its gallery, ending
+	 *            with a separator unless it is empty
+	 * @param levels
+	 *            The amount of levels below the directory
+	 * @param images
+	 *            The encoded images
+	 * @param random
+	 *            Decides which image is written
+	 * @param paths
+	 *            The list to add the paths of the images to, relative to the
+	 *            gallery
+	 * @throws IOException
+	 *             If a file could not be written
+	 */
+	private void writeTree(File dir, String prefix, int levels, byte[][][] images, Random random, List<String> paths)
+			throws IOException {
+		for (int i = 0; i < files; i++) {
+			int format = i % formats.length;
+			String name = "img_" + i + "." + formats[format];
+			Files.write(new File(dir, name).toPath(), images[format][random.nextInt(VARIANTS)]);
+			paths.add(prefix + name);
+		}
+		// Not an image, so it has to be skipped
+		Files.write(new File(dir, "notes.txt").toPath(), "notes".getBytes(StandardCharsets.UTF_8));
+
+		if (levels > 0) {
+			for (int i = 0; i < fanOut; i++) {
+				String name = "dir_" + i;
+				File sub = new File(dir, name);
+				Files.createDirectory(sub.toPath());
+				writeTree(sub, prefix + name + "/", levels - 1, images, random, paths);
+			}
+		}
+	}
+
+	/**
+	 * Writes a gallery to the library.
+	 * 
+	 * @param out
+	 *            The library
+	 * @param name
+	 *            The name of the gallery
+	 * @param dir
+	 *            The directory of the gallery
+	 * @param paths
+	 *            The images to list, or <code>null</code> to watch the
+	 *            directory and its subdirectories
+	 * @throws IOException
+	 *             If it could not be written
+	 */
+	private static void writeGallery(Writer out, String name, File dir, List<String> paths) throws IOException {
+		out.write("\t<gallery name=\"" + escape(name) + "\">\n");
+		out.write("\t\t<source watched=\"" + (paths == null) + "\" subdirs=\"" + (paths == null) + "\" directory=\""
+				+ escape(dir.getAbsolutePath()) + "\"");
+		if (paths != null) {
+			out.write(" files=\"");
+			for (String path : paths) {
+				out.write(escape(path));
+				out.write(';');
+			}
+			out.write('"');
+		}
+		out.write("/>\n\t</gallery>\n");
+	}
+
+	/**
+	 * Escapes a String to be used in an XML attribute.
+	 * 
+	 * @param s
+	 *            The String
+	 * @return The escaped String
+	 */
+	private static String escape(String s) {
+		return s.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+}
@@ -0,0 +1,196 @@
+package net.dean.ljgm.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.dean.ljgm.task.BufferPool;
+import net.dean.ljgm.task.ImageLoaderQueue;
+import net.dean.ljgm.task.Lane;
+import net.dean.ljgm.task.LaneScheduler;
+import net.dean.ljgm.task.SingleFlight;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * LoaderQueueBenchmark.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.bench)
+ */
+/**
+ * Measures the throughput of the structures every job of the
+ * {@link ImageLoaderQueue} passes through: the lanes it is scheduled in, the
+ * single flight that keeps it from being loaded twice, and the pool of the
+ * buffers it is read into. The queue itself hands its results to the JavaFX
+ * application thread, which would be measured instead.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LoaderQueueBenchmark {
+
+	/**
+	 * A scheduler filled with jobs in random lanes.
+	 */
+	@State(Scope.Thread)
+	public static class Lanes {
+
+		/** The amount of jobs queued at a time. */
+		@Param({ "100", "10000" })
+		public int jobs;
+
+		/** The scheduler. */
+		private LaneScheduler<Object> scheduler;
+
+		/** The jobs, in the order they are queued. */
+		private Object[] items;
+
+		/** The lanes the jobs are queued in. */
+		private Lane[] itemLanes;
+
+		/**
+		 * Creates the jobs.
+		 */
+		@Setup
+		public void setUp() {
+			scheduler = new LaneScheduler<>();
+			items = new Object[jobs];
+			itemLanes = new Lane[jobs];
+			Lane[] lanes = Lane.values();
+			for (int i = 0; i < jobs; i++) {
+				items[i] = new Object();
+				itemLanes[i] = lanes[ThreadLocalRandom.current().nextInt(lanes.length)];
+			}
+		}
+	}
+
+	/**
+	 * The keys shared by the threads that load icons.
+	 */
+	@State(Scope.Benchmark)
+	public static class Flights {
+
+		/** The amount of different icons. */
+		private static final int KEYS = 64;
+
+		/** The single flight. */
+		private SingleFlight<Object, Object> flights;
+
+		/** The keys, which are shared so that threads join each other. */
+		private Object[] keys;
+
+		/** The amount of values the followers were given. */
+		private AtomicInteger followed;
+
+		/**
+		 * Creates the keys.
+		 */
+		@Setup
+		public void setUp() {
+			flights = new SingleFlight<>();
+			keys = new Object[KEYS];
+			for (int i = 0; i < KEYS; i++) {
+				keys[i] = "icon " + i;
+			}
+			followed = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * A pool of buffers shared by the threads that read icons.
+	 */
+	@State(Scope.Benchmark)
+	public static class Buffers {
+
+		/** The pool. */
+		private BufferPool pool;
+
+		/**
+		 * Creates the pool.
+		 */
+		@Setup
+		public void setUp() {
+			pool = new BufferPool(64L * 1024 * 1024);
+		}
+	}
+
+	/**
+	 * Queues every job and takes them out again, promoting every tenth one
+	 * while they are queued.
+	 * 
+	 * @param state
+	 *            The scheduler and its jobs
+	 * @param bh
+	 *            Consumes the entries
+	 */
+	@Benchmark
+	public void schedule(Lanes state, Blackhole bh) {
+		LaneScheduler<Object> scheduler = state.scheduler;
+		for (int i = 0; i < state.jobs; i++) {
+			scheduler.add(state.items[i], state.itemLanes[i]);
+		}
+		for (int i = 0; i < state.jobs; i += 10) {
+			scheduler.promote(state.items[i], Lane.VISIBLE);
+		}
+
+		LaneScheduler.Entry<Object> entry;
+		while ((entry = scheduler.poll()) != null) {
+			bh.consume(entry);
+		}
+	}
+
+	/**
+	 * Joins a random key and completes it when leading, as the loading threads
+	 * do.
+	 * 
+	 * @param state
+	 *            The single flight and its keys
+	 * @return True if this thread led
+	 */
+	@Benchmark
+	@Threads(4)
+	public boolean singleFlight(final Flights state) {
+		Object key = state.keys[ThreadLocalRandom.current().nextInt(Flights.KEYS)];
+		boolean leader = state.flights.join(key, new SingleFlight.Callback<Object>() {
+
+			@Override
+			public void done(Object value) {
+				state.followed.incrementAndGet();
+			}
+		});
+		if (leader) {
+			state.flights.complete(key, key);
+		}
+		return leader;
+	}
+
+	/**
+	 * Takes a buffer for a file of a few megabytes and gives it back.
+	 * 
+	 * @param state
+	 *            The pool
+	 * @return The buffer
+	 */
+	@Benchmark
+	@Threads(4)
+	public ByteBuffer buffers(Buffers state) {
+		ByteBuffer buffer = state.pool.acquire((1 + ThreadLocalRandom.current().nextInt(4)) * 1024 * 1024 - 512);
+		state.pool.release(buffer);
+		return buffer;
+	}
+}
@@ -0,0 +1,130 @@
+package net.dean.ljgm.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.dean.ljgm.LJGMUtils;
+import net.dean.ljgm.ScanCache;
+import net.dean.ljgm.SourceFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * ScanBenchmark.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.bench)
+ */
+/**
+ * Measures how long it takes to find the images of a watched source, once by
+ * walking the whole tree and once with a warm {@link ScanCache}, as when LJGM
+ * is started again without anything having changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ScanBenchmark {
+
+	/** The amount of subdirectories of every directory. */
+	@Param({ "4", "10" })
+	public int fanOut;
+
+	/** The amount of levels below the root of the tree. */
+	@Param({ "2", "3" })
+	public int depth;
+
+	/** The amount of images in every directory. */
+	@Param({ "20" })
+	public int files;
+
+	/** The directory of the tree and its library. */
+	private File directory;
+
+	/** The root of the tree. */
+	private File root;
+
+	/** The file of {@link #cache}. */
+	private File cacheFile;
+
+	/** The cache that was filled by scanning the tree once. */
+	private ScanCache cache;
+
+	/**
+	 * Creates the tree and fills the cache.
+	 * 
+	 * @throws IOException
+	 *             If the tree could not be created
+	 * @throws InterruptedException
+	 *             If interrupted while waiting
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, InterruptedException {
+		directory = Fixtures.createTempDirectory("scan");
+		LibraryGenerator generator = new LibraryGenerator(1, fanOut, depth, files);
+		File images = new File(directory, "images");
+		generator.generate(images, new File(directory, "library.xml"));
+		root = new File(images, "gallery_0");
+		// Directories modified within the last moments are never trusted by
+		// the cache, so let the tree settle first
+		Thread.sleep(2500);
+
+		cacheFile = File.createTempFile("ljgm-scan", ".dat");
+		cache = new ScanCache(cacheFile);
+		List<String> found = LJGMUtils.getRelativeImagesFrom(root, true, SourceFilter.NONE, cache);
+		if (found.size() != generator.getImagesPerGallery()) {
+			throw new IllegalStateException("Found " + found.size() + " images instead of "
+					+ generator.getImagesPerGallery());
+		}
+	}
+
+	/**
+	 * Deletes the tree.
+	 * 
+	 * @throws IOException
+	 *             If it could not be deleted
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Fixtures.delete(directory);
+		if (!cacheFile.delete()) {
+			cacheFile.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Walks the whole tree.
+	 * 
+	 * @return The images
+	 */
+	@Benchmark
+	public List<String> walk() {
+		return LJGMUtils.getRelativeImagesFrom(root, true);
+	}
+
+	/**
+	 * Finds the images with the warm cache, which only checks when every
+	 * directory was modified.
+	 * 
+	 * @return The images
+	 */
+	@Benchmark
+	public List<String> cached() {
+		return LJGMUtils.getRelativeImagesFrom(root, true, SourceFilter.NONE, cache);
+	}
+}
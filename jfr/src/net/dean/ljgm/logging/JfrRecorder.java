@@ -0,0 +1,156 @@
+package net.dean.ljgm.logging;
+
+import java.io.File;
+import java.net.URISyntaxException;
+
+import com.oracle.jrockit.jfr.ContentType;
+import com.oracle.jrockit.jfr.DurationEvent;
+import com.oracle.jrockit.jfr.EventDefinition;
+import com.oracle.jrockit.jfr.EventToken;
+import com.oracle.jrockit.jfr.InstantEvent;
+import com.oracle.jrockit.jfr.InvalidEventDefinitionException;
+import com.oracle.jrockit.jfr.InvalidValueException;
+import com.oracle.jrockit.jfr.Producer;
+import com.oracle.jrockit.jfr.ValueDefinition;
+
+/*
+ * JfrRecorder.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.logging)
+ */
+/**
+ * Writes the {@link PipelineEvents} to the Java Flight Recorder of JDK 7 and
+ * 8. The events are registered by a producer named "LJGM", and show up in
+ * Mission Control under <code>LJGM/Image pipeline</code> and
+ * <code>LJGM/Icon cache</code>. This class is only loaded by name, so LJGM
+ * still runs in JVMs that don't have the classes it uses. It is kept out of
+ * <code>src</code>, so LJGM also compiles without them; this source folder is
+ * only added to builds whose JDK has the API.
+ */
+class JfrRecorder implements PipelineEvents.Recorder {
+
+	/** The token of {@link StageEvent}. */
+	private final EventToken stages;
+
+	/** The token of {@link CacheEvent}. */
+	private final EventToken cache;
+
+	/**
+	 * Instantiates a new JfrRecorder and registers the events.
+	 * 
+	 * @throws URISyntaxException
+	 *             Never, the URI of the producer is constant
+	 * @throws InvalidEventDefinitionException
+	 *             If an event is not defined properly
+	 * @throws InvalidValueException
+	 *             If a value of an event is not defined properly
+	 */
+	JfrRecorder() throws URISyntaxException, InvalidEventDefinitionException, InvalidValueException {
+		Producer producer = new Producer("LJGM", "Lightweight Java Gallery Manager", "http://dean.net/ljgm/");
+		this.stages = producer.addEvent(StageEvent.class);
+		this.cache = producer.addEvent(CacheEvent.class);
+		producer.register();
+	}
+
+	@Override
+	public boolean isEnabled(PipelineEvents.Type type) {
+		return (type.isInstant() ? cache : stages).isEnabled();
+	}
+
+	@Override
+	public PipelineEvents.Span begin(final PipelineEvents.Type type) {
+		if (type.isInstant()) {
+			return new PipelineEvents.Span() {
+
+				@Override
+				public void commit(File file, long size, String gallery) {
+					CacheEvent event = new CacheEvent(cache);
+					event.hit = type == PipelineEvents.Type.CACHE_HIT;
+					event.file = file == null ? null : file.getPath();
+					event.gallery = gallery;
+					event.commit();
+				}
+			};
+		}
+
+		final StageEvent event = new StageEvent(stages);
+		event.begin();
+		return new PipelineEvents.Span() {
+
+			@Override
+			public void commit(File file, long size, String gallery) {
+				event.end();
+				event.stage = type.getName();
+				event.file = file == null ? null : file.getPath();
+				event.size = size;
+				event.gallery = gallery;
+				event.commit();
+			}
+		};
+	}
+
+	/**
+	 * A stage an image or a gallery went through.
+	 */
+	@EventDefinition(path = "LJGM/Image pipeline", name = "Image pipeline", description = "A stage of finding, loading "
+			+ "or showing images", stacktrace = false, thread = true)
+	public static class StageEvent extends DurationEvent {
+
+		/** The name of the stage. */
+		@ValueDefinition(name = "Stage", description = "The stage, for instance Read or Decode")
+		private String stage;
+
+		/** The path of the file. */
+		@ValueDefinition(name = "File", description = "The image, directory or library that was worked on")
+		private String file;
+
+		/** The size of what was worked on. */
+		@ValueDefinition(name = "Size", description = "Bytes read or decoded, images found, the lane waited in, "
+				+ "the width handed over, or galleries saved", contentType = ContentType.None)
+		private long size;
+
+		/** The name of the gallery. */
+		@ValueDefinition(name = "Gallery", description = "The gallery being loaded")
+		private String gallery;
+
+		/**
+		 * Instantiates a new StageEvent.
+		 * 
+		 * @param token
+		 *            The token the event was registered with
+		 */
+		public StageEvent(EventToken token) {
+			super(token);
+		}
+	}
+
+	/**
+	 * A look for an icon in the thumbnail pack.
+	 */
+	@EventDefinition(path = "LJGM/Icon cache", name = "Icon cache", description = "A look for an icon in the "
+			+ "thumbnail pack of a gallery", stacktrace = false, thread = true)
+	public static class CacheEvent extends InstantEvent {
+
+		/** True if the icon was in the pack. */
+		@ValueDefinition(name = "Hit", description = "True if the icon did not have to be decoded")
+		private boolean hit;
+
+		/** The path of the image. */
+		@ValueDefinition(name = "File", description = "The image whose icon was looked for")
+		private String file;
+
+		/** The name of the gallery. */
+		@ValueDefinition(name = "Gallery", description = "The gallery being loaded")
+		private String gallery;
+
+		/**
+		 * Instantiates a new CacheEvent.
+		 * 
+		 * @param token
+		 *            The token the event was registered with
+		 */
+		public CacheEvent(EventToken token) {
+			super(token);
+		}
+	}
+}
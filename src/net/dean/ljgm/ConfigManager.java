@@ -2,9 +2,20 @@ package net.dean.ljgm;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.List;
 
+import javafx.application.Platform;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import net.dean.parsers.ini.AssignmentMode;
 import net.dean.parsers.ini.CommentMode;
 import net.dean.parsers.ini.IniElement;
@@ -31,9 +42,26 @@ public class ConfigManager {
 	private static final IniFile DEFAULT;
 
 	/**
-	 * The {@link IniFile} that will be used to read and write to the file.
+	 * The amount of milliseconds to wait after a change to {@link #SETTINGS_FILE}
+	 * has been detected before reading it. Editors usually write a file in more
+	 * than one step, so this gives them time to finish.
 	 */
-	private IniFile iniFile;
+	private static final long RELOAD_DELAY = 100;
+
+	/**
+	 * The property that holds the {@link IniFile} that will be used to read and
+	 * write to the file. Every time {@link #SETTINGS_FILE} is reloaded, a new
+	 * IniFile is set, so listeners added to this property are notified (on the
+	 * JavaFX application thread) when the settings change.
+	 */
+	private ObjectProperty<IniFile> iniFile;
+
+	/**
+	 * The {@link WatchService} that watches the directory of
+	 * {@link #SETTINGS_FILE} for changes. This is <code>null</code> if the
+	 * settings are not being watched.
+	 */
+	private WatchService watchService;
 
 	/**
 	 * The {@link IniFileTransformer} that will be used to save the.
@@ -46,17 +74,16 @@ public class ConfigManager {
 	 */
 	public ConfigManager() {
 		this.transformer = new IniFileTransformer(AssignmentMode.EQUALS, CommentMode.POUND_SIGN, true, true);
+		this.iniFile = new SimpleObjectProperty<IniFile>(DEFAULT);
 
 		if (SETTINGS_FILE.exists()) {
 			try {
-				this.iniFile = new IniFileFactory().build(SETTINGS_FILE);
+				iniFile.set(new IniFileFactory().build(SETTINGS_FILE));
 			} catch (IOException e) {
 				e.printStackTrace();
 			} catch (IniSyntaxException e) {
 				e.printStackTrace();
 			}
-		} else {
-			this.iniFile = DEFAULT;
 		}
 
 	}
@@ -68,9 +95,135 @@ public class ConfigManager {
 	 * @return The ini file
 	 */
 	public IniFile getIniFile() {
+		return iniFile.get();
+	}
+
+	/**
+	 * Gets the property that holds the current snapshot of the settings. A new
+	 * {@link IniFile} is set every time {@link #SETTINGS_FILE} is changed on
+	 * the disk while it is being watched.
+	 * 
+	 * @return The read only property that holds the current IniFile
+	 * @see #startWatching()
+	 */
+	public ReadOnlyObjectProperty<IniFile> iniFileProperty() {
 		return iniFile;
 	}
 
+	/**
+	 * Starts a background thread that watches {@link #SETTINGS_FILE} for
+	 * changes. When the file is created or modified, it is parsed again and
+	 * the new snapshot is published through {@link #iniFileProperty()} on the
+	 * JavaFX application thread. If the file cannot be parsed, the current
+	 * settings are kept.
+	 */
+	public void startWatching() {
+		if (watchService != null) {
+			// Already watching
+			return;
+		}
+
+		final Path directory = SETTINGS_FILE.getAbsoluteFile().getParentFile().toPath();
+		final Path fileName = SETTINGS_FILE.toPath().getFileName();
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not watch the settings file for changes: ");
+			watchService = null;
+			return;
+		}
+
+		final WatchService service = watchService;
+		Thread watcher = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while (true) {
+					WatchKey key;
+					try {
+						key = service.take();
+					} catch (InterruptedException | ClosedWatchServiceException e) {
+						// stopWatching() was called
+						return;
+					}
+
+					boolean changed = false;
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (fileName.equals(event.context())) {
+							changed = true;
+						}
+					}
+
+					if (changed) {
+						try {
+							Thread.sleep(RELOAD_DELAY);
+						} catch (InterruptedException e) {
+							return;
+						}
+						// Events that came in while waiting are part of the same change
+						key.pollEvents();
+						reload();
+					}
+
+					if (!key.reset()) {
+						LJGM.instance().getLogger().warn("The settings directory is no longer accessible, stopped watching it.");
+						return;
+					}
+				}
+			}
+		}, "Settings watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Stops watching {@link #SETTINGS_FILE} for changes.
+	 */
+	public void stopWatching() {
+		if (watchService == null) {
+			return;
+		}
+
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		watchService = null;
+	}
+
+	/**
+	 * Parses {@link #SETTINGS_FILE} again and publishes the new snapshot on the
+	 * JavaFX application thread. If the file was deleted, the defaults are
+	 * used.
+	 */
+	public void reload() {
+		final IniFile newFile;
+		if (SETTINGS_FILE.exists()) {
+			try {
+				newFile = new IniFileFactory().build(SETTINGS_FILE);
+			} catch (IOException e) {
+				LJGM.instance().getLogger().throwable(e, "Could not reload the settings: ");
+				return;
+			} catch (IniSyntaxException e) {
+				LJGM.instance().getLogger().throwable(e, "Could not reload the settings, keeping the old ones: ");
+				return;
+			}
+		} else {
+			newFile = DEFAULT;
+		}
+
+		Platform.runLater(new Runnable() {
+
+			@Override
+			public void run() {
+				iniFile.set(newFile);
+				LJGM.instance().getLogger().info("Reloaded the settings from " + SETTINGS_FILE.getName());
+			}
+		});
+	}
+
 	/**
 	 * Gets a property from a section.
 	 * 
@@ -82,7 +235,7 @@ public class ConfigManager {
 	 *         section.
 	 */
 	public String get(String sectionName, String key) {
-		return iniFile.getSection(sectionName).get(key);
+		return iniFile.get().getSection(sectionName).get(key);
 	}
 
 	/**
@@ -96,7 +249,7 @@ public class ConfigManager {
 	 *            The value
 	 */
 	public void set(String sectionName, String key, String value) {
-		iniFile.getSection(sectionName).set(key, value);
+		iniFile.get().getSection(sectionName).set(key, value);
 	}
 
 	/**
@@ -127,7 +280,7 @@ public class ConfigManager {
 	 * Saves the file to {@link #SETTINGS_FILE}.
 	 */
 	public void save() {
-		transformer.export(iniFile, SETTINGS_FILE);
+		transformer.export(iniFile.get(), SETTINGS_FILE);
 	}
 
 	// Image properties
@@ -172,6 +325,29 @@ public class ConfigManager {
 		return Double.valueOf(getImageProperty("icon.height"));
 	}
 
+	/**
+	 * Gets the value of <code>icon.subsample_formats</code> under the
+	 * <code>ImageProperties</code> section. If the value is missing,
+	 * {@link LJGMDefaults#ICON_SUBSAMPLE_FORMATS} is used.
+	 * 
+	 * @return The extensions of the formats whose icons are decoded with
+	 *         source subsampling, in lower case.
+	 */
+	public String[] getIconSubsampleFormats() {
+		String formats = getImageProperty("icon.subsample_formats");
+		if (formats == null) {
+			formats = LJGMDefaults.ICON_SUBSAMPLE_FORMATS;
+		}
+
+		List<String> extensions = new ArrayList<>();
+		for (String format : formats.split(",")) {
+			if (!format.trim().isEmpty()) {
+				extensions.add(format.trim().toLowerCase());
+			}
+		}
+		return extensions.toArray(new String[extensions.size()]);
+	}
+
 	/**
 	 * Gets the value of <code>full.smooth</code> under the
 	 * <code>ImageProperties</code> section.
@@ -208,10 +384,37 @@ public class ConfigManager {
 	 * Gets the value of <code>background_threads</code> under the
 	 * <code>AdvancedSettings</code> section.
 	 * 
-	 * @return The value that represents <code>background_threads</code>
+	 * @return The value that represents <code>background_threads</code>, or 0
+	 *         if it is <code>auto</code>
 	 */
 	public int getBackgroundThreads() {
-		return Integer.valueOf(getAdvanced("background_threads"));
+		String threads = getAdvanced("background_threads");
+		return threads == null || threads.equalsIgnoreCase("auto") ? 0 : Integer.valueOf(threads);
+	}
+
+	/**
+	 * Gets the value of <code>duplicate_scan_threads</code> under the
+	 * <code>AdvancedSettings</code> section. If the value is missing,
+	 * {@link LJGMDefaults#DUPLICATE_SCAN_THREADS} is used.
+	 * 
+	 * @return The value that represents <code>duplicate_scan_threads</code>
+	 */
+	public int getDuplicateScanThreads() {
+		String threads = getAdvanced("duplicate_scan_threads");
+		return threads == null ? LJGMDefaults.DUPLICATE_SCAN_THREADS : Integer.valueOf(threads);
+	}
+
+	/**
+	 * Gets the value of <code>stall_threshold</code> under the
+	 * <code>AdvancedSettings</code> section. If the value is missing,
+	 * {@link LJGMDefaults#STALL_THRESHOLD} is used.
+	 * 
+	 * @return The value that represents <code>stall_threshold</code>, in
+	 *         milliseconds, or 0 if stalls aren't watched for
+	 */
+	public int getStallThreshold() {
+		String threshold = getAdvanced("stall_threshold");
+		return threshold == null ? LJGMDefaults.STALL_THRESHOLD : Integer.valueOf(threshold);
 	}
 
 	static {
@@ -226,6 +429,9 @@ public class ConfigManager {
 				.add(new IniElement("icon.width", String.valueOf(LJGMDefaults.ICON_WIDTH), "Maximum icon width."));
 		imageProperties.add(new IniElement("icon.height", String.valueOf(LJGMDefaults.ICON_HEIGHT),
 				"Maximum icon height."));
+		imageProperties.add(new IniElement("icon.subsample_formats", LJGMDefaults.ICON_SUBSAMPLE_FORMATS, new String[] {
+				"Comma separated formats whose icons are decoded at a reduced resolution",
+				"instead of decoding the full image first. Leave empty to disable." }));
 		imageProperties.add(new IniElement("full.smooth", String.valueOf(LJGMDefaults.FULLSCREEN_SMOOTH),
 				"Fullscreen images are rendered smoothly."));
 		imageProperties.add(new IniElement("full.preserve_ratio", String
@@ -238,8 +444,15 @@ public class ConfigManager {
 				"Debug mode is enabled. Enables the DEBUG messages to be outputed", "through the console." }));
 		advanced.add(new IniElement(
 				"background_threads",
-				String.valueOf(LJGMDefaults.BACKGROUND_THREADS),
-				new String[] { "The amount of background threads that will be used to render", "icons. Recommended 5." }));
+				LJGMDefaults.BACKGROUND_THREADS,
+				new String[] { "The amount of background threads that will be used to render",
+						"icons, or auto to tune it for every disk while loading. Recommended auto." }));
+		advanced.add(new IniElement("duplicate_scan_threads", String.valueOf(LJGMDefaults.DUPLICATE_SCAN_THREADS),
+				new String[] { "The maximum amount of files that are read at the same time when",
+						"looking for duplicate images. Use 1 or 2 for spinning disks." }));
+		advanced.add(new IniElement("stall_threshold", String.valueOf(LJGMDefaults.STALL_THRESHOLD), new String[] {
+				"The time in milliseconds the user interface may be blocked for before",
+				"the code blocking it is logged. Use 0 to disable." }));
 		DEFAULT.add(new Section("AdvancedSettings", advanced));
 	}
 }
@@ -4,6 +4,8 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import net.dean.ljgm.logging.PipelineEvents;
+
 /**
  * This class has two purposes: to store a name of a gallery, and to store it's
  * images in the form of a list.
@@ -48,6 +50,39 @@ public class Gallery {
 		this.sources = sources;
 	}
 
+	/**
+	 * Creates a gallery that is not part of the library from a list of files,
+	 * such as the results of a search. Consecutive files in the same directory
+	 * are grouped into one source, so the images of the gallery keep the order
+	 * of the list.
+	 * 
+	 * @param name
+	 *            The name of the gallery
+	 * @param files
+	 *            The images of the gallery
+	 * @return A new Gallery with the given images
+	 */
+	public static Gallery fromFiles(String name, List<File> files) {
+		List<GallerySource> sources = new ArrayList<>();
+		File dir = null;
+		List<String> images = null;
+		for (File f : files) {
+			File parent = f.getAbsoluteFile().getParentFile();
+			if (!parent.equals(dir)) {
+				if (images != null) {
+					sources.add(new GallerySource(dir, images));
+				}
+				dir = parent;
+				images = new ArrayList<>();
+			}
+			images.add(f.getName());
+		}
+		if (images != null) {
+			sources.add(new GallerySource(dir, images));
+		}
+		return new Gallery(name, sources);
+	}
+
 	/**
 	 * Gets the Gallery's images.
 	 * 
@@ -67,15 +102,77 @@ public class Gallery {
 		this.sources = sources;
 	}
 	
+	/**
+	 * Gets the images of all the sources of this Gallery. The sources are
+	 * resolved if they haven't been already, which may walk their directories.
+	 * 
+	 * @return A new list of the images
+	 */
 	public List<File> getAllImages() {
 		List<File> images = new ArrayList<>();
 		for (GallerySource source : sources) {
-			images.addAll(source.getImagesAsFiles());
+			PipelineEvents.Span scan = source.isResolved() ? PipelineEvents.Span.DISABLED : PipelineEvents
+					.begin(PipelineEvents.Type.SCAN);
+			List<File> found = source.getImagesAsFiles();
+			scan.commit(source.getDirectory(), found.size(), name);
+			images.addAll(found);
 		}
 		
 		return images;
 	}
 
+	/**
+	 * Counts the images of all the sources of this Gallery without building a
+	 * list of them. The sources are resolved if they haven't been already.
+	 * 
+	 * @return The amount of images
+	 */
+	public int getImageCount() {
+		int count = 0;
+		for (GallerySource source : sources) {
+			count += source.getImagesAsFiles().size();
+		}
+		return count;
+	}
+
+	/**
+	 * Checks if all the sources of this Gallery have been resolved, meaning
+	 * {@link #getAllImages()} will not touch the file system.
+	 * 
+	 * @return True, if every source is resolved
+	 */
+	public boolean isResolved() {
+		for (GallerySource source : sources) {
+			if (!source.isResolved()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Forgets the images of every source, so they are looked for again the
+	 * next time they are needed.
+	 */
+	public void invalidate() {
+		for (GallerySource source : sources) {
+			source.invalidate();
+		}
+	}
+
+	/**
+	 * Forgets the images of every source like {@link #invalidate()}, and also
+	 * the cached listings of their directories, so every directory is listed
+	 * again.
+	 * 
+	 * @see GallerySource#rescan()
+	 */
+	public void rescan() {
+		for (GallerySource source : sources) {
+			source.rescan();
+		}
+	}
+
 	/**
 	 * Gets the name of the Gallery.
 	 * 
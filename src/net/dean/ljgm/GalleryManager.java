@@ -8,6 +8,7 @@ import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -18,7 +19,9 @@ import javafx.collections.ObservableList;
 
 import javax.xml.transform.stream.StreamResult;
 
+import net.dean.ljgm.logging.LJGMLogger;
 import net.dean.ljgm.logging.LoggingLevel;
+import net.dean.ljgm.logging.PipelineEvents;
 import net.dean.util.CollectionUtils;
 import net.dean.util.file.FileUtil;
 import net.dean.util.file.XMLUtils;
@@ -50,10 +53,32 @@ public class GalleryManager {
 
 	private DateFormat backupDateFormat;
 
+	/** The library file the galleries are loaded from and saved to. */
+	private final File library;
+
+	/** The logger that reports problems with the library. */
+	private final LJGMLogger logger;
+
 	/**
-	 * Instantiates a new GalleryManger.
+	 * Instantiates a new GalleryManger for {@link #CONFIG_XML}.
 	 */
 	public GalleryManager() {
+		this(CONFIG_XML, LJGM.instance().getLogger());
+	}
+
+	/**
+	 * Instantiates a new GalleryManager for a given library file. This lets
+	 * the library be loaded and saved without the rest of the application,
+	 * for instance by benchmarks.
+	 * 
+	 * @param library
+	 *            The library file
+	 * @param logger
+	 *            The logger that reports problems with the library
+	 */
+	public GalleryManager(File library, LJGMLogger logger) {
+		this.library = library;
+		this.logger = logger;
 		this.currentGalleries = loadFromFile();
 		currentGalleries.addListener(new InvalidationListener() {
 			
@@ -68,10 +93,11 @@ public class GalleryManager {
 
 	/**
 	 * Converts the values of {@link #currentGalleries} into XML Elements and
-	 * then outputs the file into the location specified by {@link #CONFIG_XML}.
+	 * then outputs the file into the location specified by {@link #library}.
 	 */
 	public void save() {
-		if (CONFIG_XML.exists()) {
+		PipelineEvents.Span span = PipelineEvents.begin(PipelineEvents.Type.LIBRARY_SAVE);
+		if (library.exists()) {
 			// Create the backup directory
 			File target = new File(System.getProperty("user.dir") + "/backups/libary-" + backupDateFormat.format(new Date())
 					+ ".xml");
@@ -81,7 +107,7 @@ public class GalleryManager {
 			try {
 				created = target.getParentFile().mkdirs();
 			} catch (SecurityException e) {
-				LJGM.instance().getLogger().err("Could not create the backup directory. Make sure you have the permission to write here.");
+				logger.err("Could not create the backup directory. Make sure you have the permission to write here.");
 			}
 			
 			// If a security exception was thrown then this will
@@ -90,15 +116,15 @@ public class GalleryManager {
 				// mkdirs() returned false and the parent file does not exist
 				// We have to include the second test because mkdirs() returns false
 				// if the directory wasn't created or if the directory already exists.
-				LJGM.instance().getLogger().warn("Could not create backup directory!");
+				logger.warn("Could not create backup directory!");
 			} else {
 				try {
-					Files.copy(Paths.get(CONFIG_XML.toURI()), Paths.get(target.toURI()));
+					Files.copy(Paths.get(library.toURI()), Paths.get(target.toURI()));
 				} catch (IOException e) {
 					e.printStackTrace();
 				} catch (SecurityException e) {
 					// This will be thrown if the backup directory already exists but 
-					LJGM.instance().getLogger().err("Could not back up the library. Make sure you have permission to write here.");
+					logger.err("Could not back up the library. Make sure you have permission to write here.");
 				}
 			}
 
@@ -130,6 +156,14 @@ public class GalleryManager {
 					sourceElement.setAttribute("files", files.toString());
 				}
 
+				// Add the rules as <include type="glob">*.jpg</include>
+				for (SourceFilter.Rule rule : source.getRules()) {
+					Element ruleElement = d.createElement(rule.isExclude() ? "exclude" : "include");
+					ruleElement.setAttribute("type", rule.getType().name().toLowerCase());
+					ruleElement.setTextContent(rule.getPattern());
+					sourceElement.appendChild(ruleElement);
+				}
+
 				galleryElem.appendChild(sourceElement);
 			}
 
@@ -137,33 +171,34 @@ public class GalleryManager {
 		}
 		d.appendChild(rootElem);
 
-		XMLUtils.export(d, new StreamResult(CONFIG_XML));
+		XMLUtils.export(d, new StreamResult(library));
+		span.commit(library, currentGalleries.size(), null);
 	}
 
 	/**
-	 * Loads the file {@link #CONFIG_XML} and gets a list of galleries objects
+	 * Loads the file {@link #library} and gets a list of galleries objects
 	 * from it.
 	 * 
 	 * @return A list of galleries objects parsed from the XML.
 	 */
 	public ObservableList<Gallery> loadFromFile() {
-		LJGM.instance().getLogger().info("Loading galleries from the library...");
+		logger.info("Loading galleries from the library...");
 		ObservableList<Gallery> galleries = FXCollections.observableArrayList();
 
 		Document d;
 		try {
-			d = XMLUtils.newDocument(CONFIG_XML);
+			d = XMLUtils.newDocument(library);
 		} catch (IOException e) {
 			// Could not locate the file, bad encoding, etc.
-			LJGM.instance().getLogger().throwable(e, "There was a problem reading the file");
+			logger.throwable(e, "There was a problem reading the file");
 			return galleries;
 		} catch (SAXException e) {
 			// Syntax error
-			LJGM.instance().getLogger().throwable(e, "There was a problem parsing the file");
+			logger.throwable(e, "There was a problem parsing the file");
 			return galleries;
 		}
 
-		LJGM.instance().getLogger().info("The library contains no XML syntax errors.");
+		logger.info("The library contains no XML syntax errors.");
 
 		Element library = d.getDocumentElement();
 
@@ -205,8 +240,10 @@ public class GalleryManager {
 
 				// Obtained the necessary objects to construct a gallery object
 				Gallery g = new Gallery(name, gallerySources);
-				LJGM.instance().getLogger()
-						.info("Parsed a new gallery with " + g.getAllImages().size() + " images: " + g.getName());
+				// Counting the images would resolve the sources, which is left
+				// for when the gallery is needed
+				logger
+						.info("Parsed a new gallery with " + gallerySources.size() + " sources: " + g.getName());
 				galleries.add(g);
 			}
 		}
@@ -261,44 +298,27 @@ public class GalleryManager {
 	 * <code>src</code> attribute to specify the location of the directory that
 	 * the images are in. It can also have a <code>subdirs</code> attribute,
 	 * which specified whether or not to look in the subdirectories of the given
-	 * folder. The default value is <code>false</code>.
+	 * folder. The default value is <code>false</code>. The file system is not
+	 * touched; the source is resolved when its images are first needed.
 	 * 
 	 * 
 	 * @param sourceElement
 	 *            The folder element.
-	 * @return A List of files from the given directory of the folder element's
-	 *         "src" attribute.
+	 * @return A source for the given directory of the folder element's "src"
+	 *         attribute.
 	 */
 	private GallerySource getSourceFrom(Element sourceElement) {
 		final List<String> sourceFiles = new ArrayList<String>();
 		//@formatter:off
 		final Path dir = Paths.get(new File(XMLUtils.getIfHasAttribute(sourceElement, "directory",
-				LJGM.instance().getLogger().format("Could not find the source directory for a source node in gallery "
+				logger.format("Could not find the source directory for a source node in gallery "
 								+ getGalleryElementName((Element) sourceElement.getParentNode()) + ".", LoggingLevel.WARN), System.err)).toURI());
 		//@formatter:on
 		final boolean includeSubdirs = Boolean.parseBoolean(XMLUtils.getIfHasAttribute(sourceElement, "subdirs", "false"));
 		final boolean watched = Boolean.parseBoolean(XMLUtils.getIfHasAttribute(sourceElement, "watched", "false"));
 
+		// The directory is checked when the source is first resolved, not here
 		File f = dir.toFile();
-		if (!f.exists()) {
-			LJGM.instance()
-					.getLogger()
-					.err("No such file or directory in the folder element " + "\""
-							+ getGalleryElementName((Element) sourceElement.getParentNode()) + "\": " + f.getAbsolutePath());
-
-			return null;
-		}
-
-		// Check for non-directories
-		if (!f.isDirectory()) {
-			LJGM.instance()
-					.getLogger()
-					.err("A non-directory was specified in the folder element \""
-							+ getGalleryElementName((Element) sourceElement.getParentNode()) + "\": " + f.getAbsolutePath()
-							+ "; ignoring.");
-
-			return null;
-		}
 
 		if (!watched) {
 			// Get all the files separated by a semicolon
@@ -308,10 +328,53 @@ public class GalleryManager {
 			return new GallerySource(f, CollectionUtils.toCollection(fileArray));
 		}
 
-		// Directory can only be watched at this point, so we walk the file tree
-		sourceFiles.addAll(LJGMUtils.getRelativeImagesFrom(f, includeSubdirs));
+		// Directory can only be watched at this point. It is walked when its
+		// images are first needed.
+		GallerySource source = new GallerySource(f, sourceFiles, watched, includeSubdirs);
+		source.setRules(getRulesFrom(sourceElement));
 
-		return new GallerySource(f, sourceFiles, watched, includeSubdirs);
+		return source;
+	}
+
+	/**
+	 * Gets the include and exclude rules of a source element. Each rule is a
+	 * child element named <code>include</code> or <code>exclude</code> with a
+	 * <code>type</code> attribute of <code>glob</code> (the default),
+	 * <code>regex</code> or <code>name</code>, and the pattern as its text.
+	 * Invalid rules are logged and ignored.
+	 * 
+	 * @param sourceElement
+	 *            The source element
+	 * @return The rules of the source
+	 */
+	private List<SourceFilter.Rule> getRulesFrom(Element sourceElement) {
+		List<SourceFilter.Rule> rules = new ArrayList<>();
+		NodeList children = sourceElement.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			Node n = children.item(i);
+			if (n.getNodeType() != Node.ELEMENT_NODE) {
+				continue;
+			}
+
+			Element ruleElement = (Element) n;
+			boolean exclude = ruleElement.getTagName().equals("exclude");
+			if (!exclude && !ruleElement.getTagName().equals("include")) {
+				continue;
+			}
+
+			try {
+				SourceFilter.RuleType type = SourceFilter.RuleType.valueOf(XMLUtils.getIfHasAttribute(ruleElement, "type",
+						"glob").toUpperCase());
+				SourceFilter.Rule rule = new SourceFilter.Rule(exclude, type, ruleElement.getTextContent().trim());
+				// Compile it now so a bad pattern doesn't break the whole source
+				new SourceFilter(Collections.singletonList(rule));
+				rules.add(rule);
+			} catch (IllegalArgumentException e) {
+				logger.warn("Ignoring an invalid rule in the gallery \""
+						+ getGalleryElementName((Element) sourceElement.getParentNode()) + "\": " + e.getMessage());
+			}
+		}
+		return rules;
 	}
 
 	/**
@@ -329,7 +392,7 @@ public class GalleryManager {
 	}
 
 	/**
-	 * A list of galleries that have been parsed from {@link #CONFIG_XML}.
+	 * A list of galleries that have been parsed from {@link #library}.
 	 * 
 	 * @return A List of parsed {@link Gallery} objects.
 	 */
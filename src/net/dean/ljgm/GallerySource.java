@@ -2,6 +2,7 @@ package net.dean.ljgm;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import net.dean.util.file.FileUtil;
@@ -26,8 +27,11 @@ import net.dean.util.file.FileUtil;
  */
 public class GallerySource {
 
-	/** A list of file names relative to the directory */
-	private List<String> images;
+	/**
+	 * A list of file names relative to the directory, packed into a
+	 * {@link PathTable} because it can hold a very large amount of names.
+	 */
+	private PathTable images;
 
 	/** The directory which serves as the base for this source. */
 	private File directory;
@@ -44,6 +48,22 @@ public class GallerySource {
 	 */
 	private boolean includeSubdirectories;
 
+	/**
+	 * The rules that decide which files are included when this source is
+	 * watched.
+	 */
+	private List<SourceFilter.Rule> rules;
+
+	/** {@link #rules}, compiled when it is first needed. */
+	private SourceFilter filter;
+
+	/**
+	 * The images of this source, found the first time they were asked for, or
+	 * <code>null</code> if they haven't been asked for yet. The directory is
+	 * not touched before then.
+	 */
+	private List<File> resolved;
+
 	/**
 	 * Instantiates a new watched GallerySource with a given directory that
 	 * doesn't include it's subdirectories
@@ -96,11 +116,17 @@ public class GallerySource {
 	 */
 	public GallerySource(File directory, List<String> images, boolean watched, boolean includeSubdirectories) {
 		this.directory = directory;
-		this.images = images;
+		this.images = PathTable.of(images);
 		this.watched = watched;
 		this.includeSubdirectories = includeSubdirectories;
+		this.rules = new ArrayList<>();
 	}
 
+	/**
+	 * Gets the file names of this source, relative to the directory.
+	 * 
+	 * @return An unmodifiable list of the file names
+	 */
 	public List<String> getImages() {
 		return images;
 	}
@@ -110,24 +136,100 @@ public class GallerySource {
 	 * this method will return a list of all the image files directly under the
 	 * directory, and optionally in it's subdirectories too. If the source is
 	 * not watched, then it will return a list of files from the image list
-	 * whose parent directory is this source's directory.
+	 * whose parent directory is this source's directory. The Files of a source
+	 * that is not watched are only created when they are asked for.<br>
+	 * <br>
+	 * The directory is checked and walked the first time this method is
+	 * called, and the result is kept until {@link #invalidate()} is called.
 	 * 
-	 * @return the images This source's images
+	 * @return the images This source's images, which should not be modified
 	 */
-	public List<File> getImagesAsFiles() {
-		final List<File> imageList = new ArrayList<>();
+	public synchronized List<File> getImagesAsFiles() {
+		if (resolved != null) {
+			return resolved;
+		}
 
-		if (!watched) {
+		if (!directory.isDirectory()) {
+			LJGM.instance().getLogger().err("The directory of a source does not exist: " + directory.getAbsolutePath());
+			resolved = Collections.emptyList();
+		} else if (!watched) {
 			// Not watched, so we can use the file names given to us
-			for (String image : images) {
-				imageList.add(new File(directory, image));
-			}
+			resolved = images.asFiles(directory);
 		} else {
 			// Is watched; add all images from directory
-			imageList.addAll(LJGMUtils.getImagesFrom(directory, includeSubdirectories));
+			// Only the directories that changed since the last scan are listed
+			resolved = Collections.unmodifiableList(LJGMUtils.getImagesFrom(directory, includeSubdirectories,
+					getFilter(), LJGM.instance().getScanCache()));
 		}
+		return resolved;
+	}
 
-		return imageList;
+	/**
+	 * Checks if the images of this source have been found already, meaning
+	 * {@link #getImagesAsFiles()} will return right away.
+	 * 
+	 * @return True, if the source has been resolved
+	 */
+	public synchronized boolean isResolved() {
+		return resolved != null;
+	}
+
+	/**
+	 * Forgets the images of this source, so the directory is checked and walked
+	 * again the next time they are asked for.
+	 */
+	public synchronized void invalidate() {
+		resolved = null;
+	}
+
+	/**
+	 * Forgets the images of this source and the listings of its directories in
+	 * the {@link ScanCache}, so the disk is listed again the next time the
+	 * images are asked for. Unlike {@link #invalidate()}, this also finds
+	 * changes that didn't change the modification time of a directory.
+	 */
+	public synchronized void rescan() {
+		if (watched) {
+			LJGM.instance().getScanCache().forget(directory);
+		}
+		invalidate();
+	}
+
+	/**
+	 * Gets the include and exclude rules of this source.
+	 * 
+	 * @return An unmodifiable list of the rules
+	 */
+	public List<SourceFilter.Rule> getRules() {
+		return Collections.unmodifiableList(rules);
+	}
+
+	/**
+	 * Sets the include and exclude rules of this source, which are only used
+	 * if it is watched.
+	 * 
+	 * @param rules
+	 *            The rules. The list is copied.
+	 * @throws IllegalArgumentException
+	 *             If a glob or regular expression is invalid
+	 */
+	public void setRules(List<SourceFilter.Rule> rules) {
+		SourceFilter compiled = new SourceFilter(rules);
+		this.rules = new ArrayList<>(rules);
+		this.filter = compiled;
+		invalidate();
+	}
+
+	/**
+	 * Gets the compiled rules of this source.
+	 * 
+	 * @return The SourceFilter
+	 */
+	public SourceFilter getFilter() {
+		if (filter == null) {
+			filter = new SourceFilter(rules);
+		}
+		return filter;
 	}
 
 	/**
@@ -144,6 +246,7 @@ public class GallerySource {
 		}
 
 		this.directory = directory;
+		invalidate();
 	}
 	
 
@@ -163,7 +266,8 @@ public class GallerySource {
 	 *            the new images
 	 */
 	public void setImages(List<String> images) {
-		this.images = images;
+		this.images = PathTable.of(images);
+		invalidate();
 	}
 
 	/**
@@ -183,6 +287,7 @@ public class GallerySource {
 	 */
 	public void setWatched(boolean watched) {
 		this.watched = watched;
+		invalidate();
 	}
 
 	/**
@@ -204,6 +309,7 @@ public class GallerySource {
 	 */
 	public void setIncludeSubdirectories(boolean includeSubdirectories) {
 		this.includeSubdirectories = includeSubdirectories;
+		invalidate();
 	}
 
 	@Override
@@ -213,6 +319,7 @@ public class GallerySource {
 		result = prime * result + ((directory == null) ? 0 : directory.hashCode());
 		result = prime * result + ((images == null) ? 0 : images.hashCode());
 		result = prime * result + (includeSubdirectories ? 1231 : 1237);
+		result = prime * result + rules.hashCode();
 		result = prime * result + (watched ? 1231 : 1237);
 		return result;
 	}
@@ -238,6 +345,8 @@ public class GallerySource {
 			return false;
 		if (includeSubdirectories != other.includeSubdirectories)
 			return false;
+		if (!rules.equals(other.rules))
+			return false;
 		if (watched != other.watched)
 			return false;
 		return true;
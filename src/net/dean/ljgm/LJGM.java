@@ -1,6 +1,14 @@
 package net.dean.ljgm;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.Scene;
@@ -14,11 +22,18 @@ import javafx.scene.image.Image;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.BorderPaneBuilder;
 import javafx.stage.Stage;
+import net.dean.ljgm.duplicates.PerceptualHashIndex;
 import net.dean.ljgm.gui.GallerySidebar;
 import net.dean.ljgm.gui.StatusBar;
 import net.dean.ljgm.gui.ViewingArea;
 import net.dean.ljgm.gui.gallerycreator.GalleryCreator;
 import net.dean.ljgm.logging.LJGMLogger;
+import net.dean.ljgm.logging.StallWatchdog;
+import net.dean.ljgm.metadata.MetadataIndex;
+import net.dean.ljgm.search.PathIndex;
+import net.dean.ljgm.session.SessionSnapshot;
+import net.dean.ljgm.task.GalleryPrewarmer;
+import net.dean.util.file.FileUtil;
 
 /**
  * This is the main class of the Lightweight Java Gallery Manager project.
@@ -47,6 +62,55 @@ public class LJGM extends Application {
 	/** The {@link ConfigManager} that is used to manage application properties. */
 	private final ConfigManager config = new ConfigManager();
 
+	/**
+	 * The index of the perceptual hashes of every image whose icon has been
+	 * loaded. It is saved to <code>{BASE_DIR}/phash.dat</code>.
+	 */
+	private final PerceptualHashIndex hashIndex = new PerceptualHashIndex(FileUtil.getRelativeFile("/phash.dat"));
+
+	/**
+	 * The index of the metadata of every image that has been scanned, used to
+	 * sort and filter galleries. It is saved to
+	 * <code>{BASE_DIR}/metadata.dat</code>.
+	 */
+	private final MetadataIndex metadataIndex = new MetadataIndex(FileUtil.getRelativeFile("/metadata.dat"));
+
+	/**
+	 * The listings of the directories of watched sources, so scans only list
+	 * the ones that changed. It is saved to <code>{BASE_DIR}/scan.dat</code>.
+	 */
+	private final ScanCache scanCache = new ScanCache(FileUtil.getRelativeFile("/scan.dat"));
+
+	/**
+	 * The location of the snapshot of the last session, which is shown right
+	 * away on the next start. This location points to
+	 * <code>{BASE_DIR}/session.dat</code>.
+	 */
+	private static final File SESSION_FILE = FileUtil.getRelativeFile("/session.dat");
+
+	/**
+	 * Logs the code that blocks the JavaFX application thread, or
+	 * <code>null</code> if it is disabled in the settings.
+	 */
+	private StallWatchdog watchdog;
+
+	/** The index of the paths of every image in the library, for searching. */
+	private final PathIndex searchIndex = new PathIndex();
+
+	/**
+	 * Runs the updates of {@link #searchIndex} one at a time, so they are
+	 * applied in the order the galleries changed in.
+	 */
+	private final ExecutorService searchIndexer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Search indexer");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
 	/**
 	 * The GallerySidebar that is responsible for showing all of the available
 	 * galleries to look through.
@@ -75,12 +139,17 @@ public class LJGM extends Application {
 	 */
 	private Stage ljgmStage;
 
+	/** The ScrollPane that holds the {@link #view}. */
+	private ScrollPane scrollPane;
+
 	/**
 	 * Instantiates a new LJGM object.
 	 */
 	public LJGM() {
 		logger.info("Staring up " + LJGMDefaults.PROJECT_NAME + " v" + LJGMDefaults.PROJECT_VERSION + "...");
 		LJGM.instance = this;
+		// Galleries may be resolved as soon as they are loaded
+		scanCache.load();
 		this.galleryManager = new GalleryManager();
 		this.statusBar = new StatusBar();
 		this.view = new ViewingArea(this);
@@ -95,6 +164,25 @@ public class LJGM extends Application {
 	 */
 	public void refreshGalleries() {
 		gallerySidebar.populate(galleryManager.getGalleries());
+		updateSearchIndex();
+	}
+
+	/**
+	 * Brings the {@link #searchIndex} up to date with the galleries in the
+	 * background.
+	 */
+	private void updateSearchIndex() {
+		final List<Gallery> galleries = new ArrayList<>(galleryManager.getGalleries());
+		searchIndexer.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				long start = System.currentTimeMillis();
+				searchIndex.sync(galleries);
+				logger.debug("Indexed " + searchIndex.size() + " paths for searching in "
+						+ (System.currentTimeMillis() - start) + "ms");
+			}
+		});
 	}
 
 	/*
@@ -109,12 +197,17 @@ public class LJGM extends Application {
 			return;
 		}
 		logger.info("Setting up main stage...");
+		int stallThreshold = config.getStallThreshold();
+		if (stallThreshold > 0) {
+			watchdog = new StallWatchdog(stallThreshold);
+			watchdog.start();
+		}
 		this.ljgmStage = primaryStage;
 		ljgmStage.setTitle(LJGMUtils.generateStageTitle("Starting..."));
 		ljgmStage.getIcons().add(new Image("file:res/favicon.png"));
 
 		// Create the scroll pane for the viewing area
-		ScrollPane sp = ScrollPaneBuilder.create().content(view).hbarPolicy(ScrollBarPolicy.AS_NEEDED)
+		final ScrollPane sp = ScrollPaneBuilder.create().content(view).hbarPolicy(ScrollBarPolicy.AS_NEEDED)
 				.vbarPolicy(ScrollBarPolicy.AS_NEEDED).build();
 
 		// Create the main border pane to host all the components
@@ -125,8 +218,42 @@ public class LJGM extends Application {
 		// @formatter:on
 		ljgmStage.setScene(new Scene(bp, 1000, 500));
 
-		// Select the first gallery
-		if (gallerySidebar.getListView().getItems().size() != 0) {
+		this.scrollPane = sp;
+		view.setScrollPane(sp);
+
+		// Focusing a gallery starts a metadata scan, which waits for the
+		// metadata index, so it is loaded first
+		Thread indexLoader = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				metadataIndex.load();
+				hashIndex.load();
+			}
+		}, "Index loader");
+		indexLoader.setDaemon(true);
+		indexLoader.start();
+
+		// Show what the user was looking at last time, or select the first
+		// gallery
+		final SessionSnapshot snapshot = SessionSnapshot.load(SESSION_FILE);
+		Gallery last = snapshot == null ? null : galleryManager.getGallery(snapshot.getGalleryName());
+		if (last != null) {
+			// The slider may have been moved since the settings were read
+			view.setZoom(snapshot.getIconWidth());
+		}
+		if (last != null && snapshot.getIconWidth() == view.getZoom()) {
+			view.restore(last, snapshot);
+			gallerySidebar.select(last);
+			// Runs after the icons have been added to the grid
+			Platform.runLater(new Runnable() {
+
+				@Override
+				public void run() {
+					sp.setVvalue(snapshot.getScroll());
+				}
+			});
+		} else if (gallerySidebar.getListView().getItems().size() != 0) {
 			view.setFocus(galleryManager.getGallery(gallerySidebar.removeImageCount(gallerySidebar.getListView().getItems()
 					.get(0))));
 			gallerySidebar.getListView().getSelectionModel().select(0);
@@ -136,9 +263,44 @@ public class LJGM extends Application {
 
 		logger.info("Main stage set up.");
 		ljgmStage.show();
+
+		// Apply changes to settings.ini without having to restart
+		config.startWatching();
+
+		// Resolve the galleries while the user isn't waiting on anything, and
+		// only then index them, so nothing walks the same directories twice
+		GalleryPrewarmer.startInBackground(new GalleryPrewarmer(galleryManager.getGalleries(), new Runnable() {
+
+			@Override
+			public void run() {
+				updateSearchIndex();
+			}
+		}));
 		logger.info("Done!");
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javafx.application.Application#stop()
+	 */
+	@Override
+	public void stop() throws Exception {
+		config.stopWatching();
+		if (watchdog != null) {
+			watchdog.stop();
+		}
+		if (scrollPane != null) {
+			SessionSnapshot snapshot = view.createSnapshot(scrollPane);
+			if (snapshot != null) {
+				snapshot.save(SESSION_FILE);
+			}
+		}
+		hashIndex.save();
+		metadataIndex.save();
+		scanCache.save();
+	}
+
 	/**
 	 * Creates the menu bar.
 	 * 
@@ -186,6 +348,60 @@ public class LJGM extends Application {
 		return config;
 	}
 
+	/**
+	 * Gets the index of the perceptual hashes of the loaded images.
+	 * 
+	 * @return The PerceptualHashIndex
+	 */
+	public PerceptualHashIndex getPerceptualHashIndex() {
+		return hashIndex;
+	}
+
+	/**
+	 * Gets the listings of the directories of watched sources.
+	 * 
+	 * @return The ScanCache
+	 */
+	public ScanCache getScanCache() {
+		return scanCache;
+	}
+
+	/**
+	 * Gets the index of the metadata of the scanned images.
+	 * 
+	 * @return The MetadataIndex
+	 */
+	public MetadataIndex getMetadataIndex() {
+		return metadataIndex;
+	}
+
+	/**
+	 * Gets the index of the paths of the images in the library.
+	 * 
+	 * @return The PathIndex
+	 */
+	public PathIndex getSearchIndex() {
+		return searchIndex;
+	}
+
+	/**
+	 * Gets the ViewingArea.
+	 * 
+	 * @return the ViewingArea
+	 */
+	public ViewingArea getViewingArea() {
+		return view;
+	}
+
+	/**
+	 * Gets the GallerySidebar.
+	 * 
+	 * @return the GallerySidebar
+	 */
+	public GallerySidebar getGallerySidebar() {
+		return gallerySidebar;
+	}
+
 	/**
 	 * Gets the StatusBar.
 	 * 
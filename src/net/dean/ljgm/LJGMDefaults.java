@@ -53,11 +53,58 @@ public class LJGMDefaults {
 	 */
 	public static final double ICON_HEIGHT = 100.0;
 
+	/**
+	 * The sizes icons are decoded and cached at. An icon is shown from the
+	 * smallest tier that is at least as large as the zoom of the gallery grid.
+	 */
+	public static final int[] ICON_TIERS = { 64, 128, 256, 512 };
+
+	/**
+	 * The smallest size icons can be zoomed to. This is equal to
+	 * {@value #MIN_ZOOM}
+	 */
+	public static final double MIN_ZOOM = 48;
+
+	/**
+	 * The largest size icons can be zoomed to. This is equal to
+	 * {@value #MAX_ZOOM}
+	 */
+	public static final double MAX_ZOOM = 512;
+
+	/**
+	 * The default value that defines which image formats are decoded with
+	 * source subsampling when making an icon. This is equal to
+	 * <code>"jpg,jpeg"</code>.
+	 */
+	public static final String ICON_SUBSAMPLE_FORMATS = "jpg,jpeg";
+
 	/**
 	 * The default value that defines amount of background threads that will be
-	 * available to load images. This is equal to {@value #BACKGROUND_THREADS}
+	 * available to load images. This is equal to {@value #BACKGROUND_THREADS},
+	 * which tunes the amount for every storage device while images load.
+	 */
+	public static final String BACKGROUND_THREADS = "auto";
+
+	/**
+	 * The default value that defines the maximum amount of files that are read
+	 * at the same time when looking for duplicates. This is equal to
+	 * {@value #DUPLICATE_SCAN_THREADS}
+	 */
+	public static final int DUPLICATE_SCAN_THREADS = 2;
+
+	/**
+	 * The default value that defines the maximum amount of bits that may
+	 * differ between the perceptual hashes of two images for them to be
+	 * considered similar. This is equal to {@value #SIMILARITY_THRESHOLD}
+	 */
+	public static final int SIMILARITY_THRESHOLD = 10;
+
+	/**
+	 * The default value that defines the time, in milliseconds, the user
+	 * interface may be blocked for before the code blocking it is logged. This
+	 * is equal to {@value #STALL_THRESHOLD}
 	 */
-	public static final int BACKGROUND_THREADS = 5;
+	public static final int STALL_THRESHOLD = 250;
 
 	/**
 	 * The name of the project. It's value is {@value #PROJECT_NAME}.
@@ -101,9 +101,35 @@ public class LJGMUtils {
 		return adjust(img, widthHeight, widthHeight);
 	}
 
+	/**
+	 * Gets the tier icons are loaded at to be shown at a given size.
+	 * 
+	 * @param size
+	 *            The size the icons are shown at
+	 * @return The smallest of {@link LJGMDefaults#ICON_TIERS} that is at least
+	 *         as large as the size, or the largest one
+	 */
+	public static int getIconTier(double size) {
+		for (int tier : LJGMDefaults.ICON_TIERS) {
+			if (tier >= size) {
+				return tier;
+			}
+		}
+		return LJGMDefaults.ICON_TIERS[LJGMDefaults.ICON_TIERS.length - 1];
+	}
+
 	public static List<File> getImagesFrom(File dir, final boolean includeSubdirectories) {
+		return getImagesFrom(dir, includeSubdirectories, SourceFilter.NONE);
+	}
+
+	public static List<File> getImagesFrom(File dir, final boolean includeSubdirectories, SourceFilter filter) {
+		return getImagesFrom(dir, includeSubdirectories, filter, null);
+	}
+
+	public static List<File> getImagesFrom(File dir, final boolean includeSubdirectories, SourceFilter filter,
+			ScanCache cache) {
 		List<File> files = new ArrayList<File>();
-		List<String> relative = getRelativeImagesFrom(dir, includeSubdirectories);
+		List<String> relative = getRelativeImagesFrom(dir, includeSubdirectories, filter, cache);
 
 		for (String relativeImage : relative) {
 			files.add(new File(dir, relativeImage));
@@ -113,15 +139,75 @@ public class LJGMUtils {
 	}
 
 	public static List<String> getRelativeImagesFrom(final File dir, final boolean includeSubdirectories) {
+		return getRelativeImagesFrom(dir, includeSubdirectories, SourceFilter.NONE);
+	}
+
+	/**
+	 * Gets the images in a directory, relative to it. Directories that are
+	 * excluded by the filter are skipped without being walked.
+	 * 
+	 * @param dir
+	 *            The directory
+	 * @param includeSubdirectories
+	 *            Whether to include the images in its subdirectories
+	 * @param filter
+	 *            Decides which directories are walked and which files are
+	 *            included
+	 * @return The paths of the images, relative to the directory
+	 */
+	public static List<String> getRelativeImagesFrom(final File dir, final boolean includeSubdirectories,
+			final SourceFilter filter) {
+		return getRelativeImagesFrom(dir, includeSubdirectories, filter, null);
+	}
+
+	/**
+	 * Gets the images in a directory, relative to it. Directories that are
+	 * excluded by the filter are skipped without being walked. If a
+	 * {@link ScanCache} is given, only the directories that changed since they
+	 * were last scanned are listed.
+	 * 
+	 * @param dir
+	 *            The directory
+	 * @param includeSubdirectories
+	 *            Whether to include the images in its subdirectories
+	 * @param filter
+	 *            Decides which directories are walked and which files are
+	 *            included
+	 * @param cache
+	 *            The cache of directory listings, or <code>null</code> to list
+	 *            every directory
+	 * @return The paths of the images, relative to the directory
+	 */
+	public static List<String> getRelativeImagesFrom(final File dir, final boolean includeSubdirectories,
+			final SourceFilter filter, ScanCache cache) {
 		if (!dir.isDirectory()) {
 			throw new IllegalArgumentException("Not a directory: " + dir.getAbsolutePath());
 		}
 
+		if (cache != null) {
+			List<String> images = new ArrayList<>();
+			scan(cache, dir.toPath(), "", includeSubdirectories, filter, images);
+			return images;
+		}
+
 		final Path directory = Paths.get(dir.toURI());
 		final List<String> images = new ArrayList<>();
 
 		try {
 			Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path subdirectory, BasicFileAttributes attrs) {
+					if (subdirectory.equals(directory)) {
+						return FileVisitResult.CONTINUE;
+					}
+
+					// Don't walk directories whose files would be ignored anyway
+					if (!includeSubdirectories || filter.isExcludedDirectory(directory.relativize(subdirectory))) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
 				@Override
 				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
 					// Check if it's a file first because
@@ -134,7 +220,8 @@ public class LJGMUtils {
 						// subdirectories, include all files. If not,
 						// only include images directly under the directory.
 						boolean shouldUse = (includeSubdirectories) ? true : file.getParent().equals(directory);
-						if (LJGMUtils.isSupportedImage(file.toFile()) && shouldUse) {
+						if (shouldUse && LJGMUtils.isSupportedImage(file.toFile())
+								&& filter.accepts(directory.relativize(file))) {
 							// Get the relative path of the visiting file
 							images.add(dir.toURI().relativize(file.toUri()).getPath());
 						}
@@ -156,6 +243,54 @@ public class LJGMUtils {
 		return images;
 	}
 
+	/**
+	 * Adds the images of a directory to a list using a {@link ScanCache}, and
+	 * then those of its subdirectories.
+	 * 
+	 * @param cache
+	 *            The cache of directory listings
+	 * @param dir
+	 *            The directory
+	 * @param prefix
+	 *            The path of the directory relative to the source, ending with
+	 *            a slash, or an empty string for the source itself
+	 * @param includeSubdirectories
+	 *            Whether to include the images in its subdirectories
+	 * @param filter
+	 *            Decides which directories are walked and which files are
+	 *            included
+	 * @param images
+	 *            The list to add the relative paths of the images to
+	 */
+	private static void scan(ScanCache cache, Path dir, String prefix, boolean includeSubdirectories,
+			SourceFilter filter, List<String> images) {
+		ScanCache.Listing listing;
+		try {
+			listing = cache.list(dir);
+		} catch (IOException e) {
+			System.err.println("Failed to visit file: " + dir.toAbsolutePath() + ": " + e.getLocalizedMessage());
+			return;
+		}
+
+		for (String name : listing.getImages()) {
+			String relative = prefix + name;
+			if (filter.accepts(Paths.get(relative))) {
+				images.add(relative);
+			}
+		}
+
+		if (!includeSubdirectories) {
+			return;
+		}
+		for (String name : listing.getDirectories()) {
+			String relative = prefix + name;
+			// Don't walk directories whose files would be ignored anyway
+			if (!filter.isExcludedDirectory(Paths.get(relative))) {
+				scan(cache, dir.resolve(name), relative + "/", includeSubdirectories, filter, images);
+			}
+		}
+	}
+
 	public static void makeModal(Stage parent, Stage child, Modality modality) {
 		child.initOwner(parent);
 		child.initModality(modality);
@@ -0,0 +1,303 @@
+package net.dean.ljgm;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ * PathTable.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm)
+ */
+/**
+ * This class is an immutable list of relative paths that takes up much less
+ * memory than a list of Strings when the paths share directories, which is
+ * what the file lists of a {@link GallerySource} are like.<br>
+ * <br>
+ * The paths are front coded in a single byte array: they are split into
+ * blocks of {@link #BLOCK_SIZE} paths, the first path of every block is stored
+ * whole, and every other path is stored as the length of the prefix it shares
+ * with the path before it followed by the rest of the path. Only the offset of
+ * each block is kept, so a path is found by decoding at most one block. The
+ * Strings are created when they are asked for, and {@link #asFiles(File)}
+ * creates Files the same way.
+ */
+public class PathTable extends AbstractList<String> {
+
+	/** The amount of paths in every block. */
+	private static final int BLOCK_SIZE = 16;
+
+	/** The charset the paths are encoded with. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** An empty PathTable. */
+	public static final PathTable EMPTY = new PathTable(new String[0]);
+
+	/** The encoded paths. */
+	private final byte[] data;
+
+	/** The offset of every block in {@link #data}. */
+	private final int[] blocks;
+
+	/** The amount of paths. */
+	private final int size;
+
+	/** The length of the longest encoded path. */
+	private final int maxLength;
+
+	/**
+	 * Instantiates a new PathTable.
+	 * 
+	 * @param paths
+	 *            The paths, in the order they are kept in
+	 */
+	private PathTable(String[] paths) {
+		this.size = paths.length;
+		this.blocks = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+
+		byte[] out = new byte[64];
+		int length = 0;
+		int longest = 0;
+		byte[] previous = null;
+		for (int i = 0; i < size; i++) {
+			byte[] path = paths[i].getBytes(UTF_8);
+			longest = Math.max(longest, path.length);
+
+			int shared = 0;
+			if (i % BLOCK_SIZE == 0) {
+				blocks[i / BLOCK_SIZE] = length;
+			} else {
+				int max = Math.min(previous.length, path.length);
+				while (shared < max && previous[shared] == path[shared]) {
+					shared++;
+				}
+			}
+
+			// Prefix length, suffix length and the suffix itself
+			int needed = length + 10 + path.length - shared;
+			if (needed > out.length) {
+				out = Arrays.copyOf(out, Math.max(needed, out.length * 2));
+			}
+			length = writeVarInt(out, length, shared);
+			length = writeVarInt(out, length, path.length - shared);
+			System.arraycopy(path, shared, out, length, path.length - shared);
+			length += path.length - shared;
+			previous = path;
+		}
+
+		this.data = Arrays.copyOf(out, length);
+		this.maxLength = longest;
+	}
+
+	/**
+	 * Creates a PathTable from a list of paths.
+	 * 
+	 * @param paths
+	 *            The paths. If this is already a PathTable it is returned as it
+	 *            is.
+	 * @return A new PathTable with the paths in the same order
+	 */
+	public static PathTable of(List<String> paths) {
+		if (paths instanceof PathTable) {
+			return (PathTable) paths;
+		}
+		if (paths == null || paths.isEmpty()) {
+			return EMPTY;
+		}
+		return new PathTable(paths.toArray(new String[paths.size()]));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractList#get(int)
+	 */
+	@Override
+	public String get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+
+		Decoder decoder = new Decoder(index - index % BLOCK_SIZE);
+		while (decoder.next < index) {
+			decoder.advance();
+		}
+		return decoder.advance();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Iterates through the paths, decoding each one only once.
+	 * 
+	 * @see java.util.AbstractList#iterator()
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+
+			private final Decoder decoder = new Decoder(0);
+
+			@Override
+			public boolean hasNext() {
+				return decoder.next < size;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return decoder.advance();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Gets a view of the paths as Files. Every File is created when it is asked
+	 * for, and is not kept.
+	 * 
+	 * @param directory
+	 *            The directory the paths are relative to
+	 * @return A list of Files backed by this PathTable
+	 */
+	public List<File> asFiles(final File directory) {
+		return new AbstractList<File>() {
+
+			@Override
+			public File get(int index) {
+				return new File(directory, PathTable.this.get(index));
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Iterator<File> iterator() {
+				final Iterator<String> paths = PathTable.this.iterator();
+				return new Iterator<File>() {
+
+					@Override
+					public boolean hasNext() {
+						return paths.hasNext();
+					}
+
+					@Override
+					public File next() {
+						return new File(directory, paths.next());
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Gets the amount of bytes the encoded paths take up.
+	 * 
+	 * @return The length of the byte array holding the paths
+	 */
+	public int getEncodedSize() {
+		return data.length;
+	}
+
+	/**
+	 * Writes an unsigned variable length integer, seven bits per byte.
+	 * 
+	 * @param out
+	 *            The array to write to
+	 * @param offset
+	 *            Where to write
+	 * @param value
+	 *            The value, at least 0
+	 * @return The offset after the integer
+	 */
+	private static int writeVarInt(byte[] out, int offset, int value) {
+		while ((value & ~0x7F) != 0) {
+			out[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Decodes paths one after another, starting at the beginning of a block.
+	 */
+	private class Decoder {
+
+		/** The bytes of the last path that was decoded. */
+		private final byte[] path = new byte[maxLength];
+
+		/** The offset of the next path in {@link PathTable#data}. */
+		private int offset;
+
+		/** The index of the next path. */
+		private int next;
+
+		/**
+		 * Instantiates a new Decoder.
+		 * 
+		 * @param start
+		 *            The index of the first path of a block
+		 */
+		private Decoder(int start) {
+			this.next = start;
+			this.offset = start < size ? blocks[start / BLOCK_SIZE] : data.length;
+		}
+
+		/**
+		 * Decodes the next path.
+		 * 
+		 * @return The path
+		 */
+		private String advance() {
+			int shared = readVarInt();
+			int suffix = readVarInt();
+			System.arraycopy(data, offset, path, shared, suffix);
+			offset += suffix;
+			next++;
+			return new String(path, 0, shared + suffix, UTF_8);
+		}
+
+		/**
+		 * Reads an unsigned variable length integer.
+		 * 
+		 * @return The value
+		 */
+		private int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data[offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+	}
+}
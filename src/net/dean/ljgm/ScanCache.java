@@ -0,0 +1,328 @@
+package net.dean.ljgm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/*
+ * ScanCache.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm)
+ */
+/**
+ * This class remembers what is in the directories of watched sources, so they
+ * don't all have to be listed again every time a source is scanned. Adding,
+ * removing or renaming an entry of a directory changes its modification time,
+ * so a directory whose modification time is the same as when it was listed
+ * still has the same images and subdirectories. Only the directories that
+ * changed are listed again.<br>
+ * <br>
+ * A directory that was modified just before it was listed could be modified
+ * again within the resolution of its modification time, so such listings are
+ * not trusted the next time. The cache is saved to a binary file.
+ */
+public class ScanCache {
+
+	/** The number every cache file starts with. */
+	private static final int MAGIC = 0x4C4A5343; // "LJSC"
+
+	/** The version of the file format. */
+	private static final int VERSION = 1;
+
+	/**
+	 * Listings of directories modified less than this many milliseconds before
+	 * they were listed are not trusted.
+	 */
+	private static final long RACY_WINDOW = 2000;
+
+	/** The modification time of listings that are not trusted. */
+	private static final long UNTRUSTED = Long.MIN_VALUE;
+
+	/** The file the cache is saved to. */
+	private final File file;
+
+	/** The listings, mapped by the absolute path of their directory. */
+	private final TreeMap<String, Listing> listings;
+
+	/** True if the cache has changed since it was loaded. */
+	private boolean dirty;
+
+	/**
+	 * Instantiates a new, empty ScanCache.
+	 * 
+	 * @param file
+	 *            The file the cache is loaded from and saved to
+	 */
+	public ScanCache(File file) {
+		this.file = file;
+		this.listings = new TreeMap<>();
+	}
+
+	/**
+	 * Gets the images and subdirectories of a directory. The directory is only
+	 * listed if it was modified since the last time, otherwise the listing
+	 * from then is used.
+	 * 
+	 * @param dir
+	 *            The directory
+	 * @return The listing of the directory
+	 * @throws IOException
+	 *             If the directory could not be listed
+	 */
+	public Listing list(Path dir) throws IOException {
+		String key = dir.toAbsolutePath().toString();
+		long modified = Files.getLastModifiedTime(dir).toMillis();
+		Listing cached = get(key);
+		if (cached != null && cached.modified == modified) {
+			return cached;
+		}
+
+		long start = System.currentTimeMillis();
+		List<String> images = new ArrayList<>();
+		List<String> directories = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path child : stream) {
+				BasicFileAttributes attrs;
+				try {
+					attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				} catch (IOException e) {
+					System.err.println("Failed to visit file: " + child.toAbsolutePath() + ": " + e.getLocalizedMessage());
+					continue;
+				}
+
+				String name = child.getFileName().toString();
+				if (attrs.isDirectory()) {
+					directories.add(name);
+				} else if (attrs.isRegularFile() && LJGMUtils.isSupportedImage(child.toFile())) {
+					images.add(name);
+				}
+			}
+		}
+
+		Listing listing = new Listing(start - modified < RACY_WINDOW ? UNTRUSTED : modified,
+				images.toArray(new String[images.size()]), directories.toArray(new String[directories.size()]));
+		put(key, listing, cached);
+		return listing;
+	}
+
+	/**
+	 * Gets the listing of a directory.
+	 * 
+	 * @param key
+	 *            The absolute path of the directory
+	 * @return The listing, or <code>null</code> if there is none
+	 */
+	private synchronized Listing get(String key) {
+		return listings.get(key);
+	}
+
+	/**
+	 * Replaces the listing of a directory, and forgets the listings below the
+	 * subdirectories that are gone.
+	 * 
+	 * @param key
+	 *            The absolute path of the directory
+	 * @param listing
+	 *            The new listing
+	 * @param old
+	 *            The old listing, or <code>null</code>
+	 */
+	private synchronized void put(String key, Listing listing, Listing old) {
+		listings.put(key, listing);
+		dirty = true;
+		if (old == null) {
+			return;
+		}
+
+		Set<String> kept = new HashSet<>(Arrays.asList(listing.directories));
+		for (String name : old.directories) {
+			if (!kept.contains(name)) {
+				String gone = key + File.separator + name;
+				listings.remove(gone);
+				listings.subMap(gone + File.separator, gone + File.separator + Character.MAX_VALUE).clear();
+			}
+		}
+	}
+
+	/**
+	 * Forgets the listings of a directory and everything below it, so they are
+	 * listed again the next time even if their modification times are the
+	 * same.
+	 * 
+	 * @param dir
+	 *            The directory
+	 */
+	public synchronized void forget(File dir) {
+		String key = dir.getAbsolutePath();
+		if (listings.remove(key) != null) {
+			dirty = true;
+		}
+		Map<String, Listing> below = listings.subMap(key + File.separator, key + File.separator + Character.MAX_VALUE);
+		if (!below.isEmpty()) {
+			below.clear();
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Gets the amount of directories in the cache.
+	 * 
+	 * @return The amount of directories
+	 */
+	public synchronized int size() {
+		return listings.size();
+	}
+
+	/**
+	 * Loads the cache from its file. Does nothing if the file does not exist.
+	 */
+	public synchronized void load() {
+		if (!file.exists()) {
+			return;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				LJGM.instance().getLogger().warn("Ignoring an unknown scan cache: " + file.getAbsolutePath());
+				return;
+			}
+
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				long modified = in.readLong();
+				String[] images = readNames(in);
+				String[] directories = readNames(in);
+				listings.put(path, new Listing(modified, images, directories));
+			}
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not read the scan cache: ");
+			listings.clear();
+		}
+	}
+
+	/**
+	 * Saves the cache to its file if it has changed.
+	 */
+	public synchronized void save() {
+		if (!dirty) {
+			return;
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(listings.size());
+			for (Map.Entry<String, Listing> entry : listings.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().modified);
+				writeNames(out, entry.getValue().images);
+				writeNames(out, entry.getValue().directories);
+			}
+			dirty = false;
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not save the scan cache: ");
+		}
+	}
+
+	/**
+	 * Reads an array of names written by
+	 * {@link #writeNames(DataOutputStream, String[])}.
+	 * 
+	 * @param in
+	 *            The stream to read from
+	 * @return The names
+	 * @throws IOException
+	 *             If the stream could not be read
+	 */
+	private static String[] readNames(DataInputStream in) throws IOException {
+		String[] names = new String[in.readInt()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = in.readUTF();
+		}
+		return names;
+	}
+
+	/**
+	 * Writes an array of names.
+	 * 
+	 * @param out
+	 *            The stream to write to
+	 * @param names
+	 *            The names
+	 * @throws IOException
+	 *             If the stream could not be written to
+	 */
+	private static void writeNames(DataOutputStream out, String[] names) throws IOException {
+		out.writeInt(names.length);
+		for (String name : names) {
+			out.writeUTF(name);
+		}
+	}
+
+	/**
+	 * What a directory contained when it was listed.
+	 */
+	public static class Listing {
+
+		/** The modification time of the directory when it was listed. */
+		private final long modified;
+
+		/** The names of the images directly in the directory. */
+		private final String[] images;
+
+		/** The names of the subdirectories of the directory. */
+		private final String[] directories;
+
+		/**
+		 * Instantiates a new Listing.
+		 * 
+		 * @param modified
+		 *            The modification time of the directory
+		 * @param images
+		 *            The names of the images directly in the directory
+		 * @param directories
+		 *            The names of the subdirectories
+		 */
+		private Listing(long modified, String[] images, String[] directories) {
+			this.modified = modified;
+			this.images = images;
+			this.directories = directories;
+		}
+
+		/**
+		 * Gets the names of the images directly in the directory.
+		 * 
+		 * @return The names, which must not be modified
+		 */
+		public String[] getImages() {
+			return images;
+		}
+
+		/**
+		 * Gets the names of the subdirectories of the directory.
+		 * 
+		 * @return The names, which must not be modified
+		 */
+		public String[] getDirectories() {
+			return directories;
+		}
+	}
+}
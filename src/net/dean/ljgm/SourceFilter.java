@@ -0,0 +1,266 @@
+package net.dean.ljgm;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/*
+ * SourceFilter.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm)
+ */
+/**
+ * This class decides which files of a watched {@link GallerySource} are
+ * included, based on a list of {@link Rule}s. The rules are compiled once
+ * when the filter is created, and the filter is asked about every directory
+ * and file while the source is walked. A directory that is excluded is not
+ * walked at all.<br>
+ * <br>
+ * A file is included if no exclude rule matches it or any of its parent
+ * directories, and, if there are any include rules, at least one of them
+ * matches it. Include rules are only used on files.
+ */
+public class SourceFilter {
+
+	/** A filter without any rules, which includes everything. */
+	public static final SourceFilter NONE = new SourceFilter(Collections.<Rule> emptyList());
+
+	/** The names that are included. */
+	private final Set<String> includedNames;
+
+	/** The names that are excluded. */
+	private final Set<String> excludedNames;
+
+	/** The globs and regular expressions that are included. */
+	private final List<PathMatcher> includedPaths;
+
+	/** The globs and regular expressions that are excluded. */
+	private final List<PathMatcher> excludedPaths;
+
+	/**
+	 * Instantiates a new SourceFilter.
+	 * 
+	 * @param rules
+	 *            The rules of the filter
+	 * @throws IllegalArgumentException
+	 *             If a glob or regular expression is invalid
+	 */
+	public SourceFilter(List<Rule> rules) {
+		this.includedNames = new HashSet<>();
+		this.excludedNames = new HashSet<>();
+		this.includedPaths = new ArrayList<>();
+		this.excludedPaths = new ArrayList<>();
+
+		for (Rule rule : rules) {
+			if (rule.getType() == RuleType.NAME) {
+				(rule.isExclude() ? excludedNames : includedNames).add(rule.getPattern());
+			} else {
+				(rule.isExclude() ? excludedPaths : includedPaths).add(rule.compile());
+			}
+		}
+	}
+
+	/**
+	 * Checks if this filter has no rules.
+	 * 
+	 * @return True, if every file is included
+	 */
+	public boolean isEmpty() {
+		return includedNames.isEmpty() && excludedNames.isEmpty() && includedPaths.isEmpty() && excludedPaths.isEmpty();
+	}
+
+	/**
+	 * Checks if a directory and everything in it is excluded.
+	 * 
+	 * @param relative
+	 *            The path of the directory, relative to the source
+	 * @return True, if the directory should not be walked
+	 */
+	public boolean isExcludedDirectory(Path relative) {
+		return isExcluded(relative);
+	}
+
+	/**
+	 * Checks if a file is included. The directories it is in are not checked,
+	 * see {@link #isExcludedDirectory(Path)}.
+	 * 
+	 * @param relative
+	 *            The path of the file, relative to the source
+	 * @return True, if the file is included
+	 */
+	public boolean accepts(Path relative) {
+		if (isExcluded(relative)) {
+			return false;
+		}
+		if (includedNames.isEmpty() && includedPaths.isEmpty()) {
+			return true;
+		}
+
+		if (includedNames.contains(relative.getFileName().toString())) {
+			return true;
+		}
+		for (PathMatcher matcher : includedPaths) {
+			if (matcher.matches(relative)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if any exclude rule matches a path.
+	 * 
+	 * @param relative
+	 *            The path, relative to the source
+	 * @return True, if the path is excluded
+	 */
+	private boolean isExcluded(Path relative) {
+		if (excludedNames.contains(relative.getFileName().toString())) {
+			return true;
+		}
+		for (PathMatcher matcher : excludedPaths) {
+			if (matcher.matches(relative)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The kinds of patterns a rule can have.
+	 */
+	public static enum RuleType {
+		/**
+		 * A glob, as in {@link java.nio.file.FileSystem#getPathMatcher(String)}.
+		 * A glob without a <code>/</code> is matched against the name of a
+		 * file or directory, otherwise against its path relative to the
+		 * source.
+		 */
+		GLOB,
+		/**
+		 * A regular expression that has to match the whole path relative to
+		 * the source, with <code>/</code> between the directories.
+		 */
+		REGEX,
+		/** The exact name of a file or directory. */
+		NAME;
+	}
+
+	/**
+	 * This class is a single include or exclude rule of a {@link SourceFilter}
+	 * .
+	 */
+	public static class Rule {
+
+		/** True if the rule excludes files, false if it includes them. */
+		private final boolean exclude;
+
+		/** The kind of pattern. */
+		private final RuleType type;
+
+		/** The pattern. */
+		private final String pattern;
+
+		/**
+		 * Instantiates a new Rule.
+		 * 
+		 * @param exclude
+		 *            True if the rule excludes files, false if it includes them
+		 * @param type
+		 *            The kind of pattern
+		 * @param pattern
+		 *            The pattern
+		 */
+		public Rule(boolean exclude, RuleType type, String pattern) {
+			this.exclude = exclude;
+			this.type = type;
+			this.pattern = pattern;
+		}
+
+		public boolean isExclude() {
+			return exclude;
+		}
+
+		public RuleType getType() {
+			return type;
+		}
+
+		public String getPattern() {
+			return pattern;
+		}
+
+		/**
+		 * Compiles a glob or regular expression rule.
+		 * 
+		 * @return A PathMatcher for paths relative to the source
+		 */
+		private PathMatcher compile() {
+			if (type == RuleType.REGEX) {
+				final Pattern regex = Pattern.compile(pattern);
+				return new PathMatcher() {
+
+					@Override
+					public boolean matches(Path path) {
+						return regex.matcher(toSlashes(path)).matches();
+					}
+				};
+			}
+
+			final PathMatcher glob = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+			if (pattern.indexOf('/') >= 0) {
+				return glob;
+			}
+			return new PathMatcher() {
+
+				@Override
+				public boolean matches(Path path) {
+					return glob.matches(path.getFileName());
+				}
+			};
+		}
+
+		/**
+		 * Joins the elements of a path with <code>/</code>, whatever the
+		 * separator of the file system is.
+		 * 
+		 * @param path
+		 *            The path
+		 * @return The path as a String
+		 */
+		private static String toSlashes(Path path) {
+			StringBuilder s = new StringBuilder();
+			for (Path element : path) {
+				if (s.length() > 0) {
+					s.append('/');
+				}
+				s.append(element.toString());
+			}
+			return s.toString();
+		}
+
+		@Override
+		public int hashCode() {
+			return (exclude ? 1231 : 1237) + 31 * (type.hashCode() + 31 * pattern.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Rule)) {
+				return false;
+			}
+			Rule other = (Rule) obj;
+			return exclude == other.exclude && type == other.type && pattern.equals(other.pattern);
+		}
+
+		@Override
+		public String toString() {
+			return (exclude ? "exclude " : "include ") + type.name().toLowerCase() + ": " + pattern;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package net.dean.ljgm.duplicates;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/*
+ * BKTree.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.duplicates)
+ */
+/**
+ * A Burkhard-Keller tree of 64 bit perceptual hashes. Every child of a node is
+ * stored under its Hamming distance to the node, so a search for hashes within
+ * a distance <i>d</i> of a query only has to visit the children whose distance
+ * is within <i>d</i> of the query's distance to the node. This makes finding
+ * similar images among many thousands of hashes take a fraction of the time of
+ * comparing the query to every hash.
+ * 
+ * @param <T>
+ *            The type of the values stored with the hashes
+ */
+public class BKTree<T> {
+
+	/** The root of the tree, or <code>null</code> if the tree is empty. */
+	private Node<T> root;
+
+	/** The amount of values in the tree. */
+	private int size;
+
+	/**
+	 * Adds a value to the tree. Values with the same hash are stored in the
+	 * same node.
+	 * 
+	 * @param hash
+	 *            The hash of the value
+	 * @param value
+	 *            The value
+	 */
+	public void add(long hash, T value) {
+		size++;
+		if (root == null) {
+			root = new Node<>(hash, value);
+			return;
+		}
+
+		Node<T> node = root;
+		while (true) {
+			int distance = PerceptualHash.distance(hash, node.hash);
+			if (distance == 0) {
+				node.values.add(value);
+				return;
+			}
+
+			Node<T> child = node.getChild(distance);
+			if (child == null) {
+				node.addChild(distance, new Node<>(hash, value));
+				return;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * Removes a value from the tree. The node of the hash is kept, because the
+	 * structure of the tree depends on it.
+	 * 
+	 * @param hash
+	 *            The hash the value was added with
+	 * @param value
+	 *            The value to remove
+	 * @return True, if the value was in the tree.
+	 */
+	public boolean remove(long hash, T value) {
+		Node<T> node = root;
+		while (node != null) {
+			int distance = PerceptualHash.distance(hash, node.hash);
+			if (distance == 0) {
+				if (node.values.remove(value)) {
+					size--;
+					return true;
+				}
+				return false;
+			}
+			node = node.getChild(distance);
+		}
+		return false;
+	}
+
+	/**
+	 * Finds every value whose hash is within a distance of a query.
+	 * 
+	 * @param hash
+	 *            The query
+	 * @param maxDistance
+	 *            The maximum amount of bits that may differ
+	 * @return The values that were found
+	 */
+	public List<T> find(long hash, int maxDistance) {
+		List<T> found = new ArrayList<>();
+		if (root == null) {
+			return found;
+		}
+
+		Deque<Node<T>> toVisit = new ArrayDeque<>();
+		toVisit.push(root);
+		while (!toVisit.isEmpty()) {
+			Node<T> node = toVisit.pop();
+			int distance = PerceptualHash.distance(hash, node.hash);
+			if (distance <= maxDistance) {
+				found.addAll(node.values);
+			}
+
+			// By the triangle inequality, matches can only be under children
+			// whose distance to this node is within maxDistance of the query's
+			for (int i = 0; i < node.childCount; i++) {
+				if (Math.abs(node.childDistances[i] - distance) <= maxDistance) {
+					toVisit.push(node.children[i]);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Gets the amount of values in the tree.
+	 * 
+	 * @return The amount of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * A node of the tree.
+	 * 
+	 * @param <T>
+	 *            The type of the values
+	 */
+	private static class Node<T> {
+
+		/** The hash of this node. */
+		private final long hash;
+
+		/** The values with exactly this hash. */
+		private final List<T> values;
+
+		/**
+		 * The distances of the children to this node. Most nodes only have a
+		 * few children, so they are stored in small arrays rather than in one
+		 * slot for each of the 64 possible distances.
+		 */
+		private byte[] childDistances;
+
+		/** The children of this node, in the same order as {@link #childDistances}. */
+		private Node<T>[] children;
+
+		/** The amount of children of this node. */
+		private int childCount;
+
+		/**
+		 * Instantiates a new Node.
+		 * 
+		 * @param hash
+		 *            The hash
+		 * @param value
+		 *            The first value
+		 */
+		private Node(long hash, T value) {
+			this.hash = hash;
+			this.values = new ArrayList<>(1);
+			values.add(value);
+		}
+
+		/**
+		 * Gets the child at a distance to this node.
+		 * 
+		 * @param distance
+		 *            The distance
+		 * @return The child, or <code>null</code> if there is none.
+		 */
+		private Node<T> getChild(int distance) {
+			for (int i = 0; i < childCount; i++) {
+				if (childDistances[i] == distance) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Adds a child at a distance to this node.
+		 * 
+		 * @param distance
+		 *            The distance
+		 * @param child
+		 *            The child
+		 */
+		@SuppressWarnings("unchecked")
+		private void addChild(int distance, Node<T> child) {
+			if (children == null) {
+				childDistances = new byte[2];
+				children = new Node[2];
+			} else if (childCount == children.length) {
+				childDistances = Arrays.copyOf(childDistances, childCount * 2);
+				children = Arrays.copyOf(children, childCount * 2);
+			}
+			childDistances[childCount] = (byte) distance;
+			children[childCount] = child;
+			childCount++;
+		}
+	}
+}
@@ -0,0 +1,351 @@
+package net.dean.ljgm.duplicates;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import net.dean.ljgm.Gallery;
+import net.dean.ljgm.LJGM;
+
+/*
+ * DuplicateFinder.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.duplicates)
+ */
+/**
+ * This class finds images with exactly the same contents across all galleries.
+ * To avoid reading every file entirely, it works in tiers:
+ * <ol>
+ * <li>Files are grouped by their size, which only needs a stat.
+ * <li>Files that share a size are grouped by a hash of their first and last
+ * {@value #PARTIAL_SIZE} bytes.
+ * <li>Files that share a partial hash are grouped by a hash of their entire
+ * contents, which is read through a memory-mapped {@link FileChannel}.
+ * </ol>
+ * Hashing is done on a fixed amount of threads so the disk isn't flooded with
+ * requests. Hashes are kept in a {@link FingerprintIndex}, so files that have
+ * not changed are never hashed twice.
+ */
+public class DuplicateFinder {
+
+	/** The amount of bytes at the start and the end of a file that are used for the partial hash. */
+	private static final int PARTIAL_SIZE = 16 * 1024;
+
+	/** The largest part of a file that is mapped into memory at once. */
+	private static final long MAP_SIZE = 64L * 1024 * 1024;
+
+	/** The index that holds the hashes of the files. */
+	private final FingerprintIndex index;
+
+	/** The maximum amount of files that are read at the same time. */
+	private final int ioThreads;
+
+	/**
+	 * Instantiates a new DuplicateFinder.
+	 * 
+	 * @param index
+	 *            The index that holds the hashes of the files
+	 * @param ioThreads
+	 *            The maximum amount of files that are read at the same time
+	 */
+	public DuplicateFinder(FingerprintIndex index, int ioThreads) {
+		this.index = index;
+		this.ioThreads = Math.max(1, ioThreads);
+	}
+
+	/**
+	 * Finds every group of images with the same contents in a list of
+	 * galleries.
+	 * 
+	 * @param galleries
+	 *            The galleries to scan
+	 * @return The groups of duplicates
+	 * @throws InterruptedException
+	 *             If the thread was interrupted while scanning
+	 */
+	public DuplicateReport scan(List<Gallery> galleries) throws InterruptedException {
+		// The same file can be part of more than one gallery
+		Map<File, Set<String>> owners = new LinkedHashMap<>();
+		for (Gallery g : galleries) {
+			for (File f : g.getAllImages()) {
+				File absolute = f.getAbsoluteFile();
+				Set<String> names = owners.get(absolute);
+				if (names == null) {
+					names = new HashSet<>();
+					owners.put(absolute, names);
+				}
+				names.add(g.getName());
+			}
+		}
+
+		// Tier 1: size
+		Map<Object, List<ImageFingerprint>> groups = new HashMap<>();
+		for (File f : owners.keySet()) {
+			checkInterrupted();
+			if (f.isFile()) {
+				add(groups, f.length(), index.get(f));
+			}
+		}
+		List<ImageFingerprint> candidates = getCandidates(groups);
+		LJGM.instance().getLogger().debug(candidates.size() + " of " + owners.size() + " images share their size with another image");
+
+		ExecutorService pool = Executors.newFixedThreadPool(ioThreads, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Duplicate finder");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			// Tier 2: partial hash
+			hashAll(pool, candidates, false);
+			groups.clear();
+			for (ImageFingerprint fingerprint : candidates) {
+				if (fingerprint.getPartialHash() != null) {
+					add(groups, fingerprint.getSize() + ":" + fingerprint.getPartialHash(), fingerprint);
+				}
+			}
+			candidates = getCandidates(groups);
+			LJGM.instance().getLogger().debug(candidates.size() + " images share their partial hash with another image");
+
+			// Tier 3: full hash
+			hashAll(pool, candidates, true);
+			groups.clear();
+			for (ImageFingerprint fingerprint : candidates) {
+				if (fingerprint.getFullHash() != null) {
+					add(groups, fingerprint.getFullHash(), fingerprint);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		List<List<File>> duplicates = new ArrayList<>();
+		for (List<ImageFingerprint> group : groups.values()) {
+			if (group.size() > 1) {
+				List<File> files = new ArrayList<>(group.size());
+				for (ImageFingerprint fingerprint : group) {
+					files.add(fingerprint.getFile());
+				}
+				duplicates.add(files);
+			}
+		}
+
+		return new DuplicateReport(duplicates, owners);
+	}
+
+	/**
+	 * Computes the partial or full hash of every fingerprint that doesn't have
+	 * it yet, and waits until they are all done.
+	 * 
+	 * @param pool
+	 *            The threads to hash on
+	 * @param fingerprints
+	 *            The fingerprints to hash
+	 * @param full
+	 *            True to compute the full hash, false to compute the partial
+	 *            one
+	 * @throws InterruptedException
+	 *             If the thread was interrupted while waiting
+	 */
+	private void hashAll(ExecutorService pool, List<ImageFingerprint> fingerprints, final boolean full)
+			throws InterruptedException {
+		List<Callable<Void>> jobs = new ArrayList<>();
+		for (final ImageFingerprint fingerprint : fingerprints) {
+			if ((full ? fingerprint.getFullHash() : fingerprint.getPartialHash()) != null) {
+				// Hashed by an earlier scan
+				continue;
+			}
+
+			jobs.add(new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					try {
+						if (full) {
+							fingerprint.setFullHash(hashFull(fingerprint.getFile()));
+						} else {
+							hashPartial(fingerprint);
+						}
+					} catch (IOException e) {
+						LJGM.instance().getLogger().throwable(e, "Could not hash " + fingerprint.getFile() + ": ");
+					}
+					return null;
+				}
+			});
+		}
+
+		pool.invokeAll(jobs);
+	}
+
+	/**
+	 * Computes the partial hash of a file. If the file is small enough that
+	 * the partial hash covers all of it, the full hash is set too.
+	 * 
+	 * @param fingerprint
+	 *            The fingerprint of the file
+	 * @throws IOException
+	 *             If the file could not be read
+	 */
+	private static void hashPartial(ImageFingerprint fingerprint) throws IOException {
+		MessageDigest digest = newDigest();
+		try (FileChannel channel = FileChannel.open(fingerprint.getFile().toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocate(PARTIAL_SIZE);
+
+			read(channel, buffer, 0);
+			digest.update(buffer);
+			if (size > PARTIAL_SIZE) {
+				read(channel, buffer, Math.max(PARTIAL_SIZE, size - PARTIAL_SIZE));
+				digest.update(buffer);
+			}
+
+			String hash = toHex(digest.digest());
+			fingerprint.setPartialHash(hash);
+			if (size <= 2 * PARTIAL_SIZE) {
+				// Every byte was hashed
+				fingerprint.setFullHash(hash);
+			}
+		}
+	}
+
+	/**
+	 * Computes the hash of an entire file by mapping it into memory.
+	 * 
+	 * @param f
+	 *            The file
+	 * @return The hash of the file
+	 * @throws IOException
+	 *             If the file could not be read
+	 */
+	private static String hashFull(File f) throws IOException {
+		MessageDigest digest = newDigest();
+		try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long position = 0; position < size; position += MAP_SIZE) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(MAP_SIZE, size - position));
+				digest.update(buffer);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Fills a buffer from a position in a channel, or until the end of the
+	 * channel. The buffer is flipped afterwards.
+	 * 
+	 * @param channel
+	 *            The channel to read from
+	 * @param buffer
+	 *            The buffer to fill
+	 * @param position
+	 *            The position in the channel
+	 * @throws IOException
+	 *             If the channel could not be read
+	 */
+	private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Adds a fingerprint to the group of a key.
+	 * 
+	 * @param groups
+	 *            The groups
+	 * @param key
+	 *            The key of the group
+	 * @param fingerprint
+	 *            The fingerprint to add
+	 */
+	private static void add(Map<Object, List<ImageFingerprint>> groups, Object key, ImageFingerprint fingerprint) {
+		List<ImageFingerprint> group = groups.get(key);
+		if (group == null) {
+			group = new ArrayList<>();
+			groups.put(key, group);
+		}
+		group.add(fingerprint);
+	}
+
+	/**
+	 * Gets the fingerprints of every group that has more than one fingerprint.
+	 * 
+	 * @param groups
+	 *            The groups
+	 * @return The fingerprints that could still be duplicates
+	 */
+	private static List<ImageFingerprint> getCandidates(Map<Object, List<ImageFingerprint>> groups) {
+		List<ImageFingerprint> candidates = new ArrayList<>();
+		for (List<ImageFingerprint> group : groups.values()) {
+			if (group.size() > 1) {
+				candidates.addAll(group);
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Creates a new SHA-1 digest.
+	 * 
+	 * @return The digest
+	 */
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Converts bytes to a hexadecimal string.
+	 * 
+	 * @param bytes
+	 *            The bytes
+	 * @return The hexadecimal string
+	 */
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Throws an InterruptedException if the current thread was interrupted.
+	 * 
+	 * @throws InterruptedException
+	 *             If the thread was interrupted
+	 */
+	private static void checkInterrupted() throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+	}
+}
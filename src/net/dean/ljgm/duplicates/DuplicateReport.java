@@ -0,0 +1,99 @@
+package net.dean.ljgm.duplicates;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.dean.ljgm.Gallery;
+
+/*
+ * DuplicateReport.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.duplicates)
+ */
+/**
+ * The result of a {@link DuplicateFinder} scan. Each group is a list of files
+ * that have exactly the same contents.
+ */
+public class DuplicateReport {
+
+	/** The groups of files with the same contents. */
+	private final List<List<File>> groups;
+
+	/** The names of the galleries every scanned file belongs to. */
+	private final Map<File, Set<String>> owners;
+
+	/**
+	 * Instantiates a new DuplicateReport.
+	 * 
+	 * @param groups
+	 *            The groups of files with the same contents
+	 * @param owners
+	 *            The names of the galleries every scanned file belongs to
+	 */
+	DuplicateReport(List<List<File>> groups, Map<File, Set<String>> owners) {
+		this.groups = groups;
+		this.owners = owners;
+	}
+
+	/**
+	 * Gets every group of duplicates.
+	 * 
+	 * @return A list of groups of files with the same contents
+	 */
+	public List<List<File>> getGroups() {
+		return Collections.unmodifiableList(groups);
+	}
+
+	/**
+	 * Gets the groups of duplicates that contain at least one image of a
+	 * gallery. The groups still contain the files of other galleries, so the
+	 * user can see where the copies are.
+	 * 
+	 * @param g
+	 *            The gallery
+	 * @return A list of groups of files with the same contents
+	 */
+	public List<List<File>> getGroups(Gallery g) {
+		List<List<File>> galleryGroups = new ArrayList<>();
+		for (List<File> group : groups) {
+			for (File f : group) {
+				Set<String> galleries = owners.get(f);
+				if (galleries != null && galleries.contains(g.getName())) {
+					galleryGroups.add(group);
+					break;
+				}
+			}
+		}
+		return galleryGroups;
+	}
+
+	/**
+	 * Gets the names of the galleries a file belongs to.
+	 * 
+	 * @param f
+	 *            The file
+	 * @return The names of the galleries, or an empty set if the file was not
+	 *         scanned.
+	 */
+	public Set<String> getGalleries(File f) {
+		Set<String> galleries = owners.get(f.getAbsoluteFile());
+		return galleries == null ? Collections.<String> emptySet() : Collections.unmodifiableSet(galleries);
+	}
+
+	/**
+	 * Gets the amount of files that could be deleted without losing an image.
+	 * 
+	 * @return The amount of redundant copies
+	 */
+	public int getRedundantCopies() {
+		int copies = 0;
+		for (List<File> group : groups) {
+			copies += group.size() - 1;
+		}
+		return copies;
+	}
+}
@@ -0,0 +1,77 @@
+package net.dean.ljgm.duplicates;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.concurrent.Task;
+import net.dean.ljgm.Gallery;
+import net.dean.ljgm.LJGM;
+import net.dean.util.file.FileUtil;
+
+/*
+ * DuplicateScanTask.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.duplicates)
+ */
+/**
+ * This task scans galleries for duplicates in the background. The fingerprints
+ * are loaded from {@link #INDEX_FILE} before the scan and saved afterwards.
+ */
+public class DuplicateScanTask extends Task<DuplicateReport> {
+
+	/**
+	 * The location of the file that holds the fingerprints of every image that
+	 * has been hashed. This location points to
+	 * <code>{BASE_DIR}/duplicates.dat</code>.
+	 */
+	private static final File INDEX_FILE = FileUtil.getRelativeFile("/duplicates.dat");
+
+	/** The galleries to scan. */
+	private final List<Gallery> galleries;
+
+	/** The maximum amount of files that are read at the same time. */
+	private final int ioThreads;
+
+	/**
+	 * Instantiates a new DuplicateScanTask.
+	 * 
+	 * @param galleries
+	 *            The galleries to scan. The list is copied.
+	 */
+	public DuplicateScanTask(List<Gallery> galleries) {
+		this.galleries = new ArrayList<>(galleries);
+		this.ioThreads = LJGM.instance().getConfigManager().getDuplicateScanThreads();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javafx.concurrent.Task#call()
+	 */
+	@Override
+	protected DuplicateReport call() throws Exception {
+		long start = System.currentTimeMillis();
+		FingerprintIndex index = new FingerprintIndex(INDEX_FILE);
+		index.load();
+
+		DuplicateReport report = new DuplicateFinder(index, ioThreads).scan(galleries);
+		index.save();
+
+		LJGM.instance().getLogger().info("Found " + report.getGroups().size() + " groups of duplicates in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		return report;
+	}
+
+	/**
+	 * Starts a task on a new background thread.
+	 * 
+	 * @param task
+	 *            The task to start
+	 */
+	public static void startInBackground(DuplicateScanTask task) {
+		Thread t = new Thread(task, "Duplicate scan");
+		t.setDaemon(true);
+		t.start();
+	}
+}
@@ -0,0 +1,142 @@
+package net.dean.ljgm.duplicates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.dean.ljgm.LJGM;
+
+/*
+ * FingerprintIndex.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.duplicates)
+ */
+/**
+ * This class stores the {@link ImageFingerprint}s of every file that has been
+ * hashed, so later scans only have to hash files that are new or have changed.
+ * The index is saved to a binary file.
+ */
+public class FingerprintIndex {
+
+	/** The number every index file starts with. */
+	private static final int MAGIC = 0x4C4A4446; // "LJDF"
+
+	/** The version of the file format. */
+	private static final int VERSION = 1;
+
+	/** The file the index is saved to. */
+	private final File file;
+
+	/** The fingerprints, mapped by the absolute path of their file. */
+	private final Map<String, ImageFingerprint> fingerprints;
+
+	/**
+	 * Instantiates a new, empty FingerprintIndex.
+	 * 
+	 * @param file
+	 *            The file the index is loaded from and saved to
+	 */
+	public FingerprintIndex(File file) {
+		this.file = file;
+		this.fingerprints = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Gets the fingerprint of a file if it is still valid. If the file has
+	 * changed since it was hashed, a new fingerprint without hashes replaces
+	 * the old one.
+	 * 
+	 * @param f
+	 *            The file
+	 * @return The fingerprint of the file
+	 */
+	public ImageFingerprint get(File f) {
+		String path = f.getAbsolutePath();
+		long size = f.length();
+		long lastModified = f.lastModified();
+
+		ImageFingerprint fingerprint = fingerprints.get(path);
+		if (fingerprint == null || !fingerprint.matches(size, lastModified)) {
+			fingerprint = new ImageFingerprint(f.getAbsoluteFile(), size, lastModified);
+			fingerprints.put(path, fingerprint);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Gets the amount of fingerprints in the index.
+	 * 
+	 * @return The amount of fingerprints
+	 */
+	public int size() {
+		return fingerprints.size();
+	}
+
+	/**
+	 * Loads the index from its file. Does nothing if the file does not exist.
+	 */
+	public void load() {
+		if (!file.exists()) {
+			return;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				LJGM.instance().getLogger().warn("Ignoring an unknown fingerprint index: " + file.getAbsolutePath());
+				return;
+			}
+
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				String partial = in.readUTF();
+				String full = in.readUTF();
+				fingerprints.put(path, new ImageFingerprint(new File(path), size, lastModified, partial.isEmpty() ? null
+						: partial, full.isEmpty() ? null : full));
+			}
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not read the fingerprint index: ");
+			fingerprints.clear();
+		}
+	}
+
+	/**
+	 * Saves the index to its file. Fingerprints of files that don't exist
+	 * anymore are left out.
+	 */
+	public void save() {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			List<ImageFingerprint> existing = new ArrayList<>();
+			for (ImageFingerprint fingerprint : fingerprints.values()) {
+				if (fingerprint.getFile().exists()) {
+					existing.add(fingerprint);
+				}
+			}
+			out.writeInt(existing.size());
+
+			for (ImageFingerprint fingerprint : existing) {
+				out.writeUTF(fingerprint.getFile().getAbsolutePath());
+				out.writeLong(fingerprint.getSize());
+				out.writeLong(fingerprint.getLastModified());
+				out.writeUTF(fingerprint.getPartialHash() == null ? "" : fingerprint.getPartialHash());
+				out.writeUTF(fingerprint.getFullHash() == null ? "" : fingerprint.getFullHash());
+			}
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not save the fingerprint index: ");
+		}
+	}
+}
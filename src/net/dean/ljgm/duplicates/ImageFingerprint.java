@@ -0,0 +1,121 @@
+package net.dean.ljgm.duplicates;
+
+import java.io.File;
+
+/*
+ * ImageFingerprint.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.duplicates)
+ */
+/**
+ * This class holds the hashes of a file that are used to find duplicates. The
+ * hashes are only computed when they are needed, so either of them can be
+ * <code>null</code>. A fingerprint is only valid as long as the size and the
+ * modification time of its file stay the same.
+ */
+public class ImageFingerprint {
+
+	/** The file this fingerprint belongs to. */
+	private final File file;
+
+	/** The size of the file when it was hashed. */
+	private final long size;
+
+	/** The modification time of the file when it was hashed. */
+	private final long lastModified;
+
+	/** The hash of the start and the end of the file. */
+	private volatile String partialHash;
+
+	/** The hash of the entire file. */
+	private volatile String fullHash;
+
+	/**
+	 * Instantiates a new ImageFingerprint without any hashes.
+	 * 
+	 * @param file
+	 *            The file
+	 * @param size
+	 *            The size of the file
+	 * @param lastModified
+	 *            The modification time of the file
+	 */
+	public ImageFingerprint(File file, long size, long lastModified) {
+		this(file, size, lastModified, null, null);
+	}
+
+	/**
+	 * Instantiates a new ImageFingerprint.
+	 * 
+	 * @param file
+	 *            The file
+	 * @param size
+	 *            The size of the file
+	 * @param lastModified
+	 *            The modification time of the file
+	 * @param partialHash
+	 *            The hash of the start and the end of the file, or
+	 *            <code>null</code>
+	 * @param fullHash
+	 *            The hash of the entire file, or <code>null</code>
+	 */
+	public ImageFingerprint(File file, long size, long lastModified, String partialHash, String fullHash) {
+		this.file = file;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.partialHash = partialHash;
+		this.fullHash = fullHash;
+	}
+
+	/**
+	 * Checks if this fingerprint still describes its file.
+	 * 
+	 * @param currentSize
+	 *            The current size of the file
+	 * @param currentLastModified
+	 *            The current modification time of the file
+	 * @return True, if the file has not changed since it was hashed.
+	 */
+	public boolean matches(long currentSize, long currentLastModified) {
+		return size == currentSize && lastModified == currentLastModified;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public String getPartialHash() {
+		return partialHash;
+	}
+
+	public void setPartialHash(String partialHash) {
+		this.partialHash = partialHash;
+	}
+
+	public String getFullHash() {
+		return fullHash;
+	}
+
+	public void setFullHash(String fullHash) {
+		this.fullHash = fullHash;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ImageFingerprint [file=\"" + file + "\", size=" + size + ", partialHash=" + partialHash
+				+ ", fullHash=" + fullHash + "]";
+	}
+}
@@ -0,0 +1,119 @@
+package net.dean.ljgm.duplicates;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+
+/*
+ * PerceptualHash.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.duplicates)
+ */
+/**
+ * This class computes difference hashes (dHash) of images. The image is shrunk
+ * to 9x8 gray pixels and every bit of the hash tells if a pixel is brighter
+ * than its right neighbor. Resized or recompressed copies of an image have
+ * hashes that differ in only a few bits, so the {@link #distance(long, long)}
+ * between two hashes tells how similar the images look.
+ */
+public class PerceptualHash {
+
+	/** The width the image is shrunk to. One more than the columns of bits. */
+	private static final int WIDTH = 9;
+
+	/** The height the image is shrunk to. */
+	private static final int HEIGHT = 8;
+
+	/**
+	 * Instantiates a new {@link PerceptualHash}.
+	 */
+	private PerceptualHash() {
+		// no instances
+	}
+
+	/**
+	 * Checks if the pixels of an image can be read, so it can be hashed.
+	 * 
+	 * @param img
+	 *            The image
+	 * @return True, if {@link #dHash(Image)} can hash the image
+	 */
+	public static boolean canHash(Image img) {
+		return img.getPixelReader() != null && (int) img.getWidth() >= 1 && (int) img.getHeight() >= 1;
+	}
+
+	/**
+	 * Computes the difference hash of an image. The image should already be
+	 * small (an icon, for example), because every pixel is read.
+	 * 
+	 * @param img
+	 *            The image
+	 * @return The hash
+	 * @throws IllegalArgumentException
+	 *             If the pixels of the image can't be read, see
+	 *             {@link #canHash(Image)}
+	 */
+	public static long dHash(Image img) {
+		if (!canHash(img)) {
+			// Any hash would match other images
+			throw new IllegalArgumentException("The pixels of the image can't be read");
+		}
+		PixelReader reader = img.getPixelReader();
+		int width = (int) img.getWidth();
+		int height = (int) img.getHeight();
+
+		// Shrink the image by averaging the brightness of every cell
+		double[] gray = new double[WIDTH * HEIGHT];
+		int[] counts = new int[WIDTH * HEIGHT];
+		for (int y = 0; y < height; y++) {
+			int cellY = y * HEIGHT / height;
+			for (int x = 0; x < width; x++) {
+				int cellX = x * WIDTH / width;
+				int argb = reader.getArgb(x, y);
+				int r = (argb >> 16) & 0xFF;
+				int g = (argb >> 8) & 0xFF;
+				int b = argb & 0xFF;
+				gray[cellY * WIDTH + cellX] += 0.299 * r + 0.587 * g + 0.114 * b;
+				counts[cellY * WIDTH + cellX]++;
+			}
+		}
+
+		long hash = 0;
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH - 1; x++) {
+				hash <<= 1;
+				if (average(gray, counts, y * WIDTH + x) > average(gray, counts, y * WIDTH + x + 1)) {
+					hash |= 1;
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Gets the amount of bits that are different between two hashes.
+	 * 
+	 * @param a
+	 *            The first hash
+	 * @param b
+	 *            The second hash
+	 * @return A number from 0 (identical) to 64.
+	 */
+	public static int distance(long a, long b) {
+		return Long.bitCount(a ^ b);
+	}
+
+	/**
+	 * Gets the average brightness of a cell.
+	 * 
+	 * @param gray
+	 *            The total brightness of every cell
+	 * @param counts
+	 *            The amount of pixels in every cell
+	 * @param cell
+	 *            The index of the cell
+	 * @return The average brightness, or 0 if the cell has no pixels.
+	 */
+	private static double average(double[] gray, int[] counts, int cell) {
+		return counts[cell] == 0 ? 0 : gray[cell] / counts[cell];
+	}
+}
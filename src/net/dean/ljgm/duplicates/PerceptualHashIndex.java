@@ -0,0 +1,242 @@
+package net.dean.ljgm.duplicates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.dean.ljgm.LJGM;
+
+/*
+ * PerceptualHashIndex.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.duplicates)
+ */
+/**
+ * This class stores the {@link PerceptualHash}es of images and finds images
+ * that look alike through a {@link BKTree}. The hashes are computed from the
+ * icons that the image loader has already decoded, so hashing an image costs
+ * almost nothing. The index is saved to a binary file and is safe to use from
+ * more than one thread.
+ */
+public class PerceptualHashIndex {
+
+	/** The number every index file starts with. */
+	private static final int MAGIC = 0x4C4A5048; // "LJPH"
+
+	/** The version of the file format. */
+	private static final int VERSION = 1;
+
+	/** The file the index is saved to. */
+	private final File file;
+
+	/** The hashes, mapped by the absolute path of their file. */
+	private final Map<String, Entry> entries;
+
+	/** The tree that is used to find similar hashes. */
+	private final BKTree<File> tree;
+
+	/** True if the index has changed since it was last saved or loaded. */
+	private boolean dirty;
+
+	/**
+	 * Instantiates a new, empty PerceptualHashIndex.
+	 * 
+	 * @param file
+	 *            The file the index is loaded from and saved to
+	 */
+	public PerceptualHashIndex(File file) {
+		this.file = file;
+		this.entries = new HashMap<>();
+		this.tree = new BKTree<>();
+		this.dirty = false;
+	}
+
+	/**
+	 * Checks if a file needs to be hashed, which is when it is not in the index
+	 * or it has changed since it was hashed.
+	 * 
+	 * @param f
+	 *            The file
+	 * @return True, if the file needs to be hashed.
+	 */
+	public synchronized boolean needsHash(File f) {
+		Entry entry = entries.get(f.getAbsolutePath());
+		return entry == null || entry.size != f.length() || entry.lastModified != f.lastModified();
+	}
+
+	/**
+	 * Adds the hash of a file to the index, replacing an older one.
+	 * 
+	 * @param f
+	 *            The file
+	 * @param hash
+	 *            The hash of the file
+	 */
+	public synchronized void put(File f, long hash) {
+		File absolute = f.getAbsoluteFile();
+		put(absolute.getPath(), new Entry(absolute, f.length(), f.lastModified(), hash));
+		dirty = true;
+	}
+
+	/**
+	 * Adds an entry to the map and the tree, replacing an older one.
+	 * 
+	 * @param path
+	 *            The absolute path of the file
+	 * @param entry
+	 *            The entry
+	 */
+	private void put(String path, Entry entry) {
+		Entry old = entries.put(path, entry);
+		if (old != null) {
+			tree.remove(old.hash, old.file);
+		}
+		tree.add(entry.hash, entry.file);
+	}
+
+	/**
+	 * Finds the images that look like an image. The image must have been hashed
+	 * already.
+	 * 
+	 * @param f
+	 *            The image
+	 * @param maxDistance
+	 *            The maximum amount of bits that may differ between the hashes
+	 * @return The similar images, including the image itself, or an empty list
+	 *         if the image has not been hashed.
+	 */
+	public synchronized List<File> findSimilar(File f, int maxDistance) {
+		Entry entry = entries.get(f.getAbsolutePath());
+		if (entry == null) {
+			return new ArrayList<>();
+		}
+		return findSimilar(entry.hash, maxDistance);
+	}
+
+	/**
+	 * Finds the images whose hashes are within a distance of a hash.
+	 * 
+	 * @param hash
+	 *            The hash
+	 * @param maxDistance
+	 *            The maximum amount of bits that may differ between the hashes
+	 * @return The similar images
+	 */
+	public synchronized List<File> findSimilar(long hash, int maxDistance) {
+		return tree.find(hash, maxDistance);
+	}
+
+	/**
+	 * Gets the amount of hashes in the index.
+	 * 
+	 * @return The amount of hashes
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Loads the index from its file. Hashes that were added before the index
+	 * was loaded are kept. Does nothing if the file does not exist.
+	 */
+	public void load() {
+		if (!file.exists()) {
+			return;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				LJGM.instance().getLogger().warn("Ignoring an unknown perceptual hash index: " + file.getAbsolutePath());
+				return;
+			}
+
+			int count = in.readInt();
+			List<Entry> loaded = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				loaded.add(new Entry(new File(in.readUTF()), in.readLong(), in.readLong(), in.readLong()));
+			}
+
+			synchronized (this) {
+				for (Entry entry : loaded) {
+					String path = entry.file.getPath();
+					if (!entries.containsKey(path)) {
+						put(path, entry);
+					}
+				}
+			}
+			LJGM.instance().getLogger().debug("Loaded " + count + " perceptual hashes");
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not read the perceptual hash index: ");
+		}
+	}
+
+	/**
+	 * Saves the index to its file if it has changed.
+	 */
+	public synchronized void save() {
+		if (!dirty) {
+			return;
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Entry entry : entries.values()) {
+				out.writeUTF(entry.file.getPath());
+				out.writeLong(entry.size);
+				out.writeLong(entry.lastModified);
+				out.writeLong(entry.hash);
+			}
+			dirty = false;
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not save the perceptual hash index: ");
+		}
+	}
+
+	/**
+	 * The hash of a file and the identity of the file when it was hashed.
+	 */
+	private static class Entry {
+
+		/** The absolute file. */
+		private final File file;
+
+		/** The size of the file when it was hashed. */
+		private final long size;
+
+		/** The modification time of the file when it was hashed. */
+		private final long lastModified;
+
+		/** The hash. */
+		private final long hash;
+
+		/**
+		 * Instantiates a new Entry.
+		 * 
+		 * @param file
+		 *            The absolute file
+		 * @param size
+		 *            The size of the file
+		 * @param lastModified
+		 *            The modification time of the file
+		 * @param hash
+		 *            The hash
+		 */
+		private Entry(File file, long size, long lastModified, long hash) {
+			this.file = file;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package net.dean.ljgm.gui;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import net.dean.ljgm.Gallery;
+import net.dean.ljgm.LJGMUtils;
+import net.dean.ljgm.duplicates.DuplicateReport;
+
+/*
+ * DuplicatesView.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.gui)
+ */
+/**
+ * This class shows the user the groups of duplicate images of a gallery. Every
+ * group is shown as one item that lists the copies and the galleries they
+ * belong to.
+ */
+public class DuplicatesView extends Stage {
+
+	/**
+	 * Instantiates a new DuplicatesView.
+	 * 
+	 * @param report
+	 *            The result of the duplicate scan
+	 * @param gallery
+	 *            The gallery whose duplicates are shown
+	 */
+	public DuplicatesView(DuplicateReport report, Gallery gallery) {
+		super(StageStyle.DECORATED);
+		setTitle(LJGMUtils.generateStageTitle("Duplicates in " + gallery.getName()));
+
+		List<List<File>> groups = report.getGroups(gallery);
+		List<String> items = new ArrayList<>(groups.size());
+		for (List<File> group : groups) {
+			StringBuilder item = new StringBuilder();
+			for (File f : group) {
+				if (item.length() > 0) {
+					item.append('\n');
+				}
+				item.append(f.getAbsolutePath()).append(" ").append(report.getGalleries(f));
+			}
+			items.add(item.toString());
+		}
+
+		BorderPane bp = new BorderPane();
+		bp.setPadding(new Insets(10));
+		bp.setTop(new Label(groups.isEmpty() ? "There are no duplicates in this gallery!" : groups.size()
+				+ " images have more than one copy:"));
+		bp.setCenter(new ListView<String>(FXCollections.observableList(items)));
+		BorderPane.setMargin(bp.getTop(), new Insets(0, 0, 5, 0));
+
+		setScene(new Scene(bp, 600, 400));
+	}
+}
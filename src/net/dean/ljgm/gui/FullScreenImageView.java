@@ -1,13 +1,26 @@
 package net.dean.ljgm.gui;
 
 import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import javafx.application.Platform;
+import javafx.geometry.Dimension2D;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.ProgressIndicatorBuilder;
+import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.BorderPane;
-import net.dean.gui.fx.ImageWithFile;
+import javafx.stage.Screen;
+import net.dean.ljgm.ConfigManager;
+import net.dean.ljgm.LJGM;
+import net.dean.ljgm.image.IconDecoder;
 import net.dean.ljgm.task.Queueable;
+import net.dean.util.file.FileUtil;
 
 /*
  * FullscreenImageView.java
@@ -19,9 +32,35 @@ import net.dean.ljgm.task.Queueable;
 /**
  * This class allows a progress indicator set to indeterminate progress to
  * be shown until it has been loaded, upon which time the image is displayed.
+ * While the image loads, its icon can be shown in its place right away, and
+ * then a subsampled version of it at the size of the screen. Every version
+ * replaces the last one in the same ImageView, at the size of the image.
  */
 public class FullScreenImageView extends BorderPane implements Queueable {
 
+	/** The stage of an image that only shows its icon. */
+	private static final int THUMBNAIL = 1;
+
+	/** The stage of an image that shows its subsampled version. */
+	private static final int PREVIEW = 2;
+
+	/** The stage of an image that shows the whole image. */
+	private static final int FULL = 3;
+
+	/**
+	 * Decodes the subsampled versions. Only the latest one waits, since the
+	 * others were asked for by images that were paged past already.
+	 */
+	private static final ExecutorService PREVIEWS = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Preview decoder");
+					t.setDaemon(true);
+					return t;
+				}
+			}, new ThreadPoolExecutor.DiscardOldestPolicy());
 
 	/**
 	 * The {@link ProgressIndicator} that shows that the image has not been
@@ -34,25 +73,134 @@ public class FullScreenImageView extends BorderPane implements Queueable {
 
 	/** The file of the image that will be displayed here. */
 	private File file;
+
+	/** The size of the image, or <code>null</code> if it isn't known. */
+	private Dimension2D size;
+
+	/**
+	 * The stage of the version of the image that is showing, or 0 if none is.
+	 * Versions only replace the ones of earlier stages.
+	 */
+	private volatile int stage;
+
+	/** True once the subsampled version was asked for. */
+	private boolean previewRequested;
 	
 	/**
 	 * Instantiates a new full screen image view.
 	 *
 	 * @param f The file to use
+	 * @param size The size of the image, or <code>null</code> if it isn't known
 	 */
-	public FullScreenImageView(File f) {
+	public FullScreenImageView(File f, Dimension2D size) {
 		this.file = f;
+		this.size = size;
 		this.progressIndicator = ProgressIndicatorBuilder.create().progress(-1.0).maxWidth(50).build();
 		this.imageView = new ImageView();
+		if (size != null) {
+			// Earlier versions are smaller, but are shown as large as the image
+			imageView.setFitWidth(size.getWidth());
+			imageView.setFitHeight(size.getHeight());
+			imageView.setPreserveRatio(true);
+		}
 		setCenter(progressIndicator);
 	}
 	
 	/* (non-Javadoc)
-	 * @see net.dean.ljgm.task.Queueable#onLoaded(net.dean.gui.fx.ImageWithFIle)
+	 * @see net.dean.ljgm.task.Queueable#onLoaded(javafx.scene.image.Image)
 	 */
 	@Override
-	public void onLoaded(ImageWithFile img) {
+	public void onLoaded(Image img) {
+		show(img, null, FULL);
+	}
+
+	/**
+	 * Shows the icon of the image until a better version is loaded.
+	 * 
+	 * @param icon
+	 *            A view of the icon
+	 */
+	public void showThumbnail(ImageView icon) {
+		show(icon.getImage(), icon.getViewport(), THUMBNAIL);
+	}
+
+	/**
+	 * Starts decoding a version of the image at the size of the screen, which
+	 * is shown until the whole image is loaded. This is only done if the
+	 * image is at least twice as large as the screen and its format can be
+	 * subsampled, since decoding it would otherwise take about as long as
+	 * decoding the whole image.
+	 */
+	public void loadPreview() {
+		if (previewRequested || stage >= PREVIEW || size == null) {
+			return;
+		}
+		previewRequested = true;
+
+		Rectangle2D screen = Screen.getPrimary().getVisualBounds();
+		final double width = screen.getWidth();
+		final double height = screen.getHeight();
+		if (Math.max(size.getWidth() / width, size.getHeight() / height) < 2 || !isSubsampled()) {
+			return;
+		}
+
+		final boolean smooth = LJGM.instance().getConfigManager().isFullscreenImagesSmooth();
+		PREVIEWS.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				if (stage >= PREVIEW) {
+					return;
+				}
+
+				final Image preview = IconDecoder.decodeSubsampled(file, width, height, true, smooth);
+				if (preview == null || preview.isError()) {
+					return;
+				}
+				Platform.runLater(new Runnable() {
+
+					@Override
+					public void run() {
+						show(preview, null, PREVIEW);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Checks if the format of the image is decoded with source subsampling.
+	 * 
+	 * @return True, if it is one of the subsampled formats in the settings
+	 */
+	private boolean isSubsampled() {
+		ConfigManager config = LJGM.instance().getConfigManager();
+		for (String format : config.getIconSubsampleFormats()) {
+			if (FileUtil.fileHasExtension(file, format)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Shows a version of the image, unless a better one is showing already.
+	 * 
+	 * @param img
+	 *            The version
+	 * @param viewport
+	 *            The part of it to show, or <code>null</code> for all of it
+	 * @param stage
+	 *            The stage of the version
+	 */
+	private void show(Image img, Rectangle2D viewport, int stage) {
+		if (stage <= this.stage) {
+			return;
+		}
+
+		this.stage = stage;
 		imageView.setImage(img);
+		imageView.setViewport(viewport);
 		setCenter(imageView);
 	}
 
@@ -64,4 +212,21 @@ public class FullScreenImageView extends BorderPane implements Queueable {
 		return file;
 	}
 
+	/**
+	 * Checks if the whole image has been loaded.
+	 * 
+	 * @return True, if the whole image is showing
+	 */
+	public boolean isLoaded() {
+		return stage == FULL;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.dean.ljgm.task.Queueable#isFullSize()
+	 */
+	@Override
+	public boolean isFullSize() {
+		return true;
+	}
+
 }
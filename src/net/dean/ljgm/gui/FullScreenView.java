@@ -1,8 +1,11 @@
 package net.dean.ljgm.gui;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -10,8 +13,10 @@ import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
+import javafx.geometry.Dimension2D;
 import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonBuilder;
@@ -32,6 +37,8 @@ import javafx.stage.StageStyle;
 import net.dean.gui.fx.ImageWithFile;
 import net.dean.ljgm.Gallery;
 import net.dean.ljgm.LJGM;
+import net.dean.ljgm.image.ImageHeaders;
+import net.dean.ljgm.task.Lane;
 
 /*
  * FullscreenView.java
@@ -55,8 +62,16 @@ public class FullScreenView extends Stage {
 	/** The property that represents the index of the current image. */
 	private IntegerProperty imageIndex;
 
-	/** A list of ImageViews that house their own images. */
-	private List<ImageView> displays;
+	/**
+	 * The views of the current image and its neighbours, mapped by their
+	 * index. Views further away are dropped so their images can be collected.
+	 * They are {@link FullScreenImageView}s, or {@link TiledImageView}s for
+	 * images too large to be decoded whole.
+	 */
+	private Map<Integer, Node> displays;
+
+	/** Moves to the next or previous image when an arrow key is released. */
+	private EventHandler<KeyEvent> arrowKeys;
 
 	/** The border pane that will house all of the components on the scene. */
 	private BorderPane borderPane;
@@ -67,8 +82,6 @@ public class FullScreenView extends Stage {
 	/** The controls that the user can use to navigate the gallery. */
 	private FullscreenViewControls controls;
 
-	// private final ImageLoaderQueue queue;
-
 	/**
 	 * Instantiates a new FullScreenView
 	 * 
@@ -91,27 +104,21 @@ public class FullScreenView extends Stage {
 		});
 		this.controls = new FullscreenViewControls();
 		controls.setStyle("-fx-background-color: rgba(215, 215, 215, .9);");
-		// this.queue = new ImageLoaderQueue();
-		
-		List<File> images = this.gallery.getAllImages();
-		
-		this.displays = new ArrayList<>(images.size());
-		for (int i = 0; i < images.size(); i++) {
-			displays.add(new ImageView(new ImageWithFile(images.get(i))));
-			displays.get(i).setOnKeyReleased(new EventHandler<KeyEvent>() {
 
-				@Override
-				public void handle(KeyEvent e) {
-					if (e.getCode() == KeyCode.LEFT) {
-						previous();
-					} else if (e.getCode() == KeyCode.RIGHT) {
-						next();
-					}
+		// Images are loaded by the image queue of the viewing area when they
+		// are needed, ahead of any icons it is still loading
+		this.displays = new HashMap<>();
+		this.arrowKeys = new EventHandler<KeyEvent>() {
+
+			@Override
+			public void handle(KeyEvent e) {
+				if (e.getCode() == KeyCode.LEFT) {
+					previous();
+				} else if (e.getCode() == KeyCode.RIGHT) {
+					next();
 				}
-			});
-			// queue.queue(displays.get(i));
-		}
-		// queue.start();
+			}
+		};
 		this.borderPane = new BorderPane();
 		// Make the background gray
 		borderPane.setStyle("-fx-background-color: rgb(215, 215, 215);");
@@ -216,10 +223,19 @@ public class FullScreenView extends Stage {
 			return;
 		} else {
 			// Else the image index is fine and can be loaded as is.
+			// The image that was showing is only a neighbour now, so it
+			// doesn't hold up the one that will be shown
+			Node previous = displays.get(imageIndex.get());
+			if (previous instanceof FullScreenImageView && imageIndex.get() != index) {
+				LJGM.instance().getViewingArea().demote((FullScreenImageView) previous, Lane.PREFETCH);
+			}
 			imageIndex.set(index);
-			ImageWithFile img = getImage(index);
-			imageContainer.setCenter(displays.get(index));
-			controls.updateFile(img);
+			imageContainer.setCenter(getDisplay(index, Lane.FULLSCREEN));
+			// The neighbours are likely to be shown next
+			getDisplay((index + 1) % images.size(), Lane.PREFETCH);
+			getDisplay((index + images.size() - 1) % images.size(), Lane.PREFETCH);
+			dropDisplays(index, images.size());
+			controls.updateFile(images.get(index));
 			System.out.println("Setting image to index " + index + " (image " + (index + 1) + ")");
 		}
 	}
@@ -240,6 +256,87 @@ public class FullScreenView extends Stage {
 //		}
 //	}
 
+	/**
+	 * Gets the view of an image, and creates it and starts loading its image
+	 * if it doesn't exist yet. If it does and its image is still waiting to be
+	 * loaded, it is moved to the given lane. Images too large to be decoded
+	 * whole are shown in a {@link TiledImageView}, which decodes them itself.
+	 * 
+	 * @param index
+	 *            The index of the image
+	 * @param lane
+	 *            The lane to load the image in
+	 * @return The view
+	 */
+	private Node getDisplay(int index, Lane lane) {
+		Node display = displays.get(index);
+		if (display == null) {
+			File file = gallery.getAllImages().get(index);
+			Dimension2D size = getSize(file);
+			if (size != null && TiledImageView.needsTiles(size)) {
+				display = new TiledImageView(file, size);
+			} else {
+				FullScreenImageView view = new FullScreenImageView(file, size);
+				// Show the icon until the image is loaded, if there is one
+				ImageView icon = LJGM.instance().getViewingArea().getIcon(file);
+				if (icon != null) {
+					view.showThumbnail(icon);
+				}
+				if (lane == Lane.FULLSCREEN) {
+					view.loadPreview();
+				}
+				LJGM.instance().getViewingArea().load(view, lane);
+				display = view;
+			}
+			display.setOnKeyReleased(arrowKeys);
+			displays.put(index, display);
+		} else if (lane == Lane.FULLSCREEN && display instanceof FullScreenImageView
+				&& !((FullScreenImageView) display).isLoaded()) {
+			((FullScreenImageView) display).loadPreview();
+			LJGM.instance().getViewingArea().load((FullScreenImageView) display, lane);
+		}
+		return display;
+	}
+
+	/**
+	 * Gets the size of an image from its header.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @return The size, or <code>null</code> if it could not be read
+	 */
+	private static Dimension2D getSize(File file) {
+		try {
+			return ImageHeaders.getSize(file);
+		} catch (IOException e) {
+			// Loading the image will report the problem
+			return null;
+		}
+	}
+
+	/**
+	 * Drops the views of the images that are not the current one or next to
+	 * it. Their images are not loaded if they are still waiting to be.
+	 * 
+	 * @param index
+	 *            The index of the current image
+	 * @param size
+	 *            The amount of images
+	 */
+	private void dropDisplays(int index, int size) {
+		for (Iterator<Integer> it = displays.keySet().iterator(); it.hasNext();) {
+			int i = it.next();
+			int distance = Math.abs(i - index);
+			if (Math.min(distance, size - distance) > 1) {
+				Node display = displays.get(i);
+				if (display instanceof FullScreenImageView) {
+					LJGM.instance().getViewingArea().unload((FullScreenImageView) display);
+				}
+				it.remove();
+			}
+		}
+	}
+
 	/**
 	 * Moves to the next image.
 	 */
@@ -337,7 +434,7 @@ public class FullScreenView extends Stage {
 
 				@Override
 				public void handle(KeyEvent event) {
-					if (event.getCode() == KeyCode.RIGHT && slider.valueProperty().intValue() == displays.size()) {
+					if (event.getCode() == KeyCode.RIGHT && slider.valueProperty().intValue() == gallery.getAllImages().size()) {
 						System.out.println("Very end, next()");
 						next();
 					}
@@ -382,11 +479,11 @@ public class FullScreenView extends Stage {
 		 * Called when the image is changed so that the file name label can be updated
 		 * with the appropriate information.
 		 * 
-		 * @param img
-		 *            The new image
+		 * @param file
+		 *            The file of the new image
 		 */
-		public void updateFile(ImageWithFile img) {
-			fileNameLabel.setText(img.getFile().getName());
+		public void updateFile(File file) {
+			fileNameLabel.setText(file.getName());
 		}
 
 	}
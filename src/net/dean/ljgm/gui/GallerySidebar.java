@@ -1,10 +1,12 @@
 package net.dean.ljgm.gui;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import javafx.collections.FXCollections;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
@@ -14,6 +16,8 @@ import javafx.scene.control.ContextMenu;
 import javafx.scene.control.ListView;
 import javafx.scene.control.MenuItemBuilder;
 import javafx.scene.control.SelectionMode;
+import javafx.scene.control.TextField;
+import javafx.scene.control.TextFieldBuilder;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseButton;
@@ -24,6 +28,7 @@ import net.dean.ljgm.Gallery;
 import net.dean.ljgm.GalleryManager;
 import net.dean.ljgm.LJGM;
 import net.dean.ljgm.LJGMUtils;
+import net.dean.ljgm.duplicates.DuplicateScanTask;
 import net.dean.ljgm.gui.gallerycreator.GalleryCreator;
 
 /**
@@ -48,6 +53,9 @@ public class GallerySidebar extends BorderPane {
 	 */
 	private Button addGalleryButton;
 
+	/** The field to search for images by name or path across all galleries. */
+	private TextField searchField;
+
 	/**
 	 * Instantiates a new {@link GallerySidebar}.
 	 * 
@@ -69,13 +77,26 @@ public class GallerySidebar extends BorderPane {
 
 		galleryList.getSelectionModel().setSelectionMode(SelectionMode.SINGLE);
 
+		this.searchField = TextFieldBuilder.create().promptText("Search images (e.g. beach or *.png)").build();
+		BorderPane.setMargin(searchField, new Insets(0, 0, 5, 0));
+		searchField.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent e) {
+				search(searchField.getText().trim());
+			}
+		});
+
 		populate(galleryManager.getGalleries());
 
 		galleryList.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			@Override
 			public void handle(MouseEvent e) {
 				if (e.getButton() == MouseButton.PRIMARY) {
-					GallerySidebar.this.view.setFocus(getSelectedGallery());
+					Gallery g = getSelectedGallery();
+					GallerySidebar.this.view.setFocus(g);
+					// Focusing resolves the gallery, so its count is known now
+					updateCount(g);
 				} else if (e.getButton() == MouseButton.SECONDARY) {
 					ContextMenu menu = new ContextMenu();
 					menu.getItems().add(MenuItemBuilder.create().text("Edit...").onAction(new EventHandler<ActionEvent>() {
@@ -87,6 +108,25 @@ public class GallerySidebar extends BorderPane {
 							creator.show();
 						}
 					}).build());
+					menu.getItems().add(MenuItemBuilder.create().text("Find duplicates...").onAction(new EventHandler<ActionEvent>() {
+
+						@Override
+						public void handle(ActionEvent event) {
+							findDuplicates(getSelectedGallery());
+						}
+					}).build());
+					menu.getItems().add(MenuItemBuilder.create().text("Rescan").onAction(new EventHandler<ActionEvent>() {
+
+						@Override
+						public void handle(ActionEvent event) {
+							Gallery g = getSelectedGallery();
+							if (g != null) {
+								g.rescan();
+								GallerySidebar.this.view.refresh();
+								updateCount(g);
+							}
+						}
+					}).build());
 
 					menu.show(LJGM.instance().getStage(), e.getScreenX(), e.getScreenY());
 				}
@@ -101,10 +141,69 @@ public class GallerySidebar extends BorderPane {
 				new GalleryCreator().show();
 			}
 		});
+		setTop(searchField);
 		setCenter(galleryList);
 		setBottom(addGalleryButton);
 	}
+
+	/**
+	 * Searches the paths of every image in the library and shows the results
+	 * as a gallery on the {@link ViewingArea}.
+	 * 
+	 * @param query
+	 *            A part of a path, or a glob
+	 */
+	private void search(String query) {
+		if (query.isEmpty()) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		List<File> results = LJGM.instance().getSearchIndex().search(query);
+		LJGM.instance().getLogger().debug("Found " + results.size() + " images matching \"" + query + "\" in "
+				+ (System.nanoTime() - start) / 1000000 + "ms");
+
+		if (results.isEmpty()) {
+			LJGM.instance().getStatusBar().setMessage("No images match \"" + query + "\"");
+			return;
+		}
+		galleryList.getSelectionModel().clearSelection();
+		view.setFocus(Gallery.fromFiles("Search: " + query, results));
+	}
 	
+	/**
+	 * Looks for duplicate images across all galleries in the background, and
+	 * shows the ones of a gallery once it's done.
+	 * 
+	 * @param gallery
+	 *            The gallery whose duplicates will be shown
+	 */
+	private void findDuplicates(final Gallery gallery) {
+		if (gallery == null) {
+			return;
+		}
+
+		final DuplicateScanTask task = new DuplicateScanTask(galleryManager.getGalleries());
+		LJGM.instance().getStatusBar().setMessage("Looking for duplicates...");
+		task.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+
+			@Override
+			public void handle(WorkerStateEvent event) {
+				LJGM.instance().getStatusBar().setMessage("");
+				new DuplicatesView(task.getValue(), gallery).show();
+			}
+		});
+		task.setOnFailed(new EventHandler<WorkerStateEvent>() {
+
+			@Override
+			public void handle(WorkerStateEvent event) {
+				LJGM.instance().getStatusBar().setMessage("Could not look for duplicates");
+				LJGM.instance().getLogger().throwable(task.getException(), "Duplicate scan failed: ");
+			}
+		});
+		DuplicateScanTask.startInBackground(task);
+	}
+
 	public ListView<String> getListView() {
 		return galleryList;
 	}
@@ -128,11 +227,69 @@ public class GallerySidebar extends BorderPane {
 		for (String name : names) {
 			
 			// [17] Test gallery
-			newNames.add("[" + galleryManager.getGallery(name).getAllImages().size() + "] " + name);
+			newNames.add(getLabel(galleryManager.getGallery(name)));
 		}
 		galleryList.setItems(FXCollections.observableList(newNames));
 	}
 
+	/**
+	 * Updates the image count of a gallery in the list, keeping the selection.
+	 * 
+	 * @param g
+	 *            The gallery
+	 */
+	public void updateCount(Gallery g) {
+		if (g == null) {
+			return;
+		}
+
+		List<String> items = galleryList.getItems();
+		for (int i = 0; i < items.size(); i++) {
+			if (removeImageCount(items.get(i)).equals(g.getName())) {
+				String label = getLabel(g);
+				if (!label.equals(items.get(i))) {
+					boolean selected = galleryList.getSelectionModel().getSelectedIndex() == i;
+					items.set(i, label);
+					if (selected) {
+						galleryList.getSelectionModel().select(i);
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Selects a gallery in the list without focusing it.
+	 * 
+	 * @param g
+	 *            The gallery
+	 */
+	public void select(Gallery g) {
+		List<String> items = galleryList.getItems();
+		for (int i = 0; i < items.size(); i++) {
+			if (removeImageCount(items.get(i)).equals(g.getName())) {
+				galleryList.getSelectionModel().select(i);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Gets the text a gallery is shown with in the list. The count of images is
+	 * only shown if the gallery is resolved, since counting them would
+	 * otherwise walk its directories.
+	 * 
+	 * @param g
+	 *            The gallery
+	 * @return For instance, <code>[17] Test gallery</code> or
+	 *         <code>[?] Test gallery</code>
+	 */
+	private String getLabel(Gallery g) {
+		String count = g.isResolved() ? String.valueOf(g.getImageCount()) : "?";
+		return "[" + count + "] " + g.getName();
+	}
+
 	/**
 	 * Gets the selected gallery.
 	 * 
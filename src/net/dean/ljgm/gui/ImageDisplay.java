@@ -1,29 +1,35 @@
 package net.dean.ljgm.gui;
 
 import java.io.File;
+import java.util.List;
 
+import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonBuilder;
 import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItemBuilder;
 import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.ProgressIndicatorBuilder;
+import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.text.TextAlignment;
-import net.dean.gui.fx.ImageWithFile;
 import net.dean.ljgm.Gallery;
 import net.dean.ljgm.LJGM;
+import net.dean.ljgm.LJGMDefaults;
 import net.dean.ljgm.task.Queueable;
 
 /**
  * This class displays an icon of an image once it has been loaded. If the image
  * has not been loaded yet, a {@link ProgressIndicator} with indeterminate
  * progress will show in it's place. Once it's image has been loaded,
- * {@link #onLoaded(ImageWithFile)} can be called and the ProgressIndicator will
+ * {@link #onLoaded(Image)} can be called and the ProgressIndicator will
  * be replaced.
  * 
  * @see ProgressIndicator#INDETERMINATE_PROGRESS.
@@ -42,6 +48,15 @@ public class ImageDisplay extends BorderPane implements Queueable {
 	/** The button that will be used to detect mouse presses. */
 	private Button button;
 
+	/** The size the icon is shown at. */
+	private double iconSize;
+
+	/**
+	 * The latest modification time of the file the icon that is showing was
+	 * made from, or -1 if no icon is showing.
+	 */
+	private long iconTime = -1;
+
 	/**
 	 * Instantiates a new {@link ImageDisplay}.
 	 * 
@@ -51,8 +66,10 @@ public class ImageDisplay extends BorderPane implements Queueable {
 	 *            The owner of the image
 	 * @param index
 	 *            The index of the image in the gallery
+	 * @param iconSize
+	 *            The size the icon is shown at
 	 */
-	public ImageDisplay(File f, final Gallery owner, final int index) {
+	public ImageDisplay(File f, final Gallery owner, final int index, double iconSize) {
 		this.file = f;
 		double prefSize = 65;
 		this.progressIndicator = ProgressIndicatorBuilder.create().progress(-1.0).prefWidth(prefSize).prefHeight(prefSize)
@@ -60,7 +77,7 @@ public class ImageDisplay extends BorderPane implements Queueable {
 		this.button = ButtonBuilder.create().alignment(Pos.CENTER).textAlignment(TextAlignment.CENTER)
 				.contentDisplay(ContentDisplay.TOP).graphic(progressIndicator).build();
 		// setAlignment(Pos.CENTER);
-		setPrefSize(125, 125);
+		setIconSize(iconSize);
 		setCenter(button);
 		if (LJGM.instance().getConfigManager().isDebug()) {
 			button.setText(index + "; " + file.getName());
@@ -70,6 +87,11 @@ public class ImageDisplay extends BorderPane implements Queueable {
 
 			@Override
 			public void handle(MouseEvent e) {
+				if (e.getButton() == MouseButton.SECONDARY) {
+					showContextMenu(e.getScreenX(), e.getScreenY());
+					return;
+				}
+
 				if (!(e.getButton() == MouseButton.PRIMARY)) {
 					return;
 				}
@@ -86,6 +108,33 @@ public class ImageDisplay extends BorderPane implements Queueable {
 		progressIndicator.setOnMouseClicked(click);
 	}
 
+	/**
+	 * Shows a menu with actions for this image.
+	 * 
+	 * @param x
+	 *            The x coordinate on the screen
+	 * @param y
+	 *            The y coordinate on the screen
+	 */
+	private void showContextMenu(double x, double y) {
+		ContextMenu menu = new ContextMenu();
+		menu.getItems().add(MenuItemBuilder.create().text("Find similar images").onAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+				List<File> similar = LJGM.instance().getPerceptualHashIndex()
+						.findSimilar(file, LJGMDefaults.SIMILARITY_THRESHOLD);
+				if (similar.size() < 2) {
+					// Only the image itself
+					LJGM.instance().getStatusBar().setMessage("No images look like " + file.getName());
+					return;
+				}
+				LJGM.instance().getViewingArea().setFocus(Gallery.fromFiles("Similar to " + file.getName(), similar));
+			}
+		}).build());
+		menu.show(this, x, y);
+	}
+
 	/**
 	 * Gets the progress indicator.
 	 * 
@@ -98,10 +147,81 @@ public class ImageDisplay extends BorderPane implements Queueable {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see net.dean.ljgm.task.Queueable#onLoaded(net.dean.gui.fx.ImageWithFIle)
+	 * @see net.dean.ljgm.task.Queueable#onLoaded(javafx.scene.image.Image)
+	 */
+	public void onLoaded(Image img) {
+		// The file was decoded before now
+		iconTime = System.currentTimeMillis();
+		button.setGraphic(fit(new ImageView(img)));
+	}
+
+	/**
+	 * Sets the size the icon is shown at. The icon that is showing is scaled
+	 * right away, whatever size it was loaded at.
+	 * 
+	 * @param size
+	 *            The largest width and height of the icon
+	 */
+	public void setIconSize(double size) {
+		this.iconSize = size;
+		setPrefSize(size + 25, size + 25);
+		if (getIconView() != null) {
+			fit(getIconView());
+		}
+	}
+
+	/**
+	 * Scales an ImageView to {@link #iconSize}.
+	 * 
+	 * @param view
+	 *            The ImageView
+	 * @return The same ImageView
+	 */
+	private ImageView fit(ImageView view) {
+		view.setFitWidth(iconSize);
+		view.setFitHeight(iconSize);
+		view.setPreserveRatio(LJGM.instance().getConfigManager().isIconPreserveRatio());
+		view.setSmooth(true);
+		return view;
+	}
+
+	/**
+	 * Shows the icon from a part of a larger image, such as the atlas of a
+	 * {@link net.dean.ljgm.session.SessionSnapshot}, without loading the image.
+	 * 
+	 * @param atlas
+	 *            The image that holds the icon
+	 * @param region
+	 *            The part of the atlas that is the icon
+	 * @param iconTime
+	 *            The modification time of the file when the icon was made
+	 */
+	public void showPreview(Image atlas, Rectangle2D region, long iconTime) {
+		this.iconTime = iconTime;
+		ImageView view = new ImageView(atlas);
+		view.setViewport(region);
+		button.setGraphic(fit(view));
+	}
+
+	/**
+	 * Gets the latest modification time of the file that the icon showing
+	 * still matches. A file modified after it has changed since the icon was
+	 * made.
+	 * 
+	 * @return The time, or -1 if no icon is showing
+	 */
+	public long getIconTime() {
+		return iconTime;
+	}
+
+	/**
+	 * Gets the view that shows the icon.
+	 * 
+	 * @return The ImageView, or <code>null</code> if the icon is still being
+	 *         loaded
 	 */
-	public void onLoaded(ImageWithFile img) {
-		button.setGraphic(new ImageView(img));
+	public ImageView getIconView() {
+		return button.getGraphic() instanceof ImageView ? (ImageView) button.getGraphic() : null;
 	}
 
 	/**
@@ -112,4 +232,14 @@ public class ImageDisplay extends BorderPane implements Queueable {
 	public File getImageFile() {
 		return file;
 	}
+
+	/**
+	 * Checks if the image is loaded at its full size. Displays only show icons.
+	 * 
+	 * @return False
+	 */
+	@Override
+	public boolean isFullSize() {
+		return false;
+	}
 }
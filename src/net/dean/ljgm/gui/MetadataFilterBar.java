@@ -0,0 +1,136 @@
+package net.dean.ljgm.gui;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import javafx.collections.FXCollections;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.control.TextFieldBuilder;
+import javafx.scene.layout.HBox;
+import net.dean.ljgm.LJGM;
+import net.dean.ljgm.metadata.MetadataQuery;
+import net.dean.ljgm.metadata.MetadataQuery.SortOrder;
+
+/*
+ * MetadataFilterBar.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.gui)
+ */
+/**
+ * This class is the bar above the {@link ViewingArea} that lets the user sort
+ * the images of a gallery and filter them by date taken and pixel size. When
+ * the user applies the changes, the {@link MetadataQuery} of the ViewingArea is
+ * updated and the gallery is shown again.
+ */
+public class MetadataFilterBar extends HBox {
+
+	/** The format of the dates the user enters. */
+	private static final String DATE_FORMAT = "yyyy-MM-dd";
+
+	/** The ViewingArea that is sorted and filtered. */
+	private final ViewingArea view;
+
+	/** The sort order. */
+	private final ComboBox<SortOrder> sortOrder;
+
+	/** The earliest date taken. */
+	private final TextField from;
+
+	/** The latest date taken. */
+	private final TextField to;
+
+	/** The least amount of megapixels. */
+	private final TextField minMegapixels;
+
+	/**
+	 * Instantiates a new MetadataFilterBar.
+	 * 
+	 * @param view
+	 *            The ViewingArea that is sorted and filtered
+	 */
+	public MetadataFilterBar(ViewingArea view) {
+		super(5);
+		this.view = view;
+		setAlignment(Pos.CENTER_LEFT);
+		setPadding(new Insets(5, 20, 0, 20));
+
+		this.sortOrder = new ComboBox<>(FXCollections.observableArrayList(SortOrder.values()));
+		sortOrder.setValue(SortOrder.LIBRARY);
+		this.from = TextFieldBuilder.create().promptText(DATE_FORMAT).prefColumnCount(7).build();
+		this.to = TextFieldBuilder.create().promptText(DATE_FORMAT).prefColumnCount(7).build();
+		this.minMegapixels = TextFieldBuilder.create().promptText("0").prefColumnCount(3).build();
+
+		EventHandler<ActionEvent> apply = new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent e) {
+				apply();
+			}
+		};
+		sortOrder.setOnAction(apply);
+		from.setOnAction(apply);
+		to.setOnAction(apply);
+		minMegapixels.setOnAction(apply);
+
+		Button applyButton = new Button("Apply");
+		applyButton.setOnAction(apply);
+
+		getChildren().addAll(new Label("Sort:"), sortOrder, new Label("Taken from"), from, new Label("to"), to,
+				new Label("Min. megapixels"), minMegapixels, applyButton);
+	}
+
+	/**
+	 * Reads the values of the controls into the query of the ViewingArea and
+	 * shows the gallery again. Values that cannot be read are ignored.
+	 */
+	private void apply() {
+		MetadataQuery query = view.getQuery();
+		query.setSortOrder(sortOrder.getValue());
+
+		Date fromDate = parseDate(from.getText());
+		query.setFrom(fromDate == null ? Long.MIN_VALUE : fromDate.getTime());
+		Date toDate = parseDate(to.getText());
+		// Include the whole day
+		query.setTo(toDate == null ? Long.MAX_VALUE : toDate.getTime() + 24 * 60 * 60 * 1000 - 1);
+
+		long minPixels = 0;
+		if (!minMegapixels.getText().trim().isEmpty()) {
+			try {
+				minPixels = (long) (Double.parseDouble(minMegapixels.getText().trim()) * 1000000);
+			} catch (NumberFormatException e) {
+				LJGM.instance().getLogger().warn("Not a number: " + minMegapixels.getText());
+			}
+		}
+		query.setMinPixels(minPixels);
+
+		view.refresh();
+	}
+
+	/**
+	 * Parses a date the user entered.
+	 * 
+	 * @param text
+	 *            The text of a date field
+	 * @return The date, or <code>null</code> if the text is empty or not a date
+	 */
+	private static Date parseDate(String text) {
+		if (text.trim().isEmpty()) {
+			return null;
+		}
+
+		try {
+			return new SimpleDateFormat(DATE_FORMAT).parse(text.trim());
+		} catch (ParseException e) {
+			LJGM.instance().getLogger().warn("Not a date: " + text);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,434 @@
+package net.dean.ljgm.gui;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javafx.application.Platform;
+import javafx.event.EventHandler;
+import javafx.geometry.Dimension2D;
+import javafx.geometry.HPos;
+import javafx.geometry.VPos;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.ProgressIndicatorBuilder;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import net.dean.ljgm.LJGM;
+import net.dean.ljgm.image.RegionDecoder;
+import net.dean.ljgm.image.TileCache;
+
+/*
+ * TiledImageView.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.gui)
+ */
+/**
+ * This class shows images that are too large to be decoded whole, such as
+ * panoramas and scans. A small overview of the image is decoded first and
+ * shown right away. On top of it, only the tiles of the image that are
+ * visible are decoded, each with as much subsampling as the zoom allows, so
+ * the memory used doesn't depend on the size of the image. The tiles of every
+ * TiledImageView share one {@link TileCache}.<br>
+ * <br>
+ * The image is zoomed with the mouse wheel around the cursor and panned by
+ * dragging it. A double click fits it to the view again.
+ */
+public class TiledImageView extends Region {
+
+	/** Images with more pixels than this are shown in tiles. */
+	private static final double MAX_PIXELS = 40000000;
+
+	/**
+	 * Images with a longer side than this are shown in tiles, since JavaFX
+	 * can't show them in one texture.
+	 */
+	private static final double MAX_SIDE = 8192;
+
+	/** The size of the tiles on the screen, in pixels. */
+	private static final int TILE_SIZE = 512;
+
+	/** The longest side of the overview, in pixels. */
+	private static final int OVERVIEW_SIZE = 2048;
+
+	/** The most pixels of the screen one pixel of the image is zoomed to. */
+	private static final double MAX_ZOOM = 4;
+
+	/** How much one step of the mouse wheel zooms. */
+	private static final double ZOOM_STEP = 1.25;
+
+	/** The tiles of every TiledImageView, which take 128MB at most. */
+	private static final TileCache TILES = new TileCache(128L * 1024 * 1024);
+
+	/** Decodes the overviews and tiles. */
+	private static final ExecutorService DECODER = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime()
+			.availableProcessors() / 2), new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Tile decoder");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/** The image file. */
+	private final File file;
+
+	/** The width of the image. */
+	private final double imageWidth;
+
+	/** The height of the image. */
+	private final double imageHeight;
+
+	/** Shows the overview, scaled to the zoom, underneath the tiles. */
+	private final ImageView overview;
+
+	/** Holds the views of the tiles that are visible and decoded. */
+	private final Group tiles;
+
+	/** Shown until the overview is decoded. */
+	private Node placeholder;
+
+	/** The keys of the tiles that are being decoded. */
+	private final Set<Object> requested;
+
+	/**
+	 * The keys of the visible tiles. Tiles that scroll out of view before
+	 * they are decoded are skipped.
+	 */
+	private volatile Set<Object> visible;
+
+	/** The pixels of the screen per pixel of the image. */
+	private double scale;
+
+	/** The position of the image at the left side of the view. */
+	private double x;
+
+	/** The position of the image at the top of the view. */
+	private double y;
+
+	/** True while the image is fitted to the view. */
+	private boolean fitted;
+
+	/** The position of the mouse when the image was last dragged. */
+	private double dragX, dragY;
+
+	/**
+	 * Instantiates a new TiledImageView and starts decoding the overview.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @param size
+	 *            The size of the image
+	 */
+	public TiledImageView(File file, Dimension2D size) {
+		this.file = file;
+		this.imageWidth = size.getWidth();
+		this.imageHeight = size.getHeight();
+		this.overview = new ImageView();
+		overview.setManaged(false);
+		this.tiles = new Group();
+		tiles.setManaged(false);
+		this.placeholder = ProgressIndicatorBuilder.create().progress(-1.0).maxWidth(50).build();
+		this.requested = new HashSet<>();
+		this.visible = Collections.emptySet();
+		this.fitted = true;
+		getChildren().addAll(overview, tiles, placeholder);
+
+		javafx.scene.shape.Rectangle clip = new javafx.scene.shape.Rectangle();
+		clip.widthProperty().bind(widthProperty());
+		clip.heightProperty().bind(heightProperty());
+		setClip(clip);
+
+		setOnScroll(new EventHandler<ScrollEvent>() {
+
+			@Override
+			public void handle(ScrollEvent e) {
+				zoom(e.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP, e.getX(), e.getY());
+				e.consume();
+			}
+		});
+		setOnMousePressed(new EventHandler<MouseEvent>() {
+
+			@Override
+			public void handle(MouseEvent e) {
+				dragX = e.getX();
+				dragY = e.getY();
+			}
+		});
+		setOnMouseDragged(new EventHandler<MouseEvent>() {
+
+			@Override
+			public void handle(MouseEvent e) {
+				x -= (e.getX() - dragX) / scale;
+				y -= (e.getY() - dragY) / scale;
+				dragX = e.getX();
+				dragY = e.getY();
+				update();
+			}
+		});
+		setOnMouseClicked(new EventHandler<MouseEvent>() {
+
+			@Override
+			public void handle(MouseEvent e) {
+				if (e.getButton() == MouseButton.PRIMARY && e.getClickCount() == 2) {
+					fitted = true;
+					requestLayout();
+				}
+			}
+		});
+
+		decodeOverview();
+	}
+
+	/**
+	 * Checks if an image is too large to be shown whole.
+	 * 
+	 * @param size
+	 *            The size of the image
+	 * @return True if it has to be shown in tiles
+	 */
+	public static boolean needsTiles(Dimension2D size) {
+		return size.getWidth() * size.getHeight() > MAX_PIXELS
+				|| Math.max(size.getWidth(), size.getHeight()) > MAX_SIDE;
+	}
+
+	/**
+	 * Decodes the overview in the background, and shows it once it's done.
+	 */
+	private void decodeOverview() {
+		final int subsampling = getOverviewSubsampling();
+		final Rectangle region = new Rectangle(0, 0, (int) imageWidth, (int) imageHeight);
+		DECODER.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				Image decoded = null;
+				try {
+					decoded = RegionDecoder.decode(file, region, subsampling);
+				} catch (IOException | RuntimeException e) {
+					LJGM.instance().getLogger().err("Could not load " + file.getName() + ": " + e.getMessage());
+				}
+
+				final Image image = decoded;
+				Platform.runLater(new Runnable() {
+
+					@Override
+					public void run() {
+						getChildren().remove(placeholder);
+						if (image == null) {
+							placeholder = new Label("Could not load " + file.getName());
+							getChildren().add(placeholder);
+						} else {
+							overview.setImage(image);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Gets the subsampling the overview is decoded with.
+	 * 
+	 * @return The subsampling that makes the longest side of the overview fit
+	 *         in {@link #OVERVIEW_SIZE}
+	 */
+	private int getOverviewSubsampling() {
+		return (int) Math.ceil(Math.max(imageWidth, imageHeight) / OVERVIEW_SIZE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javafx.scene.Parent#layoutChildren()
+	 */
+	@Override
+	protected void layoutChildren() {
+		layoutInArea(placeholder, 0, 0, getWidth(), getHeight(), 0, HPos.CENTER, VPos.CENTER);
+		if (fitted) {
+			scale = getFitScale();
+		}
+		update();
+	}
+
+	/**
+	 * Gets the zoom that fits the whole image into the view.
+	 * 
+	 * @return The zoom
+	 */
+	private double getFitScale() {
+		return Math.min(getWidth() / imageWidth, getHeight() / imageHeight);
+	}
+
+	/**
+	 * Zooms the image, keeping the pixel under a point of the view in place.
+	 * The image can't be zoomed out further than it fits.
+	 * 
+	 * @param factor
+	 *            How much to zoom in, or out if it is less than 1
+	 * @param viewX
+	 *            The horizontal position of the point in the view
+	 * @param viewY
+	 *            The vertical position of the point in the view
+	 */
+	private void zoom(double factor, double viewX, double viewY) {
+		double fit = getFitScale();
+		double zoomed = Math.max(fit, Math.min(MAX_ZOOM, scale * factor));
+		if (zoomed == scale) {
+			return;
+		}
+
+		double imageX = x + viewX / scale;
+		double imageY = y + viewY / scale;
+		scale = zoomed;
+		x = imageX - viewX / scale;
+		y = imageY - viewY / scale;
+		fitted = zoomed == fit;
+		update();
+	}
+
+	/**
+	 * Keeps the image inside the view, and centers it on the sides where it
+	 * is smaller than the view.
+	 */
+	private void clamp() {
+		double viewWidth = getWidth() / scale;
+		double viewHeight = getHeight() / scale;
+		x = viewWidth >= imageWidth ? (imageWidth - viewWidth) / 2 : Math.max(0, Math.min(x, imageWidth - viewWidth));
+		y = viewHeight >= imageHeight ? (imageHeight - viewHeight) / 2 : Math.max(0, Math.min(y, imageHeight
+				- viewHeight));
+	}
+
+	/**
+	 * Moves the overview and the tiles to the current zoom and position, and
+	 * starts decoding the visible tiles that are not cached.
+	 */
+	private void update() {
+		if (getWidth() <= 0 || getHeight() <= 0 || scale <= 0) {
+			return;
+		}
+
+		clamp();
+		overview.setLayoutX(-x * scale);
+		overview.setLayoutY(-y * scale);
+		overview.setFitWidth(imageWidth * scale);
+		overview.setFitHeight(imageHeight * scale);
+
+		if (getOverviewSubsampling() * scale <= 1) {
+			// The overview already has a pixel for every pixel of the screen
+			visible = new HashSet<>();
+			tiles.getChildren().clear();
+			return;
+		}
+
+		// Decode every n-th pixel, as long as there is still at least one
+		// pixel of the tile per pixel of the screen
+		int subsampling = 1;
+		while (subsampling * 2 * scale <= 1) {
+			subsampling *= 2;
+		}
+		double span = TILE_SIZE * subsampling;
+		int firstColumn = (int) Math.max(0, Math.floor(x / span));
+		int lastColumn = (int) Math.min(Math.ceil(imageWidth / span) - 1, Math.floor((x + getWidth() / scale) / span));
+		int firstRow = (int) Math.max(0, Math.floor(y / span));
+		int lastRow = (int) Math.min(Math.ceil(imageHeight / span) - 1, Math.floor((y + getHeight() / scale) / span));
+
+		Set<Object> wanted = new HashSet<>();
+		List<Node> views = new ArrayList<>();
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				Object key = Arrays.asList(file, subsampling, column, row);
+				wanted.add(key);
+				Image tile = TILES.get(key);
+				if (tile == null) {
+					request(key, new Rectangle((int) (column * span), (int) (row * span), (int) span, (int) span),
+							subsampling);
+					continue;
+				}
+
+				ImageView view = new ImageView(tile);
+				view.setLayoutX((column * span - x) * scale);
+				view.setLayoutY((row * span - y) * scale);
+				view.setFitWidth(Math.min(span, imageWidth - column * span) * scale);
+				view.setFitHeight(Math.min(span, imageHeight - row * span) * scale);
+				view.setSmooth(true);
+				views.add(view);
+			}
+		}
+		visible = wanted;
+		tiles.getChildren().setAll(views);
+	}
+
+	/**
+	 * Decodes a tile in the background, unless it is being decoded already.
+	 * It is shown once it's done if it is still visible.
+	 * 
+	 * @param key
+	 *            The key of the tile
+	 * @param region
+	 *            The region of the image the tile shows
+	 * @param subsampling
+	 *            The subsampling of the tile
+	 */
+	private void request(final Object key, final Rectangle region, final int subsampling) {
+		if (!requested.add(key)) {
+			return;
+		}
+
+		DECODER.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				if (!visible.contains(key)) {
+					// Scrolled out of view while waiting, so it can be
+					// requested again when it comes back
+					Platform.runLater(new Runnable() {
+
+						@Override
+						public void run() {
+							requested.remove(key);
+						}
+					});
+					return;
+				}
+
+				try {
+					TILES.put(key, RegionDecoder.decode(file, region, subsampling));
+				} catch (IOException | RuntimeException e) {
+					// The tile stays requested so it isn't tried again, and the
+					// overview is shown in its place
+					LJGM.instance().getLogger().err("Could not load a tile of " + file.getName() + ": " + e.getMessage());
+					return;
+				}
+
+				Platform.runLater(new Runnable() {
+
+					@Override
+					public void run() {
+						requested.remove(key);
+						if (visible.contains(key)) {
+							update();
+						}
+					}
+				});
+			}
+		});
+	}
+}
@@ -5,18 +5,39 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.EventHandler;
 import javafx.geometry.Insets;
+import javafx.geometry.Bounds;
 import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
 import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.control.Slider;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.GridPaneBuilder;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import net.dean.ljgm.ConfigManager;
 import net.dean.ljgm.Gallery;
 import net.dean.ljgm.LJGM;
+import net.dean.ljgm.LJGMDefaults;
 import net.dean.ljgm.LJGMUtils;
+import net.dean.ljgm.image.ThumbnailPack;
+import net.dean.ljgm.metadata.MetadataIndex;
+import net.dean.ljgm.metadata.MetadataQuery;
+import net.dean.ljgm.metadata.MetadataScanTask;
+import net.dean.ljgm.session.SessionSnapshot;
 import net.dean.ljgm.task.ImageLoaderQueue;
+import net.dean.ljgm.task.Lane;
+import net.dean.ljgm.task.Queueable;
 import net.dean.util.CollectionUtils;
 
 // TODO: Auto-generated Javadoc
@@ -32,9 +53,6 @@ public class ViewingArea extends BorderPane {
 	/** The amount of columns of pictures. */
 	private static final int COLUMNS = 5;
 
-	/** The width of each picture that will be displayed on this component. */
-	public static final double ICON_WIDTH = 75;
-
 	/**
 	 * The amount of space between each picture and the amount of space from the
 	 * edges of the window.
@@ -50,6 +68,30 @@ public class ViewingArea extends BorderPane {
 	/** The grid. */
 	private GridPane grid;
 
+	/** The size the icons are shown at. */
+	private double zoom;
+
+	/**
+	 * The tier the icons of {@link #focus} were loaded at. Zooming out keeps
+	 * showing them, zooming in past it loads the next tier.
+	 */
+	private int tier;
+
+	/** The last icon size read from the settings. */
+	private double configIconSize;
+
+	/** The slider that sets {@link #zoom}. */
+	private final Slider zoomSlider;
+
+	/** How the images of {@link #focus} are sorted and filtered. */
+	private final MetadataQuery query;
+
+	/** The task reading the metadata of the images of {@link #focus}. */
+	private MetadataScanTask metadataScan;
+
+	/** The ScrollPane this component is in, or <code>null</code> if not known. */
+	private ScrollPane scrollPane;
+
 	/**
 	 * Instantiates a new ViewingArea that shows a message to the user that says
 	 * that to get started, they need to create a new user.
@@ -73,9 +115,51 @@ public class ViewingArea extends BorderPane {
 		this.focus = g;
 		this.imageQueue = new ImageLoaderQueue();
 		this.grid = GridPaneBuilder.create().padding(new Insets(PADDING)).hgap(PADDING).vgap(PADDING).build();
+		this.query = new MetadataQuery();
 
 		LJGM.instance().getStatusBar().bindProgress(imageQueue.progressProperty());
 
+		final ConfigManager config = LJGM.instance().getConfigManager();
+		this.configIconSize = Math.max(config.getIconWidth(), config.getIconHeight());
+		this.zoom = Math.min(Math.max(configIconSize, LJGMDefaults.MIN_ZOOM), LJGMDefaults.MAX_ZOOM);
+		this.tier = LJGMUtils.getIconTier(zoom);
+		this.zoomSlider = new Slider(LJGMDefaults.MIN_ZOOM, LJGMDefaults.MAX_ZOOM, zoom);
+		zoomSlider.valueProperty().addListener(new InvalidationListener() {
+
+			@Override
+			public void invalidated(Observable observable) {
+				// Only load larger icons once the user lets go
+				setZoom(zoomSlider.getValue(), !zoomSlider.isValueChanging());
+			}
+		});
+		zoomSlider.valueChangingProperty().addListener(new InvalidationListener() {
+
+			@Override
+			public void invalidated(Observable observable) {
+				if (!zoomSlider.isValueChanging()) {
+					setZoom(zoomSlider.getValue(), true);
+				}
+			}
+		});
+		config.iniFileProperty().addListener(new InvalidationListener() {
+
+			@Override
+			public void invalidated(Observable observable) {
+				// The icon size in the settings is the zoom to use
+				double size = Math.max(config.getIconWidth(), config.getIconHeight());
+				if (size != configIconSize) {
+					configIconSize = size;
+					zoomSlider.setValue(size);
+				}
+			}
+		});
+
+		HBox top = new HBox(10);
+		top.setAlignment(Pos.CENTER_LEFT);
+		top.getChildren().addAll(new MetadataFilterBar(this), new Label("Zoom"), zoomSlider);
+		HBox.setMargin(zoomSlider, new Insets(5, 20, 0, 0));
+		setTop(top);
+
 		if (g == null) {
 			setCenter(getBlankDisplay("There are no galleries!"));
 			return;
@@ -93,6 +177,33 @@ public class ViewingArea extends BorderPane {
 	 *            The person which images will be displayed here.
 	 */
 	public void setFocus(final Gallery focus) {
+		setFocus(focus, null);
+	}
+
+	/**
+	 * Sets the focus of this component to the gallery of the last session and
+	 * shows the icons from its snapshot right away. Only icons whose files
+	 * changed since, and icons that are not in the snapshot, are loaded.
+	 * 
+	 * @param focus
+	 *            The gallery that was focused in the last session
+	 * @param snapshot
+	 *            The snapshot of the last session
+	 */
+	public void restore(Gallery focus, SessionSnapshot snapshot) {
+		setFocus(focus, snapshot);
+	}
+
+	/**
+	 * Sets the focus of this component.
+	 * 
+	 * @param focus
+	 *            The gallery to show
+	 * @param snapshot
+	 *            The snapshot to take icons from, or <code>null</code> to load
+	 *            all of them
+	 */
+	private void setFocus(final Gallery focus, final SessionSnapshot snapshot) {
 		if (focus == null) {
 			// If the person is null then all that will be performed is the
 			// removing of the images
@@ -114,11 +225,24 @@ public class ViewingArea extends BorderPane {
 			}
 		}
 
-		if (focus.getAllImages().isEmpty()) {
+		List<File> libraryImages = focus.getAllImages();
+		if (libraryImages.isEmpty()) {
 			setCenter(getBlankDisplay("There are no images in this gallery!"));
 			return;
 		}
 
+		// Only the index is read here, the scan below keeps it up to date
+		scanMetadata(focus, libraryImages);
+		List<File> allImages = query.apply(libraryImages, LJGM.instance().getMetadataIndex());
+		// Full screen views page through the owner of an ImageDisplay, so it
+		// has to hold the images in the order they are shown
+		final Gallery owner = query.isDefault() ? focus : Gallery.fromFiles(focus.getName(), allImages);
+		if (allImages.isEmpty()) {
+			this.focus = focus;
+			setCenter(getBlankDisplay("No images in this gallery match the filter."));
+			return;
+		}
+
 		grid.getChildren().clear();
 
 		// Will be true when the ViewingArea is created or when the user adds a
@@ -128,7 +252,7 @@ public class ViewingArea extends BorderPane {
 			setCenter(grid);
 		}
 
-		List<File> allImages = focus.getAllImages();
+		this.tier = LJGMUtils.getIconTier(zoom);
 		LJGM.instance().getLogger().info("Loading " + allImages.size() + " images for person \"" + focus.getName() + "\"");
 		LJGM.instance().getStage().setTitle(LJGMUtils.generateStageTitle(focus.getName()));
 		
@@ -138,6 +262,10 @@ public class ViewingArea extends BorderPane {
 			imageQueue.cancel();
 		}
 
+		imageQueue.setTier(tier);
+		imageQueue.setGallery(focus.getName());
+		imageQueue.setPack(openPack(focus, libraryImages, tier));
+
 		// Separate the list of files into sublists lists of rows
 		final List<List<File>> rows;
 		if (allImages.size() > COLUMNS) {
@@ -155,20 +283,32 @@ public class ViewingArea extends BorderPane {
 			@Override
 			public void run() {
 				LJGM.instance().getStatusBar().show();
+				List<ImageDisplay> restored = new ArrayList<>();
 
 				// Iterate through the rows
 				for (int i = 0; i < rows.size(); i++) {
 					// Add an ImageDisplay for every image
 					for (int j = 0; j < rows.get(i).size(); j++) {
 						// Add it to (j, i)
-						ImageDisplay imgDisp = new ImageDisplay(rows.get(i).get(j), focus, ((i * COLUMNS) + j));
+						ImageDisplay imgDisp = new ImageDisplay(rows.get(i).get(j), owner, ((i * COLUMNS) + j), zoom);
 						grid.add(imgDisp, j, i);
-						imageQueue.queue(imgDisp);
+
+						Rectangle2D region = snapshot == null ? null : snapshot.getRegion(imgDisp.getImageFile());
+						if (region != null) {
+							imgDisp.showPreview(snapshot.getAtlas(), region,
+									snapshot.getLastModified(imgDisp.getImageFile()));
+							restored.add(imgDisp);
+						} else {
+							imageQueue.queue(imgDisp);
+						}
 					}
 				}
 
 				// Start the deployer
 				imageQueue.start();
+				if (!restored.isEmpty()) {
+					reconcile(focus, snapshot, restored);
+				}
 				// When it is finished, the fully loaded grid will be added.
 			}
 		});
@@ -176,6 +316,328 @@ public class ViewingArea extends BorderPane {
 		this.focus = focus;
 	}
 
+	/**
+	 * Opens the thumbnail pack of a gallery for a tier. Galleries of the library
+	 * get a pack of their icons, so they don't have to be decoded again. Search
+	 * results and the like don't.
+	 * 
+	 * @param g
+	 *            The gallery
+	 * @param images
+	 *            The images of the gallery in library order
+	 * @param tier
+	 *            The size the icons are loaded at
+	 * @return The pack, or <code>null</code> if the gallery doesn't get one
+	 */
+	private ThumbnailPack openPack(Gallery g, List<File> images, int tier) {
+		if (LJGM.instance().getGalleryManager().getGallery(g.getName()) != g) {
+			return null;
+		}
+		return ThumbnailPack.open(ThumbnailPack.getPackFile(g.getName() + "@" + tier), images, tier, tier);
+	}
+
+	/**
+	 * Sets the size the icons are shown at. The icons that are showing are
+	 * scaled right away. If they were loaded at a smaller tier than the new
+	 * size needs, the next tier is loaded and replaces them as it comes in.
+	 * 
+	 * @param size
+	 *            The size to show the icons at
+	 * @param load
+	 *            Whether to load a larger tier if needed, or only scale
+	 */
+	private void setZoom(double size, boolean load) {
+		this.zoom = size;
+		for (Node child : grid.getChildren()) {
+			if (child instanceof ImageDisplay) {
+				((ImageDisplay) child).setIconSize(size);
+			}
+		}
+
+		int needed = LJGMUtils.getIconTier(size);
+		// Smaller icons are scaled down from the ones that are loaded already
+		if (!load || focus == null || needed <= tier) {
+			return;
+		}
+
+		LJGM.instance().getLogger().debug("Loading the " + needed + "px icons of " + focus.getName());
+		this.tier = needed;
+		if (!imageQueue.isDone()) {
+			imageQueue.cancel();
+		}
+		imageQueue.setTier(needed);
+		imageQueue.setPack(openPack(focus, focus.getAllImages(), needed));
+		for (Node child : grid.getChildren()) {
+			if (child instanceof ImageDisplay) {
+				imageQueue.queue((ImageDisplay) child);
+			}
+		}
+		imageQueue.start();
+	}
+
+	/**
+	 * Gets the size the icons are shown at.
+	 * 
+	 * @return The zoom
+	 */
+	public double getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * Sets the size the icons are shown at, as if the slider was moved to it.
+	 * 
+	 * @param size
+	 *            The size, which is kept between {@link LJGMDefaults#MIN_ZOOM}
+	 *            and {@link LJGMDefaults#MAX_ZOOM}
+	 */
+	public void setZoom(double size) {
+		zoomSlider.setValue(Math.min(Math.max(size, LJGMDefaults.MIN_ZOOM), LJGMDefaults.MAX_ZOOM));
+	}
+
+	/**
+	 * Checks the files of icons that were restored from a snapshot in the
+	 * background, and loads the ones that changed since the snapshot was
+	 * taken.
+	 * 
+	 * @param g
+	 *            The gallery the icons belong to
+	 * @param snapshot
+	 *            The snapshot the icons were restored from
+	 * @param restored
+	 *            The displays showing icons from the snapshot
+	 */
+	private void reconcile(final Gallery g, final SessionSnapshot snapshot, final List<ImageDisplay> restored) {
+		Thread t = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				final List<ImageDisplay> stale = new ArrayList<>();
+				for (ImageDisplay display : restored) {
+					if (snapshot.isStale(display.getImageFile())) {
+						stale.add(display);
+					}
+				}
+				LJGM.instance().getLogger().debug(stale.size() + " of " + restored.size() + " restored icons are stale");
+				if (stale.isEmpty()) {
+					return;
+				}
+
+				Platform.runLater(new Runnable() {
+
+					@Override
+					public void run() {
+						// The user may have moved on already
+						if (focus != g) {
+							return;
+						}
+						// They are showing an icon already, so the others come first
+						for (ImageDisplay display : stale) {
+							imageQueue.queue(display, Lane.BACKGROUND);
+						}
+						imageQueue.start();
+					}
+				});
+			}
+		}, "Session reconciler");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Takes a snapshot of the focus and of the icons that can be seen.
+	 * 
+	 * @param scrollPane
+	 *            The ScrollPane this component is in
+	 * @return The snapshot, or <code>null</code> if nothing is focused
+	 */
+	public SessionSnapshot createSnapshot(ScrollPane scrollPane) {
+		if (focus == null) {
+			return null;
+		}
+
+		SessionSnapshot snapshot = new SessionSnapshot(focus.getName(), scrollPane.getVvalue(), zoom, zoom);
+		Bounds visible = scrollPane.localToScene(scrollPane.getBoundsInLocal());
+		for (Node child : grid.getChildren()) {
+			if (!(child instanceof ImageDisplay) || !child.localToScene(child.getBoundsInLocal()).intersects(visible)) {
+				continue;
+			}
+
+			ImageDisplay display = (ImageDisplay) child;
+			ImageView icon = display.getIconView();
+			if (icon != null && icon.getImage() != null) {
+				snapshot.addIcon(display.getImageFile(), icon.getImage(), icon.getViewport(), display.getIconTime());
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Loads the images of the current focus again, even though it has not
+	 * changed. Does nothing if there is no focus.
+	 */
+	public void refresh() {
+		if (focus == null) {
+			return;
+		}
+
+		Gallery g = focus;
+		// Setting the focus to the same gallery is ignored, so clear it first
+		this.focus = null;
+		setFocus(g);
+	}
+
+	/**
+	 * Reads the metadata of the images of a gallery that are not in the
+	 * {@link MetadataIndex} yet in the background. If the images are being
+	 * sorted or filtered, they are shown again when new metadata was read.
+	 * 
+	 * @param g
+	 *            The gallery
+	 * @param images
+	 *            The images of the gallery
+	 */
+	private void scanMetadata(final Gallery g, List<File> images) {
+		if (metadataScan != null && metadataScan.isRunning()) {
+			metadataScan.cancel();
+		}
+
+		final MetadataScanTask task = new MetadataScanTask(images, LJGM.instance().getMetadataIndex());
+		task.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+
+			@Override
+			public void handle(WorkerStateEvent e) {
+				if (task.getValue() > 0 && !query.isDefault() && g == focus) {
+					refresh();
+				}
+			}
+		});
+		this.metadataScan = task;
+		MetadataScanTask.startInBackground(task);
+	}
+
+	/**
+	 * Sets the ScrollPane this component is in. Whenever the part of the grid
+	 * that can be seen changes, the icons in it are moved to the
+	 * {@link Lane#VISIBLE} lane of the image queue.
+	 * 
+	 * @param scrollPane
+	 *            The ScrollPane
+	 */
+	public void setScrollPane(ScrollPane scrollPane) {
+		this.scrollPane = scrollPane;
+		InvalidationListener promoter = new InvalidationListener() {
+
+			@Override
+			public void invalidated(Observable observable) {
+				promoteVisible();
+			}
+		};
+		scrollPane.vvalueProperty().addListener(promoter);
+		scrollPane.viewportBoundsProperty().addListener(promoter);
+		// Changes once a new grid has been laid out
+		grid.heightProperty().addListener(promoter);
+	}
+
+	/**
+	 * Moves the icons that can be seen to the {@link Lane#VISIBLE} lane of the
+	 * image queue.
+	 */
+	private void promoteVisible() {
+		if (scrollPane == null || imageQueue.isEmpty()) {
+			return;
+		}
+
+		Bounds visible = scrollPane.localToScene(scrollPane.getBoundsInLocal());
+		for (Node child : grid.getChildren()) {
+			if (child instanceof ImageDisplay && child.localToScene(child.getBoundsInLocal()).intersects(visible)) {
+				imageQueue.promote((ImageDisplay) child, Lane.VISIBLE);
+			}
+		}
+	}
+
+	/**
+	 * Loads the image of a Queueable with the image queue of this component,
+	 * for instance an image shown in full screen.
+	 * 
+	 * @param queueable
+	 *            The Queueable
+	 * @param lane
+	 *            The lane to load it in
+	 */
+	public void load(Queueable queueable, Lane lane) {
+		imageQueue.queue(queueable, lane);
+		imageQueue.start();
+	}
+
+	/**
+	 * Moves a Queueable that is waiting to be loaded to a lower lane.
+	 * 
+	 * @param queueable
+	 *            The Queueable
+	 * @param lane
+	 *            The lane to move it to
+	 */
+	public void demote(Queueable queueable, Lane lane) {
+		imageQueue.demote(queueable, lane);
+	}
+
+	/**
+	 * Stops a Queueable that is waiting to be loaded from being loaded.
+	 * 
+	 * @param queueable
+	 *            The Queueable
+	 */
+	public void unload(Queueable queueable) {
+		imageQueue.dequeue(queueable);
+	}
+
+	/**
+	 * Gets the icon of an image that has been loaded already, either in the
+	 * grid or in the thumbnail pack of the gallery.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @return A new view of the icon, or <code>null</code> if it isn't loaded
+	 */
+	public ImageView getIcon(File file) {
+		for (Node child : grid.getChildren()) {
+			if (child instanceof ImageDisplay && ((ImageDisplay) child).getImageFile().equals(file)) {
+				ImageView shown = ((ImageDisplay) child).getIconView();
+				if (shown != null) {
+					// The icon may be part of the atlas of a snapshot
+					ImageView icon = new ImageView(shown.getImage());
+					icon.setViewport(shown.getViewport());
+					return icon;
+				}
+				break;
+			}
+		}
+
+		ThumbnailPack pack = imageQueue.getPack();
+		Image packed = pack == null ? null : pack.get(file);
+		return packed == null ? null : new ImageView(packed);
+	}
+
+	/**
+	 * Checks if icons are being loaded. This can be called from any thread.
+	 * 
+	 * @return True, if the image queue is not done
+	 */
+	public boolean isLoading() {
+		return !imageQueue.isDone();
+	}
+
+	/**
+	 * Gets how the images of the focus are sorted and filtered. Call
+	 * {@link #refresh()} after changing it.
+	 * 
+	 * @return The MetadataQuery
+	 */
+	public MetadataQuery getQuery() {
+		return query;
+	}
+
 	/**
 	 * Gets a blank panel with a with a given message in the center.
 	 * 
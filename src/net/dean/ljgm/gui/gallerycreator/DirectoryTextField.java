@@ -225,8 +225,8 @@ class DirectoryTextField extends TextField {
 	 *            The new images
 	 */
 	public void setImages(List<String> images) {
-		images.clear();
-		images.addAll(images);
+		this.images.clear();
+		this.images.addAll(images);
 		updateContents();
 	}
 
@@ -321,8 +321,11 @@ public class GalleryCreator extends Stage {
 			}
 			// Get the information from the selector and use it to create a new
 			// source
-			sources.add(new GallerySource(selector.getDirectoryField().getDirectory(), selector.getDirectoryField()
-					.getImages(), selector.isWatched(), selector.isIncludeSubdirs()));
+			GallerySource source = new GallerySource(selector.getDirectoryField().getDirectory(), selector
+					.getDirectoryField().getImages(), selector.isWatched(), selector.isIncludeSubdirs());
+			// Rules can't be edited here yet, but keep the ones the source had
+			source.setRules(selector.getRules());
+			sources.add(source);
 		}
 
 		// Determine the name
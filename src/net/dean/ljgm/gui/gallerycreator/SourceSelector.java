@@ -1,6 +1,8 @@
 package net.dean.ljgm.gui.gallerycreator;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
@@ -25,6 +27,7 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.stage.DirectoryChooser;
 import net.dean.ljgm.GallerySource;
+import net.dean.ljgm.SourceFilter;
 import net.dean.ljgm.LJGMDefaults;
 
 // TODO: Auto-generated Javadoc
@@ -83,6 +86,9 @@ class SourceSelector extends HBox {
 	
 	private ObjectProperty<InvalidationListener> fieldsChanged;
 
+	/** The include and exclude rules of the source this selector edits. */
+	private List<SourceFilter.Rule> rules;
+
 	/**
 	 * Instantiates a new source selector.
 	 * 
@@ -97,6 +103,7 @@ class SourceSelector extends HBox {
 		super(3);
 		this.galleryCreator = galleryCreator;
 		this.fieldsChanged = new SimpleObjectProperty<>();
+		this.rules = gs == null ? new ArrayList<SourceFilter.Rule>() : gs.getRules();
 		setAlignment(Pos.CENTER);
 		// Padding on left and right, average of 5 on top/bottom
 		setPadding(new Insets(0, 5, 7, 5));
@@ -262,6 +269,15 @@ class SourceSelector extends HBox {
 		return fieldsChanged;
 	}
 
+	/**
+	 * Gets the include and exclude rules of the source.
+	 * 
+	 * @return The rules
+	 */
+	public List<SourceFilter.Rule> getRules() {
+		return rules;
+	}
+
 	/**
 	 * Gets the directory field.
 	 * 
@@ -0,0 +1,404 @@
+package net.dean.ljgm.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/*
+ * ExifReader.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.image)
+ */
+/**
+ * This class reads the EXIF (APP1) segment of a JPEG file without decoding the
+ * image itself. Only the segments in front of the image data are read, so this
+ * is much quicker than loading the image. If the file has no EXIF segment or
+ * the segment is malformed, {@link #read(File)} returns <code>null</code>.
+ */
+public class ExifReader {
+
+	/** The marker that starts every JPEG file. */
+	private static final int SOI = 0xFFD8;
+
+	/** The marker of the segment that contains the EXIF data. */
+	private static final int APP1 = 0xFFE1;
+
+	/** The marker that starts the image data. Nothing is read past it. */
+	private static final int SOS = 0xFFDA;
+
+	/** The marker that ends a JPEG file. */
+	private static final int EOI = 0xFFD9;
+
+	/** The header that an APP1 segment that contains EXIF data starts with. */
+	private static final byte[] EXIF_HEADER = { 'E', 'x', 'i', 'f', 0, 0 };
+
+	/** The tag of the offset of the thumbnail in IFD1. */
+	private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+
+	/** The tag of the length of the thumbnail in IFD1. */
+	private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+	/** The tag of the orientation of the image in IFD0. */
+	private static final int TAG_ORIENTATION = 0x0112;
+
+	/** The tag of the date the file was last changed in IFD0. */
+	private static final int TAG_DATE_TIME = 0x0132;
+
+	/** The tag of the offset of the EXIF IFD in IFD0. */
+	private static final int TAG_EXIF_IFD = 0x8769;
+
+	/** The tag of the date the picture was taken in the EXIF IFD. */
+	private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+
+	/** The format of the dates in EXIF data. */
+	private static final String DATE_FORMAT = "yyyy:MM:dd HH:mm:ss";
+
+	/** The size of one entry in an IFD. */
+	private static final int IFD_ENTRY_SIZE = 12;
+
+	/** The TIFF structure inside the APP1 segment. Offsets are relative to it. */
+	private final ByteBuffer tiff;
+
+	/** The offset of IFD0 in {@link #tiff}. */
+	private final int ifd0;
+
+	/**
+	 * Instantiates a new ExifReader.
+	 * 
+	 * @param tiff
+	 *            The TIFF structure inside the APP1 segment, with its byte order
+	 *            already set.
+	 * @param ifd0
+	 *            The offset of the first IFD
+	 */
+	private ExifReader(ByteBuffer tiff, int ifd0) {
+		this.tiff = tiff;
+		this.ifd0 = ifd0;
+	}
+
+	/**
+	 * Reads the EXIF segment of a JPEG file.
+	 * 
+	 * @param file
+	 *            The JPEG file
+	 * @return An ExifReader for the file's EXIF data, or <code>null</code> if
+	 *         the file doesn't have any.
+	 * @throws IOException
+	 *             If the file could not be read
+	 */
+	public static ExifReader read(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer segment = findApp1(channel);
+			if (segment == null) {
+				return null;
+			}
+			return parse(segment);
+		}
+	}
+
+	/**
+	 * Looks for an APP1 segment with EXIF data in front of the image data.
+	 * 
+	 * @param channel
+	 *            The channel of the JPEG file
+	 * @return The contents of the APP1 segment, without the EXIF header, or
+	 *         <code>null</code> if there is none.
+	 * @throws IOException
+	 *             If the channel could not be read
+	 */
+	private static ByteBuffer findApp1(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(4);
+		if (!readFully(channel, header, 0, 2) || (header.getShort(0) & 0xFFFF) != SOI) {
+			// Not a JPEG
+			return null;
+		}
+
+		long position = 2;
+		while (readFully(channel, header, position, 4)) {
+			int marker = header.getShort(0) & 0xFFFF;
+			int length = header.getShort(2) & 0xFFFF;
+			if ((marker & 0xFF00) != 0xFF00 || marker == SOS || marker == EOI || length < 2) {
+				return null;
+			}
+
+			if (marker == APP1 && length > EXIF_HEADER.length + 2) {
+				ByteBuffer segment = ByteBuffer.allocate(length - 2);
+				if (!readFully(channel, segment, position + 4, segment.capacity())) {
+					return null;
+				}
+				if (startsWith(segment, EXIF_HEADER)) {
+					segment.position(EXIF_HEADER.length);
+					return segment.slice();
+				}
+			}
+
+			// Skip the marker and the segment
+			position += 2 + length;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Parses the TIFF header at the start of the EXIF data.
+	 * 
+	 * @param tiff
+	 *            The EXIF data
+	 * @return A new ExifReader, or <code>null</code> if the header is invalid
+	 */
+	private static ExifReader parse(ByteBuffer tiff) {
+		if (tiff.remaining() < 8) {
+			return null;
+		}
+
+		if (tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+			tiff.order(ByteOrder.LITTLE_ENDIAN);
+		} else if (tiff.get(0) == 'M' && tiff.get(1) == 'M') {
+			tiff.order(ByteOrder.BIG_ENDIAN);
+		} else {
+			return null;
+		}
+
+		if (tiff.getShort(2) != 42) {
+			return null;
+		}
+
+		int ifd0 = tiff.getInt(4);
+		if (!isValidIfd(tiff, ifd0)) {
+			return null;
+		}
+
+		return new ExifReader(tiff, ifd0);
+	}
+
+	/**
+	 * Gets the embedded thumbnail (a complete JPEG file) that is stored in
+	 * IFD1.
+	 * 
+	 * @return The bytes of the thumbnail, or <code>null</code> if there is no
+	 *         thumbnail.
+	 */
+	public byte[] getThumbnail() {
+		int ifd1 = getNextIfd(ifd0);
+		if (ifd1 <= 0) {
+			return null;
+		}
+
+		int offset = getIntTag(ifd1, TAG_THUMBNAIL_OFFSET);
+		int length = getIntTag(ifd1, TAG_THUMBNAIL_LENGTH);
+		if (offset <= 0 || length <= 0 || length > tiff.capacity() - offset) {
+			return null;
+		}
+
+		byte[] thumbnail = new byte[length];
+		ByteBuffer view = tiff.duplicate();
+		view.position(offset);
+		view.get(thumbnail);
+		return thumbnail;
+	}
+
+	/**
+	 * Gets the orientation of the image. 1 means the image is upright; the
+	 * other values (2 to 8) tell how it has to be rotated or flipped.
+	 * 
+	 * @return The orientation, or 1 if it is not specified.
+	 */
+	public int getOrientation() {
+		int orientation = getIntTag(ifd0, TAG_ORIENTATION);
+		return orientation >= 1 && orientation <= 8 ? orientation : 1;
+	}
+
+	/**
+	 * Gets the date the picture was taken. If the camera didn't record it, the
+	 * date the file was last changed by the camera or an editor is used.
+	 * 
+	 * @return The date, or <code>null</code> if there is none.
+	 */
+	public Date getDateTaken() {
+		String date = null;
+		int exifIfd = getIntTag(ifd0, TAG_EXIF_IFD);
+		if (isValidIfd(tiff, exifIfd)) {
+			date = getAsciiTag(exifIfd, TAG_DATE_TIME_ORIGINAL);
+		}
+		if (date == null) {
+			date = getAsciiTag(ifd0, TAG_DATE_TIME);
+		}
+		if (date == null) {
+			return null;
+		}
+
+		try {
+			return new SimpleDateFormat(DATE_FORMAT).parse(date);
+		} catch (ParseException e) {
+			// Cameras without a clock write "0000:00:00 00:00:00" or blanks
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the value of an ASCII tag in an IFD.
+	 * 
+	 * @param ifd
+	 *            The offset of the IFD
+	 * @param tag
+	 *            The tag to look for
+	 * @return The value of the tag without the terminating null character, or
+	 *         <code>null</code> if it is not in the IFD.
+	 */
+	String getAsciiTag(int ifd, int tag) {
+		int entry = findEntry(ifd, tag);
+		// Type 2 is ASCII
+		if (entry < 0 || (tiff.getShort(entry + 2) & 0xFFFF) != 2) {
+			return null;
+		}
+
+		int count = tiff.getInt(entry + 4);
+		// Values of up to 4 bytes are stored in the entry itself
+		int offset = count <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+		if (count <= 0 || offset < 0 || count > tiff.capacity() - offset) {
+			return null;
+		}
+
+		StringBuilder value = new StringBuilder(count);
+		for (int i = 0; i < count; i++) {
+			byte b = tiff.get(offset + i);
+			if (b == 0) {
+				break;
+			}
+			value.append((char) b);
+		}
+		return value.toString().trim();
+	}
+
+	/**
+	 * Gets the offset of the IFD that follows a given IFD.
+	 * 
+	 * @param ifd
+	 *            The offset of the current IFD
+	 * @return The offset of the next IFD, or 0 if there is none.
+	 */
+	private int getNextIfd(int ifd) {
+		int entries = tiff.getShort(ifd) & 0xFFFF;
+		int next = tiff.getInt(ifd + 2 + entries * IFD_ENTRY_SIZE);
+		return isValidIfd(tiff, next) ? next : 0;
+	}
+
+	/**
+	 * Gets the value of a SHORT or LONG tag in an IFD.
+	 * 
+	 * @param ifd
+	 *            The offset of the IFD
+	 * @param tag
+	 *            The tag to look for
+	 * @return The value of the tag, or -1 if it is not in the IFD.
+	 */
+	int getIntTag(int ifd, int tag) {
+		int entry = findEntry(ifd, tag);
+		if (entry < 0) {
+			return -1;
+		}
+
+		// Type 3 is SHORT, type 4 is LONG
+		int type = tiff.getShort(entry + 2) & 0xFFFF;
+		if (type == 3) {
+			return tiff.getShort(entry + 8) & 0xFFFF;
+		} else if (type == 4) {
+			return tiff.getInt(entry + 8);
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the entry of a tag in an IFD.
+	 * 
+	 * @param ifd
+	 *            The offset of the IFD
+	 * @param tag
+	 *            The tag to look for
+	 * @return The offset of the entry, or -1 if it was not found.
+	 */
+	int findEntry(int ifd, int tag) {
+		int entries = tiff.getShort(ifd) & 0xFFFF;
+		for (int i = 0; i < entries; i++) {
+			int entry = ifd + 2 + i * IFD_ENTRY_SIZE;
+			if ((tiff.getShort(entry) & 0xFFFF) == tag) {
+				return entry;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if an IFD at an offset fits inside the EXIF data.
+	 * 
+	 * @param tiff
+	 *            The EXIF data
+	 * @param ifd
+	 *            The offset of the IFD
+	 * @return True, if the entire IFD is inside the data.
+	 */
+	private static boolean isValidIfd(ByteBuffer tiff, int ifd) {
+		if (ifd < 8 || ifd > tiff.capacity() - 2) {
+			return false;
+		}
+		int entries = tiff.getShort(ifd) & 0xFFFF;
+		return ifd + 2 + entries * IFD_ENTRY_SIZE + 4 <= tiff.capacity();
+	}
+
+	/**
+	 * Checks if a buffer starts with a given array of bytes.
+	 * 
+	 * @param buffer
+	 *            The buffer to check
+	 * @param prefix
+	 *            The bytes that the buffer should start with
+	 * @return True, if the buffer starts with the prefix.
+	 */
+	private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+		if (buffer.capacity() < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads an exact amount of bytes from a position in a channel into a
+	 * buffer. The buffer is cleared first.
+	 * 
+	 * @param channel
+	 *            The channel to read from
+	 * @param buffer
+	 *            The buffer to read into
+	 * @param position
+	 *            The position in the channel
+	 * @param length
+	 *            The amount of bytes to read
+	 * @return True, if all the bytes were read. False if the end of the channel
+	 *         was reached first.
+	 * @throws IOException
+	 *             If the channel could not be read
+	 */
+	static boolean readFully(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+		buffer.clear();
+		buffer.limit(length);
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				return false;
+			}
+		}
+		buffer.flip();
+		return true;
+	}
+}
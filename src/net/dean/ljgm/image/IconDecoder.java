@@ -0,0 +1,432 @@
+package net.dean.ljgm.image;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.geometry.Dimension2D;
+import javafx.scene.image.Image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import net.dean.gui.fx.ImageWithFile;
+import net.dean.util.file.FileUtil;
+
+/*
+ * IconDecoder.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.image)
+ */
+/**
+ * This class is responsible for creating the icons of images. Most JPEGs from
+ * cameras have a small preview embedded in their EXIF data, which is used when
+ * it is large enough for the icon. If there is none, formats that are chosen
+ * in the settings are decoded with source subsampling, so only a fraction of
+ * the pixels is ever read. Otherwise the whole image is decoded.
+ */
+public class IconDecoder {
+
+	/**
+	 * Instantiates a new {@link IconDecoder}.
+	 */
+	private IconDecoder() {
+		// no instances
+	}
+
+	/**
+	 * Creates an icon of an image.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @param width
+	 *            The maximum width of the icon, or 0 to decode the image at
+	 *            its full size
+	 * @param height
+	 *            The maximum height of the icon, or 0 to decode the image at
+	 *            its full size
+	 * @param preserveRatio
+	 *            If the icon should preserve the ratio of the image
+	 * @param smooth
+	 *            If the icon should be scaled smoothly
+	 * @param subsampleFormats
+	 *            The extensions of the formats that are decoded with
+	 *            {@link #decodeSubsampled(File, double, double, boolean, boolean)}
+	 * @return The icon
+	 */
+	public static Image decode(File file, double width, double height, boolean preserveRatio, boolean smooth,
+			String[] subsampleFormats) {
+		if (width <= 0 || height <= 0) {
+			// The full size, so neither shortcut applies
+			return decodeFull(file, width, height, preserveRatio, smooth);
+		}
+
+		Image preview = decodePreview(file, width, height, preserveRatio, smooth);
+		if (preview != null) {
+			return preview;
+		}
+
+		for (String format : subsampleFormats) {
+			if (FileUtil.fileHasExtension(file, format)) {
+				Image subsampled = decodeSubsampled(file, width, height, preserveRatio, smooth);
+				if (subsampled != null) {
+					return subsampled;
+				}
+				break;
+			}
+		}
+
+		return decodeFull(file, width, height, preserveRatio, smooth);
+	}
+
+	/**
+	 * Creates an icon of an image whose file has already been read into
+	 * memory, so no I/O is done. The embedded preview is not looked at, since
+	 * {@link #readPreview(File, double, double, boolean)} is meant to be tried
+	 * before the whole file is read.
+	 * 
+	 * @param file
+	 *            The image file, only used for its extension
+	 * @param data
+	 *            The contents of the file, from its position to its limit
+	 * @param width
+	 *            The maximum width of the icon, or 0 to decode the image at
+	 *            its full size
+	 * @param height
+	 *            The maximum height of the icon, or 0 to decode the image at
+	 *            its full size
+	 * @param preserveRatio
+	 *            If the icon should preserve the ratio of the image
+	 * @param smooth
+	 *            If the icon should be scaled smoothly
+	 * @param subsampleFormats
+	 *            The extensions of the formats that are decoded with source
+	 *            subsampling
+	 * @return The icon
+	 */
+	public static Image decode(File file, ByteBuffer data, double width, double height, boolean preserveRatio,
+			boolean smooth, String[] subsampleFormats) {
+		boolean fullSize = width <= 0 || height <= 0;
+		for (String format : fullSize ? new String[0] : subsampleFormats) {
+			if (FileUtil.fileHasExtension(file, format)) {
+				// ImageIO would cache the stream in a temporary file otherwise
+				try (ImageInputStream in = new MemoryCacheImageInputStream(newStream(data))) {
+					Image subsampled = decodeSubsampled(in, width, height, preserveRatio, smooth);
+					if (subsampled != null) {
+						return subsampled;
+					}
+				} catch (IOException e) {
+					// Fall back to the full decode, which will report the problem
+				}
+				break;
+			}
+		}
+
+		return new Image(newStream(data), width, height, preserveRatio, smooth);
+	}
+
+	/**
+	 * Creates a stream over the remaining bytes of a heap buffer without
+	 * copying them.
+	 * 
+	 * @param data
+	 *            The buffer
+	 * @return A new stream
+	 */
+	private static InputStream newStream(ByteBuffer data) {
+		return new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+	}
+
+	/**
+	 * Creates an icon by decoding the whole image and scaling it down.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @param width
+	 *            The maximum width of the icon
+	 * @param height
+	 *            The maximum height of the icon
+	 * @param preserveRatio
+	 *            If the icon should preserve the ratio of the image
+	 * @param smooth
+	 *            If the icon should be scaled smoothly
+	 * @return The icon
+	 */
+	public static Image decodeFull(File file, double width, double height, boolean preserveRatio, boolean smooth) {
+		return new ImageWithFile(file, width, height, preserveRatio, smooth);
+	}
+
+	/**
+	 * Creates an icon with ImageIO, reading only every n-th pixel of every n-th
+	 * row of the image. The header is read first to get the size of the image,
+	 * and n is chosen so that the subsampled image is still at least as big as
+	 * the icon. The subsampled image is then scaled to the size of the icon.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @param width
+	 *            The maximum width of the icon
+	 * @param height
+	 *            The maximum height of the icon
+	 * @param preserveRatio
+	 *            If the icon should preserve the ratio of the image
+	 * @param smooth
+	 *            If the icon should be scaled smoothly
+	 * @return The icon, or <code>null</code> if ImageIO can't read the file.
+	 */
+	public static Image decodeSubsampled(File file, double width, double height, boolean preserveRatio, boolean smooth) {
+		try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+			if (in == null) {
+				return null;
+			}
+			return decodeSubsampled(in, width, height, preserveRatio, smooth);
+		} catch (IOException e) {
+			// The full decode will report the problem
+			return null;
+		}
+	}
+
+	/**
+	 * Creates an icon with ImageIO from a stream, reading only every n-th pixel
+	 * of every n-th row of the image.
+	 * 
+	 * @param in
+	 *            The stream of the image, which is not closed
+	 * @param width
+	 *            The maximum width of the icon
+	 * @param height
+	 *            The maximum height of the icon
+	 * @param preserveRatio
+	 *            If the icon should preserve the ratio of the image
+	 * @param smooth
+	 *            If the icon should be scaled smoothly
+	 * @return The icon, or <code>null</code> if ImageIO can't read the stream.
+	 * @throws IOException
+	 *             If the image could not be decoded
+	 * @see #decodeSubsampled(File, double, double, boolean, boolean)
+	 */
+	private static Image decodeSubsampled(ImageInputStream in, double width, double height, boolean preserveRatio,
+			boolean smooth) throws IOException {
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+		if (!readers.hasNext()) {
+			return null;
+		}
+
+		ImageReader reader = readers.next();
+		try {
+			reader.setInput(in, true, true);
+			int sourceWidth = reader.getWidth(0);
+			int sourceHeight = reader.getHeight(0);
+
+			int factor = getSubsampling(sourceWidth, sourceHeight, width, height, preserveRatio);
+			ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceSubsampling(factor, factor, 0, 0);
+			BufferedImage subsampled = reader.read(0, param);
+
+			Dimension2D size = getIconSize(sourceWidth, sourceHeight, width, height, preserveRatio);
+			return SwingFXUtils.toFXImage(scale(subsampled, size, smooth), null);
+		} finally {
+			reader.dispose();
+		}
+	}
+
+	/**
+	 * Gets the largest subsampling factor that still leaves an image large
+	 * enough for the icon.
+	 * 
+	 * @param sourceWidth
+	 *            The width of the image
+	 * @param sourceHeight
+	 *            The height of the image
+	 * @param width
+	 *            The maximum width of the icon
+	 * @param height
+	 *            The maximum height of the icon
+	 * @param preserveRatio
+	 *            If the icon preserves the ratio of the image
+	 * @return The subsampling factor, at least 1.
+	 */
+	static int getSubsampling(int sourceWidth, int sourceHeight, double width, double height, boolean preserveRatio) {
+		double widthFactor = sourceWidth / width;
+		double heightFactor = sourceHeight / height;
+		// When preserving the ratio, only the side that limits the icon has to
+		// stay large enough
+		double factor = preserveRatio ? Math.max(widthFactor, heightFactor) : Math.min(widthFactor, heightFactor);
+		return Math.max(1, (int) Math.floor(factor));
+	}
+
+	/**
+	 * Gets the size of the icon of an image.
+	 * 
+	 * @param sourceWidth
+	 *            The width of the image
+	 * @param sourceHeight
+	 *            The height of the image
+	 * @param width
+	 *            The maximum width of the icon
+	 * @param height
+	 *            The maximum height of the icon
+	 * @param preserveRatio
+	 *            If the icon preserves the ratio of the image
+	 * @return The size of the icon. Images are never enlarged.
+	 */
+	static Dimension2D getIconSize(int sourceWidth, int sourceHeight, double width, double height,
+			boolean preserveRatio) {
+		if (!preserveRatio) {
+			return new Dimension2D(Math.min(width, sourceWidth), Math.min(height, sourceHeight));
+		}
+
+		double scale = Math.min(1, Math.min(width / sourceWidth, height / sourceHeight));
+		return new Dimension2D(Math.max(1, Math.round(sourceWidth * scale)), Math.max(1, Math.round(sourceHeight
+				* scale)));
+	}
+
+	/**
+	 * Scales a BufferedImage to a given size.
+	 * 
+	 * @param image
+	 *            The image to scale
+	 * @param size
+	 *            The new size
+	 * @param smooth
+	 *            If bilinear interpolation should be used
+	 * @return The scaled image, or the same image if it already has the size.
+	 */
+	private static BufferedImage scale(BufferedImage image, Dimension2D size, boolean smooth) {
+		int width = (int) size.getWidth();
+		int height = (int) size.getHeight();
+		if (image.getWidth() == width && image.getHeight() == height) {
+			return image;
+		}
+
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = scaled.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					smooth ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+							: RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return scaled;
+	}
+
+	/**
+	 * Creates an icon from the preview embedded in the EXIF data of a JPEG.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @param width
+	 *            The maximum width of the icon
+	 * @param height
+	 *            The maximum height of the icon
+	 * @param preserveRatio
+	 *            If the icon should preserve the ratio of the image
+	 * @param smooth
+	 *            If the icon should be scaled smoothly
+	 * @return The icon, or <code>null</code> if the file has no preview or the
+	 *         preview is too small.
+	 */
+	public static Image decodePreview(File file, double width, double height, boolean preserveRatio, boolean smooth) {
+		byte[] thumbnail = readPreview(file, width, height, preserveRatio);
+		return thumbnail == null ? null : decodePreview(thumbnail, width, height, preserveRatio, smooth);
+	}
+
+	/**
+	 * Creates an icon from a preview that was read with
+	 * {@link #readPreview(File, double, double, boolean)}.
+	 * 
+	 * @param thumbnail
+	 *            The preview, a complete JPEG file
+	 * @param width
+	 *            The maximum width of the icon
+	 * @param height
+	 *            The maximum height of the icon
+	 * @param preserveRatio
+	 *            If the icon should preserve the ratio of the image
+	 * @param smooth
+	 *            If the icon should be scaled smoothly
+	 * @return The icon, or <code>null</code> if the preview is broken.
+	 */
+	public static Image decodePreview(byte[] thumbnail, double width, double height, boolean preserveRatio,
+			boolean smooth) {
+		Image icon = new Image(new ByteArrayInputStream(thumbnail), width, height, preserveRatio, smooth);
+		return icon.isError() ? null : icon;
+	}
+
+	/**
+	 * Reads the preview embedded in the EXIF data of a JPEG, if it is large
+	 * enough for the icon. Only the EXIF segment of the file is read.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @param width
+	 *            The maximum width of the icon
+	 * @param height
+	 *            The maximum height of the icon
+	 * @param preserveRatio
+	 *            If the icon should preserve the ratio of the image
+	 * @return The preview, a complete JPEG file, or <code>null</code> if the
+	 *         file has no preview or the preview is too small.
+	 */
+	public static byte[] readPreview(File file, double width, double height, boolean preserveRatio) {
+		if (!FileUtil.fileHasExtension(file, "jpg") && !FileUtil.fileHasExtension(file, "jpeg")) {
+			return null;
+		}
+
+		byte[] thumbnail;
+		try {
+			ExifReader exif = ExifReader.read(file);
+			if (exif == null) {
+				return null;
+			}
+			thumbnail = exif.getThumbnail();
+		} catch (IOException e) {
+			// The full decode will report the problem
+			return null;
+		}
+
+		if (thumbnail == null) {
+			return null;
+		}
+
+		Dimension2D size = ImageHeaders.getJpegSize(ByteBuffer.wrap(thumbnail));
+		if (size == null || !isLargeEnough(size, width, height, preserveRatio)) {
+			return null;
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Checks if an image of a given size can be made into an icon without being
+	 * enlarged.
+	 * 
+	 * @param size
+	 *            The size of the image
+	 * @param width
+	 *            The maximum width of the icon
+	 * @param height
+	 *            The maximum height of the icon
+	 * @param preserveRatio
+	 *            If the icon preserves the ratio of the image
+	 * @return True, if the image is large enough.
+	 */
+	static boolean isLargeEnough(Dimension2D size, double width, double height, boolean preserveRatio) {
+		if (preserveRatio) {
+			// The image is scaled by the smaller factor to fit inside the icon
+			return Math.min(width / size.getWidth(), height / size.getHeight()) <= 1;
+		}
+		return size.getWidth() >= width && size.getHeight() >= height;
+	}
+}
@@ -0,0 +1,154 @@
+package net.dean.ljgm.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javafx.geometry.Dimension2D;
+import net.dean.util.file.FileUtil;
+
+/*
+ * ImageHeaders.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.image)
+ */
+/**
+ * A collection of methods that read information from the headers of image
+ * files without decoding the images.
+ */
+public class ImageHeaders {
+
+	/**
+	 * Instantiates a new {@link ImageHeaders}.
+	 */
+	private ImageHeaders() {
+		// no instances
+	}
+
+	/**
+	 * Gets the size of a JPEG, PNG or GIF image by reading only its header.
+	 * 
+	 * @param f
+	 *            The image file
+	 * @return The width and height of the image, or <code>null</code> if the
+	 *         format is not supported or the header is invalid.
+	 * @throws IOException
+	 *             If the file could not be read
+	 */
+	public static Dimension2D getSize(File f) throws IOException {
+		try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			if (FileUtil.fileHasExtension(f, "jpg") || FileUtil.fileHasExtension(f, "jpeg")) {
+				return getJpegSize(channel);
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(24);
+			if (FileUtil.fileHasExtension(f, "png")) {
+				// Signature (8), IHDR length (4), "IHDR" (4), width (4), height (4)
+				if (!ExifReader.readFully(channel, header, 0, 24) || header.getInt(12) != 0x49484452) {
+					return null;
+				}
+				return new Dimension2D(header.getInt(16) & 0xFFFFFFFFL, header.getInt(20) & 0xFFFFFFFFL);
+			}
+
+			if (FileUtil.fileHasExtension(f, "gif")) {
+				// "GIF87a" or "GIF89a" (6), width (2), height (2), little endian
+				if (!ExifReader.readFully(channel, header, 0, 10) || header.get(0) != 'G' || header.get(1) != 'I'
+						|| header.get(2) != 'F') {
+					return null;
+				}
+				header.order(ByteOrder.LITTLE_ENDIAN);
+				return new Dimension2D(header.getShort(6) & 0xFFFF, header.getShort(8) & 0xFFFF);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the size of a JPEG file by reading its segments up to the start of
+	 * frame (SOF) segment. The segments are skipped without being read.
+	 * 
+	 * @param channel
+	 *            The channel of the JPEG file
+	 * @return The width and height of the image, or <code>null</code> if no SOF
+	 *         segment was found.
+	 * @throws IOException
+	 *             If the channel could not be read
+	 */
+	private static Dimension2D getJpegSize(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(9);
+		if (!ExifReader.readFully(channel, header, 0, 2) || (header.getShort(0) & 0xFFFF) != 0xFFD8) {
+			return null;
+		}
+
+		long position = 2;
+		while (ExifReader.readFully(channel, header, position, 9)) {
+			int marker = header.getShort(0) & 0xFFFF;
+			int length = header.getShort(2) & 0xFFFF;
+			if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || length < 2) {
+				return null;
+			}
+
+			if (isStartOfFrame(marker)) {
+				return new Dimension2D(header.getShort(7) & 0xFFFF, header.getShort(5) & 0xFFFF);
+			}
+
+			position += 2 + length;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the size of a JPEG image by looking for its start of frame (SOF)
+	 * segment.
+	 * 
+	 * @param jpeg
+	 *            The JPEG file. Only the bytes up to the SOF segment are needed.
+	 * @return The width and height of the image, or <code>null</code> if no SOF
+	 *         segment was found.
+	 */
+	public static Dimension2D getJpegSize(ByteBuffer jpeg) {
+		if (jpeg.remaining() < 4 || (jpeg.getShort(jpeg.position()) & 0xFFFF) != 0xFFD8) {
+			return null;
+		}
+
+		int position = jpeg.position() + 2;
+		while (position + 4 <= jpeg.limit()) {
+			int marker = jpeg.getShort(position) & 0xFFFF;
+			int length = jpeg.getShort(position + 2) & 0xFFFF;
+			if ((marker & 0xFF00) != 0xFF00 || length < 2) {
+				return null;
+			}
+
+			if (isStartOfFrame(marker)) {
+				if (position + 9 > jpeg.limit()) {
+					return null;
+				}
+				// Length (2), precision (1), height (2), width (2)
+				int height = jpeg.getShort(position + 5) & 0xFFFF;
+				int width = jpeg.getShort(position + 7) & 0xFFFF;
+				return new Dimension2D(width, height);
+			}
+
+			position += 2 + length;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks if a JPEG marker is one of the start of frame markers (SOF0 to
+	 * SOF15, except DHT, JPG and DAC).
+	 * 
+	 * @param marker
+	 *            The marker
+	 * @return True, if the marker starts a frame.
+	 */
+	static boolean isStartOfFrame(int marker) {
+		return marker >= 0xFFC0 && marker <= 0xFFCF && marker != 0xFFC4 && marker != 0xFFC8 && marker != 0xFFCC;
+	}
+}
@@ -0,0 +1,74 @@
+package net.dean.ljgm.image;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/*
+ * RegionDecoder.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.image)
+ */
+/**
+ * This class decodes parts of images, so images too large to be decoded whole
+ * can be shown a piece at a time. Only the pixels of the region are kept, and
+ * with subsampling only a fraction of those.
+ */
+public class RegionDecoder {
+
+	/**
+	 * Instantiates a new {@link RegionDecoder}.
+	 */
+	private RegionDecoder() {
+		// no instances
+	}
+
+	/**
+	 * Decodes a region of an image.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @param region
+	 *            The region, in pixels of the full image. Parts outside of the
+	 *            image are left out.
+	 * @param subsampling
+	 *            Only every n-th pixel of every n-th row is decoded
+	 * @return The region, which is about <code>subsampling</code> times
+	 *         smaller than it on either side
+	 * @throws IOException
+	 *             If the image could not be read, or its format is not
+	 *             supported
+	 */
+	public static Image decode(File file, Rectangle region, int subsampling) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+			if (in == null) {
+				throw new IOException("Could not open " + file.getName());
+			}
+
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				throw new IOException("Unsupported format: " + file.getName());
+			}
+
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceRegion(region.intersection(new Rectangle(reader.getWidth(0), reader.getHeight(0))));
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return SwingFXUtils.toFXImage(reader.read(0, param), null);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+}
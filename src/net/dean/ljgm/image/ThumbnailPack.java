@@ -0,0 +1,391 @@
+package net.dean.ljgm.image;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+
+import javax.imageio.ImageIO;
+
+import net.dean.ljgm.LJGM;
+import net.dean.util.file.FileUtil;
+
+/*
+ * ThumbnailPack.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.image)
+ */
+/**
+ * This class is a single file that holds the encoded icons of every image of a
+ * gallery, so a whole gallery can be shown with one open and sequential reads
+ * instead of decoding every image. The file has a header with an index of the
+ * icons, followed by the icons themselves in the order of the gallery. It is
+ * read through one memory-mapped {@link FileChannel}.<br>
+ * <br>
+ * Icons that are not in the pack are loaded as usual and handed to
+ * {@link #add(File, Image)}. Once the gallery has been loaded,
+ * {@link #rebuildInBackground()} writes a new pack with the icons that are
+ * still valid copied from the old one and the new icons added.
+ */
+public class ThumbnailPack {
+
+	/** The directory the packs are kept in. */
+	private static final File PACK_DIR = FileUtil.getRelativeFile("/thumbnails");
+
+	/** The number every pack starts with. */
+	private static final int MAGIC = 0x4C4A5450; // "LJTP"
+
+	/** The version of the file format. */
+	private static final int VERSION = 1;
+
+	/** The file of the pack. */
+	private final File file;
+
+	/** The images of the gallery, in order. */
+	private final List<File> images;
+
+	/** The width of the icons. */
+	private final double iconWidth;
+
+	/** The height of the icons. */
+	private final double iconHeight;
+
+	/** The icons in the file, mapped by the absolute path of their image. */
+	private final Map<String, Entry> entries;
+
+	/** The mapped contents of the file, or null if there is no file. */
+	private final MappedByteBuffer buffer;
+
+	/** Encoded icons that are not in the file yet. */
+	private final Map<String, byte[]> added;
+
+	/** True once the pack has been written again. */
+	private volatile boolean rebuilt;
+
+	/**
+	 * Instantiates a new ThumbnailPack.
+	 */
+	private ThumbnailPack(File file, List<File> images, double iconWidth, double iconHeight,
+			Map<String, Entry> entries, MappedByteBuffer buffer) {
+		this.file = file;
+		this.images = images;
+		this.iconWidth = iconWidth;
+		this.iconHeight = iconHeight;
+		this.entries = entries;
+		this.buffer = buffer;
+		this.added = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Gets the file the pack of a gallery is kept in.
+	 * 
+	 * @param galleryName
+	 *            The name of the gallery
+	 * @return The file, in <code>{BASE_DIR}/thumbnails</code>
+	 */
+	public static File getPackFile(String galleryName) {
+		// The hash keeps names that only differ in left out characters apart
+		String safeName = galleryName.replaceAll("[^A-Za-z0-9_-]", "_");
+		return new File(PACK_DIR, safeName + "-" + Integer.toHexString(galleryName.hashCode()) + ".pack");
+	}
+
+	/**
+	 * Opens the pack of a gallery. If the file does not exist, or holds icons
+	 * of a different size, the pack starts out empty.
+	 * 
+	 * @param file
+	 *            The file of the pack
+	 * @param images
+	 *            The images of the gallery, in order. The list is copied.
+	 * @param iconWidth
+	 *            The width of the icons
+	 * @param iconHeight
+	 *            The height of the icons
+	 * @return The ThumbnailPack
+	 */
+	public static ThumbnailPack open(File file, List<File> images, double iconWidth, double iconHeight) {
+		Map<String, Entry> entries = new HashMap<>();
+		MappedByteBuffer buffer = null;
+		images = new ArrayList<>(images);
+
+		if (file.exists()) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (mapped.getInt() == MAGIC && mapped.getInt() == VERSION && mapped.getDouble() == iconWidth
+						&& mapped.getDouble() == iconHeight) {
+					int count = mapped.getInt();
+					long dataStart = mapped.getLong();
+					for (int i = 0; i < count; i++) {
+						String path = readString(mapped);
+						Entry entry = new Entry(mapped.getLong(), mapped.getLong(), dataStart + mapped.getLong(),
+								mapped.getInt());
+						if (entry.offset < 0 || entry.length < 0 || entry.length > mapped.limit() - entry.offset) {
+							// A truncated or corrupt pack; it is written again
+							// once the gallery has been loaded
+							throw new IOException("Icon outside of the pack: " + path);
+						}
+						entries.put(path, entry);
+					}
+					buffer = mapped;
+				}
+			} catch (IOException | RuntimeException e) {
+				LJGM.instance().getLogger().throwable(e, "Could not read the thumbnail pack " + file.getName() + ": ");
+				entries.clear();
+				buffer = null;
+			}
+		}
+		return new ThumbnailPack(file, images, iconWidth, iconHeight, entries, buffer);
+	}
+
+	/**
+	 * Gets the icon of an image from the pack, if it is there and the image has
+	 * not changed since it was packed.
+	 * 
+	 * @param f
+	 *            The image file
+	 * @return The icon, or <code>null</code> if it has to be loaded
+	 */
+	public Image get(File f) {
+		Entry entry = entries.get(f.getAbsolutePath());
+		if (entry == null || !entry.isValid(f)) {
+			return null;
+		}
+
+		Image icon = new Image(newInputStream(entry));
+		return icon.isError() ? null : icon;
+	}
+
+	/**
+	 * Adds an icon that was loaded without the pack, so it is in the pack the
+	 * next time it is rebuilt. This can be called from any thread.
+	 * 
+	 * @param f
+	 *            The image file
+	 * @param icon
+	 *            The icon
+	 */
+	public void add(File f, Image icon) {
+		try {
+			BufferedImage image = SwingFXUtils.fromFXImage(icon, null);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			// JPEG can't hold transparency
+			if (image.getColorModel().hasAlpha()) {
+				ImageIO.write(image, "png", out);
+			} else {
+				BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+				rgb.getGraphics().drawImage(image, 0, 0, null);
+				ImageIO.write(rgb, "jpg", out);
+			}
+			added.put(f.getAbsolutePath(), out.toByteArray());
+		} catch (IOException | RuntimeException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not pack the icon of " + f.getName() + ": ");
+		}
+	}
+
+	/**
+	 * Checks if the pack needs to be written again, which is when icons have
+	 * been added or it holds images that are not in the gallery anymore.
+	 * 
+	 * @return True, if the pack has changed
+	 */
+	public boolean isDirty() {
+		return !added.isEmpty() || entries.size() > images.size();
+	}
+
+	/**
+	 * Writes the pack again on a new background thread if it has changed. This
+	 * only happens once, since the pack does not know what it wrote.
+	 */
+	public void rebuildInBackground() {
+		if (rebuilt || !isDirty()) {
+			return;
+		}
+		rebuilt = true;
+
+		Thread t = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				rebuild();
+			}
+		}, "Thumbnail packer");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Writes the pack again: icons that are still valid are copied from the
+	 * old file, added icons are included, and icons of images that are not in
+	 * the gallery anymore are left out. The new file replaces the old one when
+	 * it is complete.
+	 */
+	private synchronized void rebuild() {
+		long start = System.currentTimeMillis();
+
+		// Gather the icons in the order of the gallery
+		List<String> paths = new ArrayList<>();
+		List<File> files = new ArrayList<>();
+		List<byte[]> data = new ArrayList<>();
+		for (File f : images) {
+			String path = f.getAbsolutePath();
+			byte[] icon = added.get(path);
+			if (icon == null) {
+				Entry entry = entries.get(path);
+				if (entry == null || !entry.isValid(f)) {
+					continue;
+				}
+				icon = new byte[entry.length];
+				ByteBuffer slice = buffer.duplicate();
+				slice.position((int) entry.offset);
+				slice.get(icon);
+			}
+			paths.add(path);
+			files.add(f);
+			data.add(icon);
+		}
+
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		file.getParentFile().mkdirs();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			// Write the index to memory first to know where the icons start
+			ByteArrayOutputStream index = new ByteArrayOutputStream();
+			DataOutputStream indexOut = new DataOutputStream(index);
+			long offset = 0;
+			for (int i = 0; i < paths.size(); i++) {
+				byte[] path = paths.get(i).getBytes("UTF-8");
+				indexOut.writeInt(path.length);
+				indexOut.write(path);
+				indexOut.writeLong(files.get(i).length());
+				indexOut.writeLong(files.get(i).lastModified());
+				indexOut.writeLong(offset);
+				indexOut.writeInt(data.get(i).length);
+				offset += data.get(i).length;
+			}
+
+			int headerSize = 4 + 4 + 8 + 8 + 4 + 8;
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeDouble(iconWidth);
+			out.writeDouble(iconHeight);
+			out.writeInt(paths.size());
+			out.writeLong(headerSize + index.size());
+			index.writeTo(out);
+			for (byte[] icon : data) {
+				out.write(icon);
+			}
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not write the thumbnail pack " + file.getName() + ": ");
+			temp.delete();
+			return;
+		}
+
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not replace the thumbnail pack " + file.getName() + ": ");
+			temp.delete();
+			return;
+		}
+		LJGM.instance().getLogger().debug("Packed " + paths.size() + " icons into " + file.getName() + " in "
+				+ (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Reads a String written as a length and UTF-8 bytes.
+	 * 
+	 * @param buffer
+	 *            The buffer to read from
+	 * @return The String
+	 * @throws IOException
+	 *             If the bytes are not valid UTF-8
+	 */
+	private static String readString(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Creates an InputStream that reads an icon straight from the mapped file.
+	 * 
+	 * @param entry
+	 *            The icon
+	 * @return The InputStream
+	 */
+	private InputStream newInputStream(Entry entry) {
+		final ByteBuffer slice = buffer.duplicate();
+		slice.position((int) entry.offset);
+		slice.limit((int) entry.offset + entry.length);
+		return new InputStream() {
+
+			@Override
+			public int read() {
+				return slice.hasRemaining() ? slice.get() & 0xFF : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (!slice.hasRemaining()) {
+					return -1;
+				}
+				len = Math.min(len, slice.remaining());
+				slice.get(b, off, len);
+				return len;
+			}
+		};
+	}
+
+	/**
+	 * An icon in the pack.
+	 */
+	private static class Entry {
+
+		/** The size of the image file when it was packed. */
+		private final long fileLength;
+
+		/** The modification time of the image file when it was packed. */
+		private final long lastModified;
+
+		/** Where the icon starts in the file. */
+		private final long offset;
+
+		/** The length of the encoded icon. */
+		private final int length;
+
+		private Entry(long fileLength, long lastModified, long offset, int length) {
+			this.fileLength = fileLength;
+			this.lastModified = lastModified;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * Checks if the image has not changed since it was packed.
+		 * 
+		 * @param f
+		 *            The image file
+		 * @return True, if the icon can be used
+		 */
+		private boolean isValid(File f) {
+			return f.length() == fileLength && f.lastModified() == lastModified;
+		}
+	}
+}
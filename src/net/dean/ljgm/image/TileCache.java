@@ -0,0 +1,102 @@
+package net.dean.ljgm.image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.scene.image.Image;
+
+/*
+ * TileCache.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.image)
+ */
+/**
+ * A cache of decoded tiles that stays within a fixed amount of memory. When a
+ * tile is added and the tiles take more memory than allowed, the tiles that
+ * were used the longest time ago are dropped.
+ */
+public class TileCache {
+
+	/** The amount of bytes every pixel of a tile takes. */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/** The tiles, with the one used the longest time ago first. */
+	private final LinkedHashMap<Object, Image> tiles;
+
+	/** The amount of bytes the tiles may take. */
+	private final long capacity;
+
+	/** The amount of bytes the tiles take. */
+	private long size;
+
+	/**
+	 * Instantiates a new, empty TileCache.
+	 * 
+	 * @param capacity
+	 *            The amount of bytes the tiles may take
+	 */
+	public TileCache(long capacity) {
+		this.capacity = capacity;
+		this.tiles = new LinkedHashMap<>(64, 0.75f, true);
+	}
+
+	/**
+	 * Gets a tile, and marks it as used.
+	 * 
+	 * @param key
+	 *            The key of the tile
+	 * @return The tile, or <code>null</code> if it isn't cached
+	 */
+	public synchronized Image get(Object key) {
+		return tiles.get(key);
+	}
+
+	/**
+	 * Adds a tile, and drops the tiles used the longest time ago until the
+	 * rest fit.
+	 * 
+	 * @param key
+	 *            The key of the tile
+	 * @param tile
+	 *            The tile
+	 */
+	public synchronized void put(Object key, Image tile) {
+		Image old = tiles.put(key, tile);
+		if (old != null) {
+			size -= getSize(old);
+		}
+		size += getSize(tile);
+
+		for (Iterator<Map.Entry<Object, Image>> it = tiles.entrySet().iterator(); size > capacity && it.hasNext();) {
+			Map.Entry<Object, Image> eldest = it.next();
+			if (eldest.getValue() == tile) {
+				// Keep the tile that was just added, even if it is larger than
+				// the whole cache
+				continue;
+			}
+			size -= getSize(eldest.getValue());
+			it.remove();
+		}
+	}
+
+	/**
+	 * Gets the amount of bytes the tiles take.
+	 * 
+	 * @return The size
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the amount of bytes a tile takes.
+	 * 
+	 * @param tile
+	 *            The tile
+	 * @return The size
+	 */
+	private static long getSize(Image tile) {
+		return (long) tile.getWidth() * (long) tile.getHeight() * BYTES_PER_PIXEL;
+	}
+}
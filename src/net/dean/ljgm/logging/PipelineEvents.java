@@ -0,0 +1,230 @@
+package net.dean.ljgm.logging;
+
+import java.io.File;
+
+/*
+ * PipelineEvents.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.logging)
+ */
+/**
+ * Emits events that trace images through LJGM, from scanning the sources of a
+ * gallery to handing the loaded icons to the JavaFX application thread, so a
+ * flight recording shows where the time of a slow load went. The events are
+ * written to the Java Flight Recorder if the JVM has one. Otherwise, and while
+ * no recording asks for them, {@link #begin(Type)} returns a span that does
+ * nothing, so tracing costs a check of a flag. The recorder is only compiled
+ * in if <code>jfr/src</code> is on the build path; see the README.<br>
+ * <br>
+ * Events are recorded like this:
+ * 
+ * <pre>
+ * PipelineEvents.Span span = PipelineEvents.begin(PipelineEvents.Type.READ);
+ * // Read the file
+ * span.commit(file, bytes, gallery);
+ * </pre>
+ */
+public final class PipelineEvents {
+
+	/** Records the events, or does nothing if they can't be recorded. */
+	private static final Recorder RECORDER = createRecorder();
+
+	/**
+	 * Instantiates a new PipelineEvents.
+	 */
+	private PipelineEvents() {
+		// no instances
+	}
+
+	/**
+	 * Creates the recorder that writes to the Flight Recorder. It is loaded by
+	 * name, since its classes only exist in JVMs that have one, and it is only
+	 * compiled (from <code>jfr/src</code>) by JDKs that have the API.
+	 * 
+	 * @return The recorder, or one that does nothing if there is no Flight
+	 *         Recorder
+	 */
+	private static Recorder createRecorder() {
+		try {
+			return (Recorder) Class.forName("net.dean.ljgm.logging.JfrRecorder").newInstance();
+		} catch (Exception | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks if events can be recorded at all.
+	 * 
+	 * @return True if the JVM has a Flight Recorder the events were registered
+	 *         with
+	 */
+	public static boolean isAvailable() {
+		return RECORDER != null;
+	}
+
+	/**
+	 * Checks if a recording asks for an event.
+	 * 
+	 * @param type
+	 *            The type of the event
+	 * @return True if it is recorded
+	 */
+	public static boolean isEnabled(Type type) {
+		return RECORDER != null && RECORDER.isEnabled(type);
+	}
+
+	/**
+	 * Starts an event. For the instant types, the event is only recorded when
+	 * the span is committed.
+	 * 
+	 * @param type
+	 *            The type of the event
+	 * @return The span of the event, which has to be committed to be recorded
+	 */
+	public static Span begin(Type type) {
+		return isEnabled(type) ? RECORDER.begin(type) : Span.DISABLED;
+	}
+
+	/**
+	 * Records an instant event.
+	 * 
+	 * @param type
+	 *            The type of the event
+	 * @param file
+	 *            The file it is about, or <code>null</code>
+	 * @param size
+	 *            The size of what was worked on
+	 * @param gallery
+	 *            The name of the gallery it is about, or <code>null</code>
+	 */
+	public static void instant(Type type, File file, long size, String gallery) {
+		if (isEnabled(type)) {
+			RECORDER.begin(type).commit(file, size, gallery);
+		}
+	}
+
+	/**
+	 * The types of events, in the order images pass through them.
+	 */
+	public static enum Type {
+		/** Listing the directories of a watched source. The size is the amount of images found. */
+		SCAN("Scan"),
+		/** Waiting in the lanes of a queue. The size is the lane. */
+		QUEUE_WAIT("Queue wait"),
+		/** An icon found in the thumbnail pack. */
+		CACHE_HIT("Cache hit", true),
+		/** An icon that has to be decoded because it isn't in the thumbnail pack. */
+		CACHE_MISS("Cache miss", true),
+		/** Reading an image into memory. The size is the amount of bytes read. */
+		READ("Read"),
+		/** Decoding an image. The size is the amount of bytes decoded. */
+		DECODE("Decode"),
+		/**
+		 * Waiting for the JavaFX application thread and handing it the image.
+		 * The size is the width of the image.
+		 */
+		FX_HANDOFF("FX handoff"),
+		/** Writing the library file. The size is the amount of galleries. */
+		LIBRARY_SAVE("Library save");
+
+		/** The name shown in recordings. */
+		private final String name;
+
+		/** True if the event has no duration. */
+		private final boolean instant;
+
+		/**
+		 * Instantiates a new Type with a duration.
+		 * 
+		 * @param name
+		 *            The name shown in recordings
+		 */
+		private Type(String name) {
+			this(name, false);
+		}
+
+		/**
+		 * Instantiates a new Type.
+		 * 
+		 * @param name
+		 *            The name shown in recordings
+		 * @param instant
+		 *            True if the event has no duration
+		 */
+		private Type(String name, boolean instant) {
+			this.name = name;
+			this.instant = instant;
+		}
+
+		/**
+		 * Gets the name shown in recordings.
+		 * 
+		 * @return The name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Checks if the event has no duration.
+		 * 
+		 * @return True if it is instant
+		 */
+		public boolean isInstant() {
+			return instant;
+		}
+	}
+
+	/**
+	 * An event that has been started. A span may be committed on another
+	 * thread than the one it was started on, for instance when an image is
+	 * queued on one thread and taken by another.
+	 */
+	public abstract static class Span {
+
+		/** A span that is never recorded. */
+		public static final Span DISABLED = new Span() {
+
+			@Override
+			public void commit(File file, long size, String gallery) {
+				// Nothing is recorded
+			}
+		};
+
+		/**
+		 * Ends the event and records it.
+		 * 
+		 * @param file
+		 *            The file it is about, or <code>null</code>
+		 * @param size
+		 *            The size of what was worked on
+		 * @param gallery
+		 *            The name of the gallery it is about, or <code>null</code>
+		 */
+		public abstract void commit(File file, long size, String gallery);
+	}
+
+	/**
+	 * Writes the events somewhere.
+	 */
+	interface Recorder {
+
+		/**
+		 * Checks if a recording asks for an event.
+		 * 
+		 * @param type
+		 *            The type of the event
+		 * @return True if it is recorded
+		 */
+		boolean isEnabled(Type type);
+
+		/**
+		 * Starts an event.
+		 * 
+		 * @param type
+		 *            The type of the event
+		 * @return The span of the event
+		 */
+		Span begin(Type type);
+	}
+}
@@ -0,0 +1,306 @@
+package net.dean.ljgm.logging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.application.Platform;
+import net.dean.ljgm.LJGM;
+
+/*
+ * StallWatchdog.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.logging)
+ */
+/**
+ * This class watches for work that blocks the JavaFX application thread long
+ * enough for the user interface to stop responding. Its thread keeps a
+ * heartbeat queued with {@link Platform#runLater(Runnable)}. If the heartbeat
+ * hasn't run once the threshold has passed, whatever is running on the
+ * application thread, be it a runnable or a pulse, is stalling it, and the
+ * stack of the thread is captured. Once the heartbeat runs, the stall is
+ * logged along with the method of LJGM that was running, and counted, so
+ * {@link #getSummary()} shows which code blocks the user interface the most.
+ */
+public class StallWatchdog implements Runnable {
+
+	/** The amount of frames of a stack that are logged. */
+	private static final int LOGGED_FRAMES = 12;
+
+	/** The time the application thread may be blocked for, in nanoseconds. */
+	private final long threshold;
+
+	/** The time between two checks, in milliseconds. */
+	private final long interval;
+
+	/** The stalls, mapped by the method that caused them. */
+	private final Map<String, Stall> stalls;
+
+	/** The heartbeat that is queued on the application thread. */
+	private final Runnable heartbeat;
+
+	/** The JavaFX application thread, known once the first heartbeat ran. */
+	private volatile Thread fxThread;
+
+	/** True while a heartbeat is queued. */
+	private boolean pending;
+
+	/** The time the queued heartbeat was queued at, in nanoseconds. */
+	private long queuedAt;
+
+	/**
+	 * The stack of the application thread, captured while the queued heartbeat
+	 * was late, or <code>null</code>.
+	 */
+	private StackTraceElement[] stack;
+
+	/** The thread of this watchdog, or <code>null</code> if it isn't running. */
+	private volatile Thread thread;
+
+	/**
+	 * Instantiates a new StallWatchdog.
+	 * 
+	 * @param threshold
+	 *            The time, in milliseconds, the application thread may be
+	 *            blocked for before it is reported
+	 */
+	public StallWatchdog(long threshold) {
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("The threshold must be positive: " + threshold);
+		}
+		this.threshold = threshold * 1000000;
+		// Check often enough to catch the stack within a fifth of the threshold
+		this.interval = Math.max(10, threshold / 5);
+		this.stalls = new HashMap<>();
+		this.heartbeat = new Runnable() {
+
+			@Override
+			public void run() {
+				beat();
+			}
+		};
+	}
+
+	/**
+	 * Starts watching on a new daemon thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+
+		thread = new Thread(this, "FX stall watchdog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching, and logs the summary of the stalls if there were any.
+	 */
+	public void stop() {
+		Thread t;
+		synchronized (this) {
+			t = thread;
+			thread = null;
+		}
+		if (t == null) {
+			return;
+		}
+
+		t.interrupt();
+		String summary = getSummary();
+		if (!summary.isEmpty()) {
+			LJGM.instance().getLogger().info("The user interface was blocked by:\n" + summary);
+		}
+	}
+
+	@Override
+	public void run() {
+		while (thread == Thread.currentThread()) {
+			boolean queue = false;
+			synchronized (this) {
+				long now = System.nanoTime();
+				if (!pending) {
+					pending = true;
+					queuedAt = now;
+					queue = true;
+				} else if (stack == null && fxThread != null && now - queuedAt > threshold) {
+					// Still blocked, so this is what is blocking it
+					stack = fxThread.getStackTrace();
+				}
+			}
+			if (queue) {
+				Platform.runLater(heartbeat);
+			}
+
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Runs on the application thread when the heartbeat is taken from the
+	 * queue, and reports the stall if it was late.
+	 */
+	private void beat() {
+		long waited;
+		StackTraceElement[] blocked;
+		synchronized (this) {
+			fxThread = Thread.currentThread();
+			waited = System.nanoTime() - queuedAt;
+			blocked = stack;
+			stack = null;
+			pending = false;
+		}
+
+		if (waited > threshold) {
+			report(waited / 1000000, blocked);
+		}
+	}
+
+	/**
+	 * Counts and logs a stall.
+	 * 
+	 * @param millis
+	 *            How long the application thread was blocked for
+	 * @param blocked
+	 *            The stack of the application thread while it was blocked, or
+	 *            <code>null</code> if the stall ended before it was captured
+	 */
+	private void report(long millis, StackTraceElement[] blocked) {
+		String culprit = getCulprit(blocked);
+		Stall stall;
+		synchronized (stalls) {
+			stall = stalls.get(culprit);
+			if (stall == null) {
+				stall = new Stall(culprit);
+				stalls.put(culprit, stall);
+			}
+			stall.add(millis);
+		}
+
+		LJGMLogger logger = LJGM.instance().getLogger();
+		logger.warn("The user interface was blocked for " + millis + "ms by " + culprit + " (" + stall.count
+				+ " times so far)");
+		if (blocked != null) {
+			StringBuilder trace = new StringBuilder("Stack of the JavaFX application thread:");
+			for (int i = 0; i < Math.min(blocked.length, LOGGED_FRAMES); i++) {
+				trace.append("\n\tat ").append(blocked[i]);
+			}
+			if (blocked.length > LOGGED_FRAMES) {
+				trace.append("\n\t... ").append(blocked.length - LOGGED_FRAMES).append(" more");
+			}
+			logger.debug(trace.toString());
+		}
+	}
+
+	/**
+	 * Gets the method a stall is blamed on. This is the innermost method of
+	 * LJGM on the stack, since the frames above it are usually in the JDK or
+	 * in JavaFX.
+	 * 
+	 * @param blocked
+	 *            The stack of the application thread, or <code>null</code>
+	 * @return For instance, <code>ImagePicker.setDirectory()</code>
+	 */
+	private static String getCulprit(StackTraceElement[] blocked) {
+		if (blocked == null || blocked.length == 0) {
+			return "an unknown method";
+		}
+
+		for (StackTraceElement frame : blocked) {
+			if (frame.getClassName().startsWith("net.dean.ljgm.")) {
+				return getName(frame);
+			}
+		}
+		return getName(blocked[0]);
+	}
+
+	/**
+	 * Gets the name of the method of a frame.
+	 * 
+	 * @param frame
+	 *            The frame
+	 * @return The simple name of the class and the method
+	 */
+	private static String getName(StackTraceElement frame) {
+		String className = frame.getClassName();
+		return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName() + "()";
+	}
+
+	/**
+	 * Gets a summary of the stalls so far, with the methods that blocked the
+	 * application thread the longest in total first.
+	 * 
+	 * @return One line per method, or an empty String if there were no stalls
+	 */
+	public String getSummary() {
+		List<Stall> sorted;
+		synchronized (stalls) {
+			sorted = new ArrayList<>(stalls.values());
+		}
+		Collections.sort(sorted, new Comparator<Stall>() {
+
+			@Override
+			public int compare(Stall a, Stall b) {
+				return Long.compare(b.total, a.total);
+			}
+		});
+
+		StringBuilder summary = new StringBuilder();
+		for (Stall stall : sorted) {
+			if (summary.length() > 0) {
+				summary.append('\n');
+			}
+			summary.append(stall.culprit).append(": ").append(stall.count).append(" times, ").append(stall.total)
+					.append("ms in total, ").append(stall.longest).append("ms at most");
+		}
+		return summary.toString();
+	}
+
+	/**
+	 * The stalls caused by one method.
+	 */
+	private static class Stall {
+
+		/** The method. */
+		private final String culprit;
+
+		/** The amount of stalls. */
+		private int count;
+
+		/** The time of all the stalls, in milliseconds. */
+		private long total;
+
+		/** The time of the longest stall, in milliseconds. */
+		private long longest;
+
+		/**
+		 * Instantiates a new Stall.
+		 * 
+		 * @param culprit
+		 *            The method
+		 */
+		private Stall(String culprit) {
+			this.culprit = culprit;
+		}
+
+		/**
+		 * Counts a stall.
+		 * 
+		 * @param millis
+		 *            The time of the stall
+		 */
+		private void add(long millis) {
+			count++;
+			total += millis;
+			longest = Math.max(longest, millis);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package net.dean.ljgm.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import javafx.geometry.Dimension2D;
+import net.dean.ljgm.image.ExifReader;
+import net.dean.ljgm.image.ImageHeaders;
+import net.dean.util.file.FileUtil;
+
+/*
+ * ImageMetadata.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.metadata)
+ */
+/**
+ * This class holds the information about an image that is used to sort and
+ * filter galleries. It is read from the headers of the image file with
+ * {@link #read(File)}, without decoding the image.
+ */
+public class ImageMetadata {
+
+	/** The value of {@link #getDateTaken()} when the date is not known. */
+	public static final long UNKNOWN_DATE = Long.MIN_VALUE;
+
+	/** The width of the image in pixels, or 0 if it is not known. */
+	private final int width;
+
+	/** The height of the image in pixels, or 0 if it is not known. */
+	private final int height;
+
+	/** The EXIF orientation of the image, from 1 to 8. */
+	private final int orientation;
+
+	/** The date the picture was taken, in milliseconds. */
+	private final long dateTaken;
+
+	/**
+	 * Instantiates a new ImageMetadata.
+	 * 
+	 * @param width
+	 *            The width of the image in pixels
+	 * @param height
+	 *            The height of the image in pixels
+	 * @param orientation
+	 *            The EXIF orientation of the image
+	 * @param dateTaken
+	 *            The date the picture was taken, or {@link #UNKNOWN_DATE}
+	 */
+	public ImageMetadata(int width, int height, int orientation, long dateTaken) {
+		this.width = width;
+		this.height = height;
+		this.orientation = orientation;
+		this.dateTaken = dateTaken;
+	}
+
+	/**
+	 * Reads the metadata of an image from the headers of its file.
+	 * 
+	 * @param f
+	 *            The image file
+	 * @return The metadata. Values that could not be read are left unknown.
+	 * @throws IOException
+	 *             If the file could not be read
+	 */
+	public static ImageMetadata read(File f) throws IOException {
+		Dimension2D size = ImageHeaders.getSize(f);
+		int orientation = 1;
+		long dateTaken = UNKNOWN_DATE;
+
+		if (FileUtil.fileHasExtension(f, "jpg") || FileUtil.fileHasExtension(f, "jpeg")) {
+			ExifReader exif = ExifReader.read(f);
+			if (exif != null) {
+				orientation = exif.getOrientation();
+				Date date = exif.getDateTaken();
+				if (date != null) {
+					dateTaken = date.getTime();
+				}
+			}
+		}
+
+		return new ImageMetadata(size == null ? 0 : (int) size.getWidth(), size == null ? 0 : (int) size.getHeight(),
+				orientation, dateTaken);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getOrientation() {
+		return orientation;
+	}
+
+	/**
+	 * Gets the date the picture was taken.
+	 * 
+	 * @return The date in milliseconds, or {@link #UNKNOWN_DATE}.
+	 */
+	public long getDateTaken() {
+		return dateTaken;
+	}
+
+	/**
+	 * Gets the amount of pixels in the image.
+	 * 
+	 * @return The width times the height
+	 */
+	public long getPixels() {
+		return (long) width * height;
+	}
+
+	/**
+	 * Checks if the image is shown on its side, meaning its width and height
+	 * are swapped when it is displayed.
+	 * 
+	 * @return True, if the orientation is 5, 6, 7 or 8.
+	 */
+	public boolean isRotated() {
+		return orientation >= 5;
+	}
+}
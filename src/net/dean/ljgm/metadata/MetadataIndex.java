@@ -0,0 +1,368 @@
+package net.dean.ljgm.metadata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import net.dean.ljgm.LJGM;
+
+/*
+ * MetadataIndex.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.metadata)
+ */
+/**
+ * This class stores the {@link ImageMetadata} of every image that has been
+ * scanned, so galleries can be sorted and filtered without opening any image
+ * files. Rows are keyed by the absolute path of the file and remember its size
+ * and modification time, so changed files can be found with
+ * {@link #needsUpdate(File)}.<br>
+ * <br>
+ * The values are kept in one array per column, both in memory and on the
+ * disk. In the file, the fixed width columns come first and are read with
+ * bulk copies from a buffer holding the whole file, followed by the column of
+ * paths. The index is not saved before it has been loaded, so a scan that
+ * finishes first can't overwrite the rows of other galleries.
+ */
+public class MetadataIndex {
+
+	/** The number every index file starts with. */
+	private static final int MAGIC = 0x4C4A4D44; // "LJMD"
+
+	/** The version of the file format. */
+	private static final int VERSION = 1;
+
+	/** The file the index is saved to. */
+	private final File file;
+
+	/** The rows, mapped by the absolute path of their file. */
+	private final Map<String, Integer> rows;
+
+	/** The absolute paths of the files. */
+	private String[] paths;
+
+	/** The sizes of the files when they were scanned. */
+	private long[] sizes;
+
+	/** The modification times of the files when they were scanned. */
+	private long[] lastModified;
+
+	/** The dates the pictures were taken. */
+	private long[] dates;
+
+	/** The widths of the images. */
+	private int[] widths;
+
+	/** The heights of the images. */
+	private int[] heights;
+
+	/** The EXIF orientations of the images. */
+	private byte[] orientations;
+
+	/** The amount of rows. */
+	private int count;
+
+	/** True if the index has changed since it was last saved or loaded. */
+	private boolean dirty;
+
+	/** Released once {@link #load()} has finished, whether it read anything. */
+	private final CountDownLatch loaded;
+
+	/**
+	 * Instantiates a new, empty MetadataIndex.
+	 * 
+	 * @param file
+	 *            The file the index is loaded from and saved to
+	 */
+	public MetadataIndex(File file) {
+		this.file = file;
+		this.rows = new HashMap<>();
+		this.loaded = new CountDownLatch(1);
+		allocate(16);
+	}
+
+	/**
+	 * Waits until the index has been loaded, so rows that are already in the
+	 * file don't have to be scanned again.
+	 * 
+	 * @throws InterruptedException
+	 *             If the thread was interrupted while waiting
+	 */
+	public void awaitLoaded() throws InterruptedException {
+		loaded.await();
+	}
+
+	/**
+	 * Gets the metadata of an image. The file itself is not touched, so the
+	 * metadata may be out of date.
+	 * 
+	 * @param f
+	 *            The image file
+	 * @return The metadata, or <code>null</code> if the image has not been
+	 *         scanned.
+	 */
+	public synchronized ImageMetadata get(File f) {
+		Integer row = rows.get(f.getAbsolutePath());
+		if (row == null) {
+			return null;
+		}
+		return new ImageMetadata(widths[row], heights[row], orientations[row], dates[row]);
+	}
+
+	/**
+	 * Checks if an image needs to be scanned, which is when it is not in the
+	 * index or it has changed since it was scanned.
+	 * 
+	 * @param f
+	 *            The image file
+	 * @return True, if the image needs to be scanned.
+	 */
+	public synchronized boolean needsUpdate(File f) {
+		Integer row = rows.get(f.getAbsolutePath());
+		return row == null || sizes[row] != f.length() || lastModified[row] != f.lastModified();
+	}
+
+	/**
+	 * Adds the metadata of an image to the index, replacing an older row.
+	 * 
+	 * @param f
+	 *            The image file
+	 * @param metadata
+	 *            The metadata of the image
+	 */
+	public synchronized void put(File f, ImageMetadata metadata) {
+		String path = f.getAbsolutePath();
+		Integer row = rows.get(path);
+		if (row == null) {
+			if (count == paths.length) {
+				allocate(count * 2);
+			}
+			row = count++;
+			rows.put(path, row);
+			paths[row] = path;
+		}
+
+		sizes[row] = f.length();
+		lastModified[row] = f.lastModified();
+		dates[row] = metadata.getDateTaken();
+		widths[row] = metadata.getWidth();
+		heights[row] = metadata.getHeight();
+		orientations[row] = (byte) metadata.getOrientation();
+		dirty = true;
+	}
+
+	/**
+	 * Gets the amount of images in the index.
+	 * 
+	 * @return The amount of images
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Loads the index from its file. Rows that were added before the index was
+	 * loaded are kept, since scans may already be running. Does nothing if the
+	 * file does not exist.
+	 */
+	public void load() {
+		try {
+			read();
+		} finally {
+			loaded.countDown();
+		}
+	}
+
+	/**
+	 * Reads the index file and merges it into the rows in memory.
+	 */
+	private void read() {
+		if (!file.exists()) {
+			return;
+		}
+
+		try {
+			// The file is copied rather than mapped, since it is replaced when
+			// the index is saved
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				LJGM.instance().getLogger().warn("Ignoring an unknown metadata index: " + file.getAbsolutePath());
+				return;
+			}
+
+			// The file is read into new columns, so the index can still be used
+			// while it is read
+			int rowCount = buffer.getInt();
+			int capacity = Math.max(16, rowCount);
+			String[] loadedPaths = new String[capacity];
+			long[] loadedSizes = new long[capacity];
+			long[] loadedLastModified = new long[capacity];
+			long[] loadedDates = new long[capacity];
+			int[] loadedWidths = new int[capacity];
+			int[] loadedHeights = new int[capacity];
+			byte[] loadedOrientations = new byte[capacity];
+
+			// Fixed width columns
+			buffer.asLongBuffer().get(loadedSizes, 0, rowCount);
+			buffer.position(buffer.position() + rowCount * 8);
+			buffer.asLongBuffer().get(loadedLastModified, 0, rowCount);
+			buffer.position(buffer.position() + rowCount * 8);
+			buffer.asLongBuffer().get(loadedDates, 0, rowCount);
+			buffer.position(buffer.position() + rowCount * 8);
+			buffer.asIntBuffer().get(loadedWidths, 0, rowCount);
+			buffer.position(buffer.position() + rowCount * 4);
+			buffer.asIntBuffer().get(loadedHeights, 0, rowCount);
+			buffer.position(buffer.position() + rowCount * 4);
+			buffer.get(loadedOrientations, 0, rowCount);
+
+			// Paths
+			DataInputStream in = new DataInputStream(newInputStream(buffer));
+			for (int i = 0; i < rowCount; i++) {
+				loadedPaths[i] = in.readUTF();
+			}
+
+			synchronized (this) {
+				if (count == 0) {
+					// Nothing was scanned yet, so the columns can be used as is
+					paths = loadedPaths;
+					sizes = loadedSizes;
+					lastModified = loadedLastModified;
+					dates = loadedDates;
+					widths = loadedWidths;
+					heights = loadedHeights;
+					orientations = loadedOrientations;
+					for (int i = 0; i < rowCount; i++) {
+						rows.put(paths[i], i);
+					}
+					count = rowCount;
+				} else {
+					allocate(count + rowCount);
+					for (int i = 0; i < rowCount; i++) {
+						if (rows.containsKey(loadedPaths[i])) {
+							// Scanned since startup, so the row is newer
+							continue;
+						}
+						int row = count++;
+						rows.put(loadedPaths[i], row);
+						paths[row] = loadedPaths[i];
+						sizes[row] = loadedSizes[i];
+						lastModified[row] = loadedLastModified[i];
+						dates[row] = loadedDates[i];
+						widths[row] = loadedWidths[i];
+						heights[row] = loadedHeights[i];
+						orientations[row] = loadedOrientations[i];
+					}
+				}
+			}
+			LJGM.instance().getLogger().debug("Loaded the metadata of " + rowCount + " images");
+		} catch (IOException | RuntimeException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not read the metadata index: ");
+		}
+	}
+
+	/**
+	 * Saves the index to its file if it has changed. Does nothing until the
+	 * index has been loaded, since the rows in the file would be lost.
+	 */
+	public synchronized void save() {
+		if (!dirty || loaded.getCount() > 0) {
+			return;
+		}
+
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				out.writeLong(sizes[i]);
+			}
+			for (int i = 0; i < count; i++) {
+				out.writeLong(lastModified[i]);
+			}
+			for (int i = 0; i < count; i++) {
+				out.writeLong(dates[i]);
+			}
+			for (int i = 0; i < count; i++) {
+				out.writeInt(widths[i]);
+			}
+			for (int i = 0; i < count; i++) {
+				out.writeInt(heights[i]);
+			}
+			out.write(orientations, 0, count);
+			for (int i = 0; i < count; i++) {
+				out.writeUTF(paths[i]);
+			}
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not save the metadata index: ");
+			temp.delete();
+			return;
+		}
+
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			dirty = false;
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not replace the metadata index: ");
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Makes sure every column can hold a given amount of rows.
+	 * 
+	 * @param capacity
+	 *            The amount of rows
+	 */
+	private void allocate(int capacity) {
+		if (paths != null && paths.length >= capacity) {
+			return;
+		}
+
+		paths = paths == null ? new String[capacity] : Arrays.copyOf(paths, capacity);
+		sizes = sizes == null ? new long[capacity] : Arrays.copyOf(sizes, capacity);
+		lastModified = lastModified == null ? new long[capacity] : Arrays.copyOf(lastModified, capacity);
+		dates = dates == null ? new long[capacity] : Arrays.copyOf(dates, capacity);
+		widths = widths == null ? new int[capacity] : Arrays.copyOf(widths, capacity);
+		heights = heights == null ? new int[capacity] : Arrays.copyOf(heights, capacity);
+		orientations = orientations == null ? new byte[capacity] : Arrays.copyOf(orientations, capacity);
+	}
+
+	/**
+	 * Creates an InputStream that reads the remaining bytes of a buffer.
+	 * 
+	 * @param buffer
+	 *            The buffer
+	 * @return The InputStream
+	 */
+	private static InputStream newInputStream(final ByteBuffer buffer) {
+		return new InputStream() {
+
+			@Override
+			public int read() {
+				return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (!buffer.hasRemaining()) {
+					return -1;
+				}
+				len = Math.min(len, buffer.remaining());
+				buffer.get(b, off, len);
+				return len;
+			}
+		};
+	}
+}
@@ -0,0 +1,237 @@
+package net.dean.ljgm.metadata;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * MetadataQuery.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.metadata)
+ */
+/**
+ * This class describes how the images of a gallery are sorted and filtered by
+ * their metadata. It is applied to a list of files with
+ * {@link #apply(List, MetadataIndex)}, which only reads the
+ * {@link MetadataIndex} and never the files themselves.
+ */
+public class MetadataQuery {
+
+	/**
+	 * The orders the images of a gallery can be shown in.
+	 */
+	public static enum SortOrder {
+		/** The order of the library. */
+		LIBRARY("Library order"),
+		/** Oldest picture first. Pictures without a date come last. */
+		DATE_TAKEN("Date taken"),
+		/** Largest image first. */
+		PIXELS("Pixel size");
+
+		/** The name shown to the user. */
+		private final String name;
+
+		private SortOrder(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/** The order of the images. */
+	private SortOrder sortOrder;
+
+	/** The earliest date taken that is shown, or Long.MIN_VALUE. */
+	private long from;
+
+	/** The latest date taken that is shown, or Long.MAX_VALUE. */
+	private long to;
+
+	/** The least amount of pixels an image must have to be shown. */
+	private long minPixels;
+
+	/**
+	 * Instantiates a new MetadataQuery that keeps the library order and filters
+	 * nothing.
+	 */
+	public MetadataQuery() {
+		this.sortOrder = SortOrder.LIBRARY;
+		this.from = Long.MIN_VALUE;
+		this.to = Long.MAX_VALUE;
+		this.minPixels = 0;
+	}
+
+	/**
+	 * Checks if this query changes nothing, in which case it does not need to
+	 * be applied.
+	 * 
+	 * @return True, if the images are shown in library order and none of them
+	 *         are filtered
+	 */
+	public boolean isDefault() {
+		return sortOrder == SortOrder.LIBRARY && !isFiltering();
+	}
+
+	/**
+	 * Checks if any images are filtered.
+	 * 
+	 * @return True, if there is a date range or a minimum amount of pixels
+	 */
+	public boolean isFiltering() {
+		return from != Long.MIN_VALUE || to != Long.MAX_VALUE || minPixels > 0;
+	}
+
+	/**
+	 * Sorts and filters a list of images. Images that are not in the index yet
+	 * are kept when sorting, after the others, but are removed by any filter.
+	 * 
+	 * @param files
+	 *            The images
+	 * @param index
+	 *            The index to look up the metadata in
+	 * @return A new list of the images that are shown, in the order they are
+	 *         shown in
+	 */
+	public List<File> apply(List<File> files, MetadataIndex index) {
+		if (isDefault()) {
+			return new ArrayList<>(files);
+		}
+
+		// Look everything up once instead of in every comparison
+		final List<File> kept = new ArrayList<>(files.size());
+		final List<ImageMetadata> metadata = new ArrayList<>(files.size());
+		for (File f : files) {
+			ImageMetadata m = index.get(f);
+			if (accepts(m)) {
+				kept.add(f);
+				metadata.add(m);
+			}
+		}
+
+		if (sortOrder == SortOrder.LIBRARY) {
+			return kept;
+		}
+
+		Integer[] order = new Integer[kept.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		// The sort is stable, so images that are equal keep the library order
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer a, Integer b) {
+				return compareMetadata(metadata.get(a), metadata.get(b));
+			}
+		});
+
+		List<File> sorted = new ArrayList<>(order.length);
+		for (Integer i : order) {
+			sorted.add(kept.get(i));
+		}
+		return sorted;
+	}
+
+	/**
+	 * Checks if an image passes the filters of this query.
+	 * 
+	 * @param m
+	 *            The metadata of the image, or <code>null</code> if it is not
+	 *            known
+	 * @return True, if the image is shown
+	 */
+	private boolean accepts(ImageMetadata m) {
+		if (!isFiltering()) {
+			return true;
+		}
+		if (m == null) {
+			return false;
+		}
+		if (from != Long.MIN_VALUE || to != Long.MAX_VALUE) {
+			if (m.getDateTaken() == ImageMetadata.UNKNOWN_DATE || m.getDateTaken() < from || m.getDateTaken() > to) {
+				return false;
+			}
+		}
+		return m.getPixels() >= minPixels;
+	}
+
+	/**
+	 * Compares the metadata of two images according to {@link #sortOrder}.
+	 * Unknown values always come last.
+	 * 
+	 * @param a
+	 *            The metadata of the first image, or <code>null</code>
+	 * @param b
+	 *            The metadata of the second image, or <code>null</code>
+	 * @return A negative number if the first image comes first, a positive
+	 *         number if the second image comes first, or 0 if they are equal.
+	 */
+	private int compareMetadata(ImageMetadata a, ImageMetadata b) {
+		if (a == null || b == null) {
+			return a == b ? 0 : (a == null ? 1 : -1);
+		}
+
+		switch (sortOrder) {
+			case DATE_TAKEN:
+				boolean aKnown = a.getDateTaken() != ImageMetadata.UNKNOWN_DATE;
+				boolean bKnown = b.getDateTaken() != ImageMetadata.UNKNOWN_DATE;
+				if (aKnown != bKnown) {
+					return aKnown ? -1 : 1;
+				}
+				return Long.compare(a.getDateTaken(), b.getDateTaken());
+			case PIXELS:
+				return Long.compare(b.getPixels(), a.getPixels());
+			default:
+				return 0;
+		}
+	}
+
+	public SortOrder getSortOrder() {
+		return sortOrder;
+	}
+
+	public void setSortOrder(SortOrder sortOrder) {
+		this.sortOrder = sortOrder;
+	}
+
+	public long getFrom() {
+		return from;
+	}
+
+	/**
+	 * Sets the earliest date taken that is shown.
+	 * 
+	 * @param from
+	 *            The date in milliseconds, or Long.MIN_VALUE for no limit
+	 */
+	public void setFrom(long from) {
+		this.from = from;
+	}
+
+	public long getTo() {
+		return to;
+	}
+
+	/**
+	 * Sets the latest date taken that is shown.
+	 * 
+	 * @param to
+	 *            The date in milliseconds, or Long.MAX_VALUE for no limit
+	 */
+	public void setTo(long to) {
+		this.to = to;
+	}
+
+	public long getMinPixels() {
+		return minPixels;
+	}
+
+	public void setMinPixels(long minPixels) {
+		this.minPixels = minPixels;
+	}
+}
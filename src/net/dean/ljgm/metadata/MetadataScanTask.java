@@ -0,0 +1,86 @@
+package net.dean.ljgm.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.concurrent.Task;
+import net.dean.ljgm.LJGM;
+
+/*
+ * MetadataScanTask.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.metadata)
+ */
+/**
+ * This task reads the metadata of every image in a list that is missing from
+ * a {@link MetadataIndex} or has changed since it was read, and saves the index
+ * when it is done. The value of the task is the amount of images that were
+ * read.
+ */
+public class MetadataScanTask extends Task<Integer> {
+
+	/** The images to scan. */
+	private final List<File> files;
+
+	/** The index to add the metadata to. */
+	private final MetadataIndex index;
+
+	/**
+	 * Instantiates a new MetadataScanTask.
+	 * 
+	 * @param files
+	 *            The images to scan. The list is copied.
+	 * @param index
+	 *            The index to add the metadata to
+	 */
+	public MetadataScanTask(List<File> files, MetadataIndex index) {
+		this.files = new ArrayList<>(files);
+		this.index = index;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javafx.concurrent.Task#call()
+	 */
+	@Override
+	protected Integer call() throws Exception {
+		// Rows that are in the file already don't need to be read again
+		index.awaitLoaded();
+		int scanned = 0;
+		for (int i = 0; i < files.size() && !isCancelled(); i++) {
+			File f = files.get(i);
+			if (!index.needsUpdate(f)) {
+				continue;
+			}
+
+			try {
+				index.put(f, ImageMetadata.read(f));
+			} catch (IOException | RuntimeException e) {
+				// Remember that the file was unreadable so it is not tried again
+				LJGM.instance().getLogger().warn("Could not read the metadata of " + f.getAbsolutePath());
+				index.put(f, new ImageMetadata(0, 0, 1, ImageMetadata.UNKNOWN_DATE));
+			}
+			scanned++;
+		}
+
+		if (scanned > 0) {
+			index.save();
+		}
+		return scanned;
+	}
+
+	/**
+	 * Starts a task on a new background thread.
+	 * 
+	 * @param task
+	 *            The task to start
+	 */
+	public static void startInBackground(MetadataScanTask task) {
+		Thread t = new Thread(task, "Metadata scan");
+		t.setDaemon(true);
+		t.start();
+	}
+}
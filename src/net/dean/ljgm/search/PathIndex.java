@@ -0,0 +1,378 @@
+package net.dean.ljgm.search;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import net.dean.ljgm.Gallery;
+import net.dean.ljgm.GallerySource;
+
+/*
+ * PathIndex.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.search)
+ */
+/**
+ * This class is an in-memory index of the paths of every image in the library,
+ * relative to the directory of their {@link GallerySource}, that can be
+ * searched by substring or by glob.<br>
+ * <br>
+ * Every path is split into trigrams (runs of three lower case characters), and
+ * the index keeps a sorted list of the paths that contain each trigram. A
+ * query is answered by intersecting the lists of the trigrams in the query,
+ * starting with the shortest one, and checking the few paths that are left
+ * against the query itself. Removed paths are only marked as removed, and the
+ * index is rebuilt when more than half of it has been removed.<br>
+ * <br>
+ * All methods are synchronized, so the index can be updated in the background
+ * while it is being searched.
+ */
+public class PathIndex {
+
+	/** The most results a query returns. */
+	public static final int MAX_RESULTS = 5000;
+
+	/** The absolute paths, by id. Removed paths are null. */
+	private final List<String> paths;
+
+	/** Where the part of each path relative to its source starts, by id. */
+	private int[] relativeStart;
+
+	/** The ids of the paths, by absolute path. */
+	private final Map<String, Integer> ids;
+
+	/** The ids of the paths that contain each trigram. */
+	private final Map<Long, Postings> trigrams;
+
+	/** The amount of removed paths that are still in {@link #paths}. */
+	private int removed;
+
+	/**
+	 * Instantiates a new, empty PathIndex.
+	 */
+	public PathIndex() {
+		this.paths = new ArrayList<>();
+		this.relativeStart = new int[1024];
+		this.ids = new HashMap<>();
+		this.trigrams = new HashMap<>();
+	}
+
+	/**
+	 * Adds every image in a list of galleries that is not in the index yet and
+	 * removes every path that is not in any of them anymore.
+	 * 
+	 * @param galleries
+	 *            The galleries of the library
+	 */
+	public void sync(List<Gallery> galleries) {
+		// Walk the sources outside of the lock, this can take a while
+		Map<String, Integer> current = new HashMap<>();
+		for (Gallery g : galleries) {
+			for (GallerySource source : g.getSources()) {
+				int start = source.getDirectory().getAbsolutePath().length() + 1;
+				for (File f : source.getImagesAsFiles()) {
+					current.put(f.getAbsolutePath(), start);
+				}
+			}
+		}
+
+		synchronized (this) {
+			for (String path : new ArrayList<>(ids.keySet())) {
+				if (!current.containsKey(path)) {
+					remove(path);
+				}
+			}
+			for (Map.Entry<String, Integer> entry : current.entrySet()) {
+				add(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Adds a path to the index. Does nothing if it is already there.
+	 * 
+	 * @param path
+	 *            The absolute path of the image
+	 * @param start
+	 *            The index in the path where the part that is searched starts
+	 */
+	public synchronized void add(String path, int start) {
+		if (ids.containsKey(path)) {
+			return;
+		}
+
+		int id = paths.size();
+		paths.add(path);
+		ids.put(path, id);
+		if (id == relativeStart.length) {
+			relativeStart = Arrays.copyOf(relativeStart, id * 2);
+		}
+		start = Math.min(start, path.length());
+		relativeStart[id] = start;
+
+		Set<Long> seen = new HashSet<>();
+		for (int i = start; i + 3 <= path.length(); i++) {
+			long trigram = trigram(path, i);
+			if (seen.add(trigram)) {
+				Postings postings = trigrams.get(trigram);
+				if (postings == null) {
+					postings = new Postings();
+					trigrams.put(trigram, postings);
+				}
+				postings.add(id);
+			}
+		}
+	}
+
+	/**
+	 * Removes a path from the index.
+	 * 
+	 * @param path
+	 *            The absolute path of the image
+	 */
+	public synchronized void remove(String path) {
+		Integer id = ids.remove(path);
+		if (id == null) {
+			return;
+		}
+
+		paths.set(id, null);
+		removed++;
+		if (removed > paths.size() / 2) {
+			compact();
+		}
+	}
+
+	/**
+	 * Gets the amount of paths in the index.
+	 * 
+	 * @return The amount of paths
+	 */
+	public synchronized int size() {
+		return ids.size();
+	}
+
+	/**
+	 * Searches the index, ignoring case. If the query contains <code>*</code>
+	 * or <code>?</code> it is a glob, otherwise it matches any path that
+	 * contains it. A glob without a <code>/</code> has to match the file name,
+	 * otherwise it has to match the whole relative path. In a glob,
+	 * <code>*</code> matches anything but a <code>/</code>, <code>**</code>
+	 * matches anything and <code>?</code> matches a single character. A
+	 * <code>/</code> in the query matches the separator of the platform.
+	 * 
+	 * @param query
+	 *            The query
+	 * @return The images that match, in the order they were added, but no more
+	 *         than {@link #MAX_RESULTS}.
+	 */
+	public synchronized List<File> search(String query) {
+		List<File> results = new ArrayList<>();
+		if (query.isEmpty()) {
+			return results;
+		}
+
+		boolean glob = query.indexOf('*') >= 0 || query.indexOf('?') >= 0;
+		Pattern pattern = glob ? compileGlob(query) : null;
+		// The paths are indexed with the separator of the platform
+		String platformQuery = query.replace('/', File.separatorChar);
+
+		// Every trigram of every literal part has to be in the path
+		List<Postings> required = new ArrayList<>();
+		for (String literal : glob ? platformQuery.split("[*?]+") : new String[] { platformQuery }) {
+			for (int i = 0; i + 3 <= literal.length(); i++) {
+				Postings postings = trigrams.get(trigram(literal, i));
+				if (postings == null) {
+					return results;
+				}
+				required.add(postings);
+			}
+		}
+
+		int[] candidates = intersect(required);
+		int count = candidates == null ? paths.size() : candidates.length;
+		for (int i = 0; i < count && results.size() < MAX_RESULTS; i++) {
+			int id = candidates == null ? i : candidates[i];
+			String path = paths.get(id);
+			if (path == null) {
+				continue;
+			}
+
+			boolean matches;
+			if (glob) {
+				// Globs are matched with / as the separator on every platform
+				String searched = query.indexOf('/') >= 0 ? path.substring(relativeStart[id]).replace(
+						File.separatorChar, '/') : new File(path).getName();
+				matches = pattern.matcher(searched).matches();
+			} else {
+				matches = containsIgnoreCase(path, relativeStart[id], platformQuery);
+			}
+			if (matches) {
+				results.add(new File(path));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Intersects lists of ids.
+	 * 
+	 * @param lists
+	 *            The lists
+	 * @return The ids that are in all of the lists, in ascending order, or
+	 *         <code>null</code> if there are no lists, meaning every id is a
+	 *         candidate.
+	 */
+	private static int[] intersect(List<Postings> lists) {
+		if (lists.isEmpty()) {
+			return null;
+		}
+
+		Postings shortest = lists.get(0);
+		for (Postings p : lists) {
+			if (p.size < shortest.size) {
+				shortest = p;
+			}
+		}
+
+		int[] result = Arrays.copyOf(shortest.ids, shortest.size);
+		int length = result.length;
+		for (Postings p : lists) {
+			if (p == shortest) {
+				continue;
+			}
+
+			int kept = 0;
+			for (int i = 0; i < length; i++) {
+				if (Arrays.binarySearch(p.ids, 0, p.size, result[i]) >= 0) {
+					result[kept++] = result[i];
+				}
+			}
+			length = kept;
+			if (length == 0) {
+				break;
+			}
+		}
+		return Arrays.copyOf(result, length);
+	}
+
+	/**
+	 * Builds the index again without the removed paths.
+	 */
+	private void compact() {
+		List<String> oldPaths = new ArrayList<>(paths);
+		int[] oldStarts = relativeStart;
+
+		paths.clear();
+		ids.clear();
+		trigrams.clear();
+		removed = 0;
+		for (int i = 0; i < oldPaths.size(); i++) {
+			if (oldPaths.get(i) != null) {
+				add(oldPaths.get(i), oldStarts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Packs three characters of a string into a key, in lower case.
+	 * 
+	 * @param s
+	 *            The string
+	 * @param i
+	 *            The index of the first character
+	 * @return The key of the trigram
+	 */
+	private static long trigram(String s, int i) {
+		return ((long) Character.toLowerCase(s.charAt(i)) << 32) | ((long) Character.toLowerCase(s.charAt(i + 1)) << 16)
+				| Character.toLowerCase(s.charAt(i + 2));
+	}
+
+	/**
+	 * Checks if a part of a string contains another, ignoring case.
+	 * 
+	 * @param s
+	 *            The string to search in
+	 * @param start
+	 *            Where to start searching
+	 * @param query
+	 *            The string to search for
+	 * @return True, if the query was found
+	 */
+	private static boolean containsIgnoreCase(String s, int start, String query) {
+		for (int i = start; i + query.length() <= s.length(); i++) {
+			if (s.regionMatches(true, i, query, 0, query.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compiles a glob into a regular expression that ignores case.
+	 * 
+	 * @param glob
+	 *            The glob
+	 * @return The Pattern
+	 */
+	private static Pattern compileGlob(String glob) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c != '*' && c != '?') {
+				literal.append(c);
+				continue;
+			}
+
+			if (literal.length() > 0) {
+				regex.append(Pattern.quote(literal.toString()));
+				literal.setLength(0);
+			}
+			if (c == '?') {
+				regex.append("[^/]");
+			} else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+				regex.append(".*");
+				i++;
+			} else {
+				regex.append("[^/]*");
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+	}
+
+	/**
+	 * A growable, sorted list of the ids of the paths that contain a trigram.
+	 * Ids only grow, so they are always added in order.
+	 */
+	private static class Postings {
+
+		/** The ids. */
+		private int[] ids = new int[4];
+
+		/** The amount of ids. */
+		private int size;
+
+		/**
+		 * Adds an id to the end of the list.
+		 * 
+		 * @param id
+		 *            The id, larger than every id in the list
+		 */
+		private void add(int id) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+	}
+}
@@ -0,0 +1,329 @@
+package net.dean.ljgm.session;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+
+import javax.imageio.ImageIO;
+
+import net.dean.ljgm.LJGM;
+
+/*
+ * SessionSnapshot.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.session)
+ */
+/**
+ * This class is a snapshot of what the user was looking at when the
+ * application was closed: the focused gallery, how far it was scrolled and the
+ * icons that were visible. The icons are packed into a single atlas image, so
+ * the snapshot can be shown again on the next start before any image is
+ * decoded. Every icon remembers the size and modification time its file had,
+ * so icons of files that changed since can be found with
+ * {@link #isStale(File)} and loaded again.<br>
+ * <br>
+ * The snapshot is saved to a single file: a header, the entries and the atlas
+ * as a PNG.
+ */
+public class SessionSnapshot {
+
+	/** The number every snapshot file starts with. */
+	private static final int MAGIC = 0x4C4A5353; // "LJSS"
+
+	/** The version of the file format. */
+	private static final int VERSION = 1;
+
+	/** The widest the atlas can be, in pixels. */
+	private static final int MAX_ATLAS_WIDTH = 2048;
+
+	/**
+	 * The modification time of icons that were older than their file, which
+	 * no file has, so they are always stale.
+	 */
+	private static final long OUTDATED = -1;
+
+	/** The name of the gallery that was focused. */
+	private final String galleryName;
+
+	/** The vertical scroll position, from 0 to 1. */
+	private final double scroll;
+
+	/** The width of the icons when the snapshot was taken. */
+	private final double iconWidth;
+
+	/** The height of the icons when the snapshot was taken. */
+	private final double iconHeight;
+
+	/** The icons, mapped by the absolute path of their file. */
+	private final Map<String, Entry> entries;
+
+	/** The icons that are added before the snapshot is saved. */
+	private final List<BufferedImage> icons;
+
+	/** The atlas of a snapshot that was loaded. */
+	private Image atlas;
+
+	/**
+	 * Instantiates a new, empty SessionSnapshot.
+	 * 
+	 * @param galleryName
+	 *            The name of the gallery that is focused
+	 * @param scroll
+	 *            The vertical scroll position, from 0 to 1
+	 * @param iconWidth
+	 *            The width of the icons
+	 * @param iconHeight
+	 *            The height of the icons
+	 */
+	public SessionSnapshot(String galleryName, double scroll, double iconWidth, double iconHeight) {
+		this.galleryName = galleryName;
+		this.scroll = scroll;
+		this.iconWidth = iconWidth;
+		this.iconHeight = iconHeight;
+		this.entries = new HashMap<>();
+		this.icons = new ArrayList<>();
+	}
+
+	/**
+	 * Adds a visible icon to the snapshot. This has to be called on the JavaFX
+	 * Application Thread.
+	 * 
+	 * @param file
+	 *            The file of the image
+	 * @param image
+	 *            The image the icon is shown from
+	 * @param viewport
+	 *            The part of the image that is shown, or <code>null</code> for
+	 *            all of it
+	 * @param iconTime
+	 *            The latest modification time of the file the icon shows. If
+	 *            the file was modified after it, the icon is stale.
+	 */
+	public void addIcon(File file, Image image, Rectangle2D viewport, long iconTime) {
+		if (viewport != null) {
+			// Only the icon is converted, not the whole atlas it is part of
+			image = new WritableImage(image.getPixelReader(), (int) viewport.getMinX(), (int) viewport.getMinY(),
+					(int) viewport.getWidth(), (int) viewport.getHeight());
+		}
+		BufferedImage icon = SwingFXUtils.fromFXImage(image, null);
+
+		long modified = file.lastModified();
+		Entry entry = new Entry(file.length(), modified > iconTime ? OUTDATED : modified, icons.size());
+		entries.put(file.getAbsolutePath(), entry);
+		icons.add(icon);
+	}
+
+	/**
+	 * Packs the icons into an atlas and saves the snapshot.
+	 * 
+	 * @param f
+	 *            The file to save to
+	 */
+	public void save(File f) {
+		// Every icon gets a cell as large as the largest icon
+		int cellWidth = 1;
+		int cellHeight = 1;
+		for (BufferedImage icon : icons) {
+			cellWidth = Math.max(cellWidth, icon.getWidth());
+			cellHeight = Math.max(cellHeight, icon.getHeight());
+		}
+		int columns = Math.max(1, Math.min(icons.size(), MAX_ATLAS_WIDTH / cellWidth));
+		int rows = Math.max(1, (icons.size() + columns - 1) / columns);
+
+		BufferedImage atlasImage = new BufferedImage(columns * cellWidth, rows * cellHeight, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = atlasImage.createGraphics();
+		for (Entry entry : entries.values()) {
+			BufferedImage icon = icons.get(entry.index);
+			entry.x = (entry.index % columns) * cellWidth;
+			entry.y = (entry.index / columns) * cellHeight;
+			entry.width = icon.getWidth();
+			entry.height = icon.getHeight();
+			g.drawImage(icon, entry.x, entry.y, null);
+		}
+		g.dispose();
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(galleryName);
+			out.writeDouble(scroll);
+			out.writeDouble(iconWidth);
+			out.writeDouble(iconHeight);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+				Entry entry = e.getValue();
+				out.writeUTF(e.getKey());
+				out.writeLong(entry.length);
+				out.writeLong(entry.lastModified);
+				out.writeShort(entry.x);
+				out.writeShort(entry.y);
+				out.writeShort(entry.width);
+				out.writeShort(entry.height);
+			}
+
+			ByteArrayOutputStream png = new ByteArrayOutputStream();
+			ImageIO.write(atlasImage, "png", png);
+			out.writeInt(png.size());
+			png.writeTo(out);
+		} catch (IOException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not save the session: ");
+		}
+	}
+
+	/**
+	 * Loads a snapshot and its atlas.
+	 * 
+	 * @param f
+	 *            The file to load from
+	 * @return The snapshot, or <code>null</code> if the file does not exist or
+	 *         could not be read
+	 */
+	public static SessionSnapshot load(File f) {
+		if (!f.exists()) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+
+			SessionSnapshot snapshot = new SessionSnapshot(in.readUTF(), in.readDouble(), in.readDouble(),
+					in.readDouble());
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				Entry entry = new Entry(in.readLong(), in.readLong(), i);
+				entry.x = in.readUnsignedShort();
+				entry.y = in.readUnsignedShort();
+				entry.width = in.readUnsignedShort();
+				entry.height = in.readUnsignedShort();
+				snapshot.entries.put(path, entry);
+			}
+
+			int length = in.readInt();
+			if (length < 0 || length > f.length()) {
+				// A corrupt file; the atlas can't be larger than the file
+				throw new IOException("Invalid atlas length: " + length);
+			}
+			byte[] png = new byte[length];
+			in.readFully(png);
+			snapshot.atlas = new Image(new ByteArrayInputStream(png));
+			return snapshot;
+		} catch (IOException | RuntimeException e) {
+			LJGM.instance().getLogger().throwable(e, "Could not read the last session: ");
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the part of the atlas that holds the icon of an image.
+	 * 
+	 * @param file
+	 *            The file of the image
+	 * @return The part of {@link #getAtlas()}, or <code>null</code> if the
+	 *         image is not in the snapshot
+	 */
+	public Rectangle2D getRegion(File file) {
+		Entry entry = entries.get(file.getAbsolutePath());
+		if (entry == null) {
+			return null;
+		}
+		return new Rectangle2D(entry.x, entry.y, entry.width, entry.height);
+	}
+
+	/**
+	 * Checks if an image has changed since the snapshot was taken, or if it is
+	 * not in the snapshot at all. This reads the attributes of the file.
+	 * 
+	 * @param file
+	 *            The file of the image
+	 * @return True, if the icon in the snapshot can't be used
+	 */
+	public boolean isStale(File file) {
+		Entry entry = entries.get(file.getAbsolutePath());
+		return entry == null || !file.isFile() || file.length() != entry.length
+				|| file.lastModified() != entry.lastModified;
+	}
+
+	/**
+	 * Gets the modification time the file of an icon had when the snapshot
+	 * was taken.
+	 * 
+	 * @param file
+	 *            The file of the image
+	 * @return The modification time, or -1 if the image is not in the
+	 *         snapshot or its icon was stale already
+	 */
+	public long getLastModified(File file) {
+		Entry entry = entries.get(file.getAbsolutePath());
+		return entry == null ? OUTDATED : entry.lastModified;
+	}
+
+	/**
+	 * Gets the atlas of a snapshot that was loaded.
+	 * 
+	 * @return The atlas, or <code>null</code> if this snapshot was not loaded
+	 */
+	public Image getAtlas() {
+		return atlas;
+	}
+
+	public String getGalleryName() {
+		return galleryName;
+	}
+
+	public double getScroll() {
+		return scroll;
+	}
+
+	public double getIconWidth() {
+		return iconWidth;
+	}
+
+	public double getIconHeight() {
+		return iconHeight;
+	}
+
+	/**
+	 * An icon in the snapshot.
+	 */
+	private static class Entry {
+
+		/** The size of the file. */
+		private final long length;
+
+		/** The modification time of the file. */
+		private final long lastModified;
+
+		/** The order the icon was added in. */
+		private final int index;
+
+		/** The area of the atlas that holds the icon. */
+		private int x, y, width, height;
+
+		private Entry(long length, long lastModified, int index) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.index = index;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package net.dean.ljgm.task;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/*
+ * BufferPool.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.task)
+ */
+/**
+ * This class keeps the buffers that image files are read into, so reading
+ * thousands of files doesn't allocate thousands of large arrays. The buffers
+ * are heap buffers, since the decoders read them as arrays.
+ */
+public class BufferPool {
+
+	/** The capacity of a new buffer is rounded up to a multiple of this. */
+	private static final int GRANULARITY = 1024 * 1024;
+
+	/** Buffers larger than this are not kept once they have been released. */
+	private static final int MAX_POOLED_CAPACITY = 32 * 1024 * 1024;
+
+	/** The most bytes the buffers that are kept may hold together. */
+	private final long maxBytes;
+
+	/** The buffers that are not in use. */
+	private final Deque<ByteBuffer> free;
+
+	/** The capacity of the buffers in {@link #free} together. */
+	private long freeBytes;
+
+	/**
+	 * Instantiates a new BufferPool.
+	 * 
+	 * @param maxBytes
+	 *            The most bytes the buffers that are kept may hold together
+	 */
+	public BufferPool(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.free = new ArrayDeque<>();
+	}
+
+	/**
+	 * Gets a buffer that can hold at least a given amount of bytes. The
+	 * smallest free buffer that is large enough is used, or a new one is
+	 * created.
+	 * 
+	 * @param size
+	 *            The amount of bytes
+	 * @return A cleared buffer whose limit is the given size
+	 */
+	public ByteBuffer acquire(int size) {
+		ByteBuffer buffer = null;
+		synchronized (free) {
+			for (Iterator<ByteBuffer> it = free.iterator(); it.hasNext();) {
+				ByteBuffer b = it.next();
+				if (b.capacity() >= size && (buffer == null || b.capacity() < buffer.capacity())) {
+					buffer = b;
+				}
+			}
+			if (buffer != null) {
+				remove(buffer);
+			}
+		}
+
+		if (buffer == null) {
+			long capacity = ((long) size + GRANULARITY - 1) / GRANULARITY * GRANULARITY;
+			buffer = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, Math.max(capacity, GRANULARITY)));
+		}
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+
+	/**
+	 * Gives a buffer back to the pool. It must not be used afterwards.
+	 * 
+	 * @param buffer
+	 *            The buffer, or <code>null</code>
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || buffer.capacity() > MAX_POOLED_CAPACITY || buffer.capacity() > maxBytes) {
+			return;
+		}
+
+		synchronized (free) {
+			free.push(buffer);
+			freeBytes += buffer.capacity();
+			// Keep the larger buffers, since they can be used for anything
+			while (freeBytes > maxBytes) {
+				ByteBuffer smallest = null;
+				for (ByteBuffer b : free) {
+					if (smallest == null || b.capacity() < smallest.capacity()) {
+						smallest = b;
+					}
+				}
+				remove(smallest);
+			}
+		}
+	}
+
+	/**
+	 * Removes a buffer from the free ones and stops counting its bytes.
+	 * Buffers are compared by identity, since {@link ByteBuffer#equals(Object)}
+	 * compares their contents, and two buffers that hold the same file would
+	 * otherwise be mistaken for each other. The caller must hold the lock on
+	 * {@link #free}.
+	 * 
+	 * @param buffer
+	 *            The buffer
+	 */
+	private void remove(ByteBuffer buffer) {
+		for (Iterator<ByteBuffer> it = free.iterator(); it.hasNext();) {
+			if (it.next() == buffer) {
+				it.remove();
+				freeBytes -= buffer.capacity();
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,346 @@
+package net.dean.ljgm.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.dean.ljgm.LJGM;
+
+/*
+ * ConcurrencyController.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.task)
+ */
+/**
+ * This class limits how many images are loaded at the same time from each
+ * storage device, and tunes the limits while images are loading. An SSD is
+ * usually fastest with many concurrent reads and a spinning disk with very
+ * few, so every {@link FileStore} gets its own limit.<br>
+ * <br>
+ * The limits are tuned with additive increase and multiplicative decrease:
+ * after every window of loads during which the limit was reached, the
+ * throughput of the window is compared to the best one so far. If it is
+ * better, the limit goes up by one. If it is much worse, the limit is halved.
+ * If going up did not help, the step is taken back. The changes are kept in a
+ * history that is logged in debug mode.
+ */
+public class ConcurrencyController {
+
+	/** The limit every storage device starts with. */
+	private static final int INITIAL_LIMIT = 2;
+
+	/** The least amount of loads in a window. */
+	private static final int MIN_WINDOW = 8;
+
+	/** How much better a window has to be to count as an improvement. */
+	private static final double IMPROVEMENT = 1.05;
+
+	/** How much worse a window has to be for the limit to be halved. */
+	private static final double DEGRADATION = 0.8;
+
+	/** The most entries kept in the history of a storage device. */
+	private static final int MAX_HISTORY = 100;
+
+	/** The highest a limit can go. */
+	private final int maxLimit;
+
+	/** True if the limits are tuned, false if they are all {@link #maxLimit}. */
+	private final boolean adaptive;
+
+	/** The storage devices, mapped by the directories that are on them. */
+	private final Map<File, StorageRoot> rootsByDirectory;
+
+	/** The storage devices, mapped by their FileStore. */
+	private final ConcurrentHashMap<Object, StorageRoot> roots;
+
+	/**
+	 * Instantiates a new ConcurrencyController.
+	 * 
+	 * @param fixedLimit
+	 *            The limit of every storage device, or 0 or less to tune them
+	 */
+	public ConcurrencyController(int fixedLimit) {
+		this.adaptive = fixedLimit <= 0;
+		this.maxLimit = adaptive ? getMaxThreads() : fixedLimit;
+		this.rootsByDirectory = new ConcurrentHashMap<>();
+		this.roots = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Gets the highest amount of concurrent loads that is tried.
+	 * 
+	 * @return Twice the amount of processors, and at least 2
+	 */
+	public static int getMaxThreads() {
+		return Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * Gets the highest amount of concurrent loads of any storage device, which
+	 * is how many services are needed.
+	 * 
+	 * @return The highest limit
+	 */
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Waits until another image can be loaded from the storage device a file
+	 * is on, and counts it as being loaded.
+	 * 
+	 * @param f
+	 *            The image file
+	 * @return The storage device, to pass to
+	 *         {@link #release(StorageRoot, long)} once the image is loaded
+	 * @throws InterruptedException
+	 *             If the thread is interrupted while waiting
+	 */
+	public StorageRoot acquire(File f) throws InterruptedException {
+		StorageRoot root = getRoot(f);
+		synchronized (root) {
+			while (root.inFlight >= root.limit) {
+				root.saturated = true;
+				root.wait();
+			}
+			if (root.inFlight == 0) {
+				root.busySince = System.nanoTime();
+			}
+			root.inFlight++;
+			if (root.inFlight == root.limit) {
+				root.saturated = true;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Counts an image as loaded and tunes the limit of its storage device if a
+	 * window is complete.
+	 * 
+	 * @param root
+	 *            The storage device returned by {@link #acquire(File)}
+	 * @param nanos
+	 *            How long the image took to load
+	 */
+	public void release(StorageRoot root, long nanos) {
+		synchronized (root) {
+			root.inFlight--;
+			if (root.inFlight == 0) {
+				root.busy += System.nanoTime() - root.busySince;
+			}
+			root.completed++;
+			root.latency += nanos;
+			if (root.completed >= Math.max(MIN_WINDOW, root.limit * 4)) {
+				endWindow(root);
+			}
+			root.notifyAll();
+		}
+	}
+
+	/**
+	 * Gets the storage devices images have been loaded from.
+	 * 
+	 * @return A new list of the storage devices
+	 */
+	public List<StorageRoot> getRoots() {
+		return new ArrayList<>(roots.values());
+	}
+
+	/**
+	 * Describes the current limits, for instance
+	 * <code>/ (/dev/sda1): 6, /mnt/photos (/dev/sdb1): 1</code>.
+	 * 
+	 * @return The limits of every storage device
+	 */
+	public String describe() {
+		StringBuilder s = new StringBuilder();
+		for (StorageRoot root : getRoots()) {
+			if (s.length() > 0) {
+				s.append(", ");
+			}
+			s.append(root.getName()).append(": ").append(root.getLimit());
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Ends the window of a storage device and changes its limit. Only windows
+	 * where the limit was reached say anything about it, since fewer loads
+	 * were wanted otherwise. Throughput is measured over the time images were
+	 * being loaded, so a pause between galleries doesn't look like the device
+	 * got slower.
+	 * 
+	 * @param root
+	 *            The storage device, whose lock is held
+	 */
+	private void endWindow(StorageRoot root) {
+		long now = System.nanoTime();
+		long busy = root.busy + (root.inFlight > 0 ? now - root.busySince : 0);
+		double seconds = busy / 1e9;
+		double throughput = root.completed / Math.max(seconds, 1e-3);
+		double latency = root.latency / 1e6 / root.completed;
+		boolean saturated = root.saturated;
+
+		root.busy = 0;
+		root.busySince = now;
+		root.completed = 0;
+		root.latency = 0;
+		root.saturated = false;
+		if (!adaptive || !saturated) {
+			return;
+		}
+
+		int oldLimit = root.limit;
+		if (throughput > root.best * IMPROVEMENT) {
+			root.best = throughput;
+			if (root.limit < maxLimit) {
+				root.limit++;
+				root.increased = true;
+			}
+		} else if (throughput < root.best * DEGRADATION) {
+			// Multiplicative decrease, and start measuring from here
+			root.limit = Math.max(1, (root.limit + 1) / 2);
+			root.best = throughput;
+			root.increased = false;
+		} else if (root.increased) {
+			// The last step didn't help, take it back
+			root.limit = Math.max(1, root.limit - 1);
+			root.increased = false;
+		}
+
+		root.record(throughput, latency);
+		if (root.limit != oldLimit) {
+			LJGM.instance().getLogger().debug(String.format("%s: %d -> %d concurrent loads (%.1f images/s, %.1fms each)",
+					root.getName(), oldLimit, root.limit, throughput, latency));
+		}
+	}
+
+	/**
+	 * Gets the storage device a file is on.
+	 * 
+	 * @param f
+	 *            The file
+	 * @return The storage device
+	 */
+	private StorageRoot getRoot(File f) {
+		File dir = f.getAbsoluteFile().getParentFile();
+		StorageRoot root = rootsByDirectory.get(dir);
+		if (root != null) {
+			return root;
+		}
+
+		Object key;
+		String name;
+		try {
+			FileStore store = Files.getFileStore(f.toPath());
+			key = store;
+			name = store.toString();
+		} catch (IOException | RuntimeException e) {
+			key = "unknown";
+			name = "unknown";
+		}
+
+		root = roots.get(key);
+		if (root == null) {
+			root = new StorageRoot(name, adaptive ? Math.min(INITIAL_LIMIT, maxLimit) : maxLimit);
+			StorageRoot existing = roots.putIfAbsent(key, root);
+			if (existing != null) {
+				root = existing;
+			}
+		}
+		rootsByDirectory.put(dir, root);
+		return root;
+	}
+
+	/**
+	 * A storage device that images are loaded from, and its limit.
+	 */
+	public static class StorageRoot {
+
+		/** The name of the storage device. */
+		private final String name;
+
+		/** The most images that are loaded at the same time. */
+		private int limit;
+
+		/** The amount of images being loaded. */
+		private int inFlight;
+
+		/**
+		 * The time images were being loaded in the current window, in
+		 * nanoseconds, up to {@link #busySince}.
+		 */
+		private long busy;
+
+		/** When images last started being loaded, or when the window started. */
+		private long busySince;
+
+		/** The amount of images loaded in the current window. */
+		private int completed;
+
+		/** The total load time of the current window, in nanoseconds. */
+		private long latency;
+
+		/** True if the limit was reached in the current window. */
+		private boolean saturated;
+
+		/** The best throughput since the last decrease. */
+		private double best;
+
+		/** True if the last change was an increase. */
+		private boolean increased;
+
+		/** The limits and measurements of the past windows. */
+		private final List<String> history;
+
+		private StorageRoot(String name, int limit) {
+			this.name = name;
+			this.limit = limit;
+			this.history = new ArrayList<>();
+		}
+
+		/**
+		 * Adds a window to the history.
+		 * 
+		 * @param throughput
+		 *            The images loaded per second
+		 * @param latency
+		 *            The average load time in milliseconds
+		 */
+		private void record(double throughput, double latency) {
+			history.add(String.format("limit %d, %.1f images/s, %.1fms", limit, throughput, latency));
+			if (history.size() > MAX_HISTORY) {
+				history.remove(0);
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the most images that are loaded at the same time.
+		 * 
+		 * @return The limit
+		 */
+		public synchronized int getLimit() {
+			return limit;
+		}
+
+		/**
+		 * Gets the limits and measurements of the past windows, oldest first.
+		 * 
+		 * @return An unmodifiable copy of the history
+		 */
+		public synchronized List<String> getHistory() {
+			return Collections.unmodifiableList(new ArrayList<>(history));
+		}
+	}
+}
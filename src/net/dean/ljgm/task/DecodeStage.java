@@ -0,0 +1,329 @@
+package net.dean.ljgm.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javafx.scene.image.Image;
+import net.dean.ljgm.LJGM;
+import net.dean.ljgm.duplicates.PerceptualHash;
+import net.dean.ljgm.duplicates.PerceptualHashIndex;
+import net.dean.ljgm.image.IconDecoder;
+import net.dean.ljgm.image.ThumbnailPack;
+import net.dean.ljgm.logging.PipelineEvents;
+
+/*
+ * DecodeStage.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.task)
+ */
+/**
+ * This class is the second stage of loading icons. The services of an
+ * {@link ImageLoaderQueue} only read files into memory, and hand them to this
+ * stage, whose threads decode them. There is one thread per processor, so
+ * decoding keeps every core busy while the services keep the disks busy.<br>
+ * <br>
+ * The stages are connected by a bounded queue. When the decoders fall behind,
+ * {@link #submit(Request)} blocks, so the services stop reading and no more
+ * than a few files are held in memory.
+ */
+public class DecodeStage {
+
+	/** The most bytes the pooled buffers may hold while none are in use. */
+	private static final long MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+	/** The ImageLoaderQueue the decoded images are handed to. */
+	private final ImageLoaderQueue imageLoaderQueue;
+
+	/** The files that have been read and are waiting to be decoded. */
+	private final BlockingQueue<Request> requests;
+
+	/** The buffers the files are read into. */
+	private final BufferPool buffers;
+
+	/**
+	 * Instantiates a new DecodeStage and starts its threads.
+	 * 
+	 * @param imageLoaderQueue
+	 *            The ImageLoaderQueue the decoded images are handed to
+	 */
+	public DecodeStage(ImageLoaderQueue imageLoaderQueue) {
+		int decoders = Runtime.getRuntime().availableProcessors();
+		this.imageLoaderQueue = imageLoaderQueue;
+		this.requests = new ArrayBlockingQueue<>(decoders * 2);
+		// Every waiting and decoding request can hold a buffer, plus the ones
+		// being read, but only so many bytes are kept once they are released
+		this.buffers = new BufferPool(MAX_POOLED_BYTES);
+		for (int i = 0; i < decoders; i++) {
+			Thread t = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					while (true) {
+						Request request;
+						try {
+							request = requests.take();
+						} catch (InterruptedException e) {
+							return;
+						}
+						process(request);
+					}
+				}
+			}, "Icon decoder #" + (i + 1));
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Gets the pool that files should be read into.
+	 * 
+	 * @return The BufferPool
+	 */
+	public BufferPool getBuffers() {
+		return buffers;
+	}
+
+	/**
+	 * Waits until there is room in the queue and adds a file that has been
+	 * read to it.
+	 * 
+	 * @param request
+	 *            The file and how to decode it
+	 * @throws InterruptedException
+	 *             If the thread is interrupted while waiting. The buffer of
+	 *             the request has been released then.
+	 */
+	public void submit(Request request) throws InterruptedException {
+		try {
+			requests.put(request);
+		} catch (InterruptedException e) {
+			buffers.release(request.data);
+			throw e;
+		}
+	}
+
+	/**
+	 * Throws away the files that are waiting to be decoded.
+	 */
+	public void clear() {
+		List<Request> dropped = new ArrayList<>();
+		requests.drainTo(dropped);
+		for (Request request : dropped) {
+			buffers.release(request.data);
+		}
+	}
+
+	/**
+	 * Decodes a file and hands the icon to the ImageLoaderQueue.
+	 * 
+	 * @param request
+	 *            The file and how to decode it
+	 */
+	private void process(Request request) {
+		SingleFlight<Object, Image> flights = ImageLoaderQueue.getFlights();
+		if (request.generation != imageLoaderQueue.getGeneration() && flights.abandon(request.key)) {
+			// Belongs to a gallery that isn't shown anymore, and nobody else is
+			// waiting for it
+			buffers.release(request.data);
+			return;
+		}
+
+		File file = request.job.getImageFile();
+		PipelineEvents.Span span = PipelineEvents.begin(PipelineEvents.Type.DECODE);
+		long size = request.preview != null ? request.preview.length : request.data != null ? request.data.remaining()
+				: file.length();
+		Image i;
+		try {
+			if (request.preview != null) {
+				i = IconDecoder.decodePreview(request.preview, request.width, request.height, request.preserveRatio,
+						request.smooth);
+				if (i == null) {
+					// The embedded preview is broken, so decode the image itself
+					i = decodeFile(file, request);
+				}
+			} else if (request.data != null) {
+				i = IconDecoder.decode(file, request.data, request.width, request.height, request.preserveRatio,
+						request.smooth, request.subsampleFormats);
+			} else {
+				// Too large to read into memory
+				i = IconDecoder.decode(file, request.width, request.height, request.preserveRatio, request.smooth,
+						request.subsampleFormats);
+			}
+		} catch (RuntimeException e) {
+			// Don't let one broken image stop the rest from loading
+			LJGM.instance().getLogger().throwable(e, "Could not load " + file.getName() + ": ");
+			i = null;
+		} finally {
+			buffers.release(request.data);
+			span.commit(file, size, imageLoaderQueue.getGallery());
+		}
+
+		if (request.pack != null && i != null && !i.isError()) {
+			request.pack.add(file, i);
+		}
+		flights.complete(request.key, i);
+		finish(request.job, i, request.hashIndex, request.startTime, request.generation, imageLoaderQueue);
+	}
+
+	/**
+	 * Reads and decodes a file whose embedded preview could not be decoded.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @param request
+	 *            How to decode it
+	 * @return The icon, or <code>null</code> if the file could not be read
+	 */
+	private Image decodeFile(File file, Request request) {
+		ByteBuffer data;
+		try {
+			data = ImageLoaderService.read(file, buffers);
+		} catch (IOException e) {
+			LJGM.instance().getLogger().err("Could not read " + file.getName() + ": " + e.getMessage());
+			return null;
+		}
+
+		if (data == null) {
+			// Too large to read into memory
+			return IconDecoder.decode(file, request.width, request.height, request.preserveRatio, request.smooth,
+					request.subsampleFormats);
+		}
+		try {
+			return IconDecoder.decode(file, data, request.width, request.height, request.preserveRatio,
+					request.smooth, request.subsampleFormats);
+		} finally {
+			buffers.release(data);
+		}
+	}
+
+	/**
+	 * Hashes an icon if needed and hands it to the ImageLoaderQueue.
+	 * 
+	 * @param job
+	 *            The Queueable whose icon was loaded
+	 * @param i
+	 *            The icon, or <code>null</code> if it could not be loaded
+	 * @param hashIndex
+	 *            The index of perceptual hashes, or <code>null</code> if the
+	 *            image isn't hashed
+	 * @param startTime
+	 *            When loading the icon was started
+	 * @param generation
+	 *            The generation the icon was loaded in
+	 * @param imageLoaderQueue
+	 *            The ImageLoaderQueue
+	 */
+	static void finish(Queueable job, Image i, PerceptualHashIndex hashIndex, long startTime, long generation,
+			ImageLoaderQueue imageLoaderQueue) {
+		// The icon is already decoded, so hashing it is cheap
+		// Images whose pixels can't be read aren't hashed at all
+		if (hashIndex != null && i != null && !i.isError() && PerceptualHash.canHash(i)
+				&& hashIndex.needsHash(job.getImageFile())) {
+			hashIndex.put(job.getImageFile(), PerceptualHash.dHash(i));
+		}
+		imageLoaderQueue.loaded(job, i, System.currentTimeMillis() - startTime, generation);
+	}
+
+	/**
+	 * A file that has been read and is waiting to be decoded, along with the
+	 * icon settings of the service that read it.
+	 */
+	public static class Request {
+
+		/** The Queueable whose icon is loaded. */
+		private final Queueable job;
+
+		/** The key the icon is loaded under in the SingleFlight. */
+		private final Object key;
+
+		/** The contents of the file, or <code>null</code> if it wasn't read. */
+		private final ByteBuffer data;
+
+		/** The embedded preview of the file, or <code>null</code>. */
+		private final byte[] preview;
+
+		/** The maximum width of the icon. */
+		private final double width;
+
+		/** The maximum height of the icon. */
+		private final double height;
+
+		/** If the icon preserves the ratio of the image. */
+		private final boolean preserveRatio;
+
+		/** If the icon is scaled smoothly. */
+		private final boolean smooth;
+
+		/** The formats that are decoded with source subsampling. */
+		private final String[] subsampleFormats;
+
+		/** The pack the icon is added to, or <code>null</code>. */
+		private final ThumbnailPack pack;
+
+		/** The index of perceptual hashes, or <code>null</code>. */
+		private final PerceptualHashIndex hashIndex;
+
+		/** When loading the icon was started. */
+		private final long startTime;
+
+		/** The generation of the queue the file was read in. */
+		private final long generation;
+
+		/**
+		 * Instantiates a new Request.
+		 * 
+		 * @param job
+		 *            The Queueable whose icon is loaded
+		 * @param key
+		 *            The key the icon is loaded under in
+		 *            {@link ImageLoaderQueue#getFlights()}
+		 * @param data
+		 *            The contents of the file, taken from
+		 *            {@link DecodeStage#getBuffers()}, or <code>null</code> to
+		 *            decode straight from the file
+		 * @param preview
+		 *            The embedded preview of the file, used instead of the data
+		 *            if it is not <code>null</code>
+		 * @param width
+		 *            The maximum width of the icon, or 0 for the full size
+		 * @param height
+		 *            The maximum height of the icon, or 0 for the full size
+		 * @param preserveRatio
+		 *            If the icon preserves the ratio of the image
+		 * @param smooth
+		 *            If the icon is scaled smoothly
+		 * @param subsampleFormats
+		 *            The formats that are decoded with source subsampling
+		 * @param pack
+		 *            The pack the icon is added to, or <code>null</code>
+		 * @param hashIndex
+		 *            The index of perceptual hashes, or <code>null</code>
+		 * @param startTime
+		 *            When loading the icon was started
+		 * @param generation
+		 *            The generation of the queue the file was read in
+		 */
+		public Request(Queueable job, Object key, ByteBuffer data, byte[] preview, double width, double height,
+				boolean preserveRatio, boolean smooth, String[] subsampleFormats, ThumbnailPack pack,
+				PerceptualHashIndex hashIndex, long startTime, long generation) {
+			this.job = job;
+			this.key = key;
+			this.data = data;
+			this.preview = preview;
+			this.width = width;
+			this.height = height;
+			this.preserveRatio = preserveRatio;
+			this.smooth = smooth;
+			this.subsampleFormats = subsampleFormats;
+			this.pack = pack;
+			this.hashIndex = hashIndex;
+			this.startTime = startTime;
+			this.generation = generation;
+		}
+	}
+}
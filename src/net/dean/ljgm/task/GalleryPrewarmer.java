@@ -0,0 +1,97 @@
+package net.dean.ljgm.task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.application.Platform;
+import net.dean.ljgm.Gallery;
+import net.dean.ljgm.LJGM;
+
+/*
+ * GalleryPrewarmer.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.task)
+ */
+/**
+ * This class resolves the sources of galleries one by one in the background,
+ * so that they are ready by the time the user opens them. Galleries are only
+ * resolved while the {@link net.dean.ljgm.gui.ViewingArea} is not loading
+ * images, so the pre-warming does not compete with what the user is looking
+ * at. The count of every gallery in the sidebar is updated once it is known.
+ */
+public class GalleryPrewarmer implements Runnable {
+
+	/** How long to wait before checking again if the application is idle. */
+	private static final long IDLE_CHECK_INTERVAL = 250;
+
+	/** The galleries to resolve. */
+	private final List<Gallery> galleries;
+
+	/** What to run once every gallery is resolved, or null. */
+	private final Runnable onFinished;
+
+	/**
+	 * Instantiates a new GalleryPrewarmer.
+	 * 
+	 * @param galleries
+	 *            The galleries to resolve. The list is copied.
+	 * @param onFinished
+	 *            What to run on the background thread once every gallery is
+	 *            resolved, or <code>null</code>
+	 */
+	public GalleryPrewarmer(List<Gallery> galleries, Runnable onFinished) {
+		this.galleries = new ArrayList<>(galleries);
+		this.onFinished = onFinished;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		long start = System.currentTimeMillis();
+		try {
+			for (final Gallery g : galleries) {
+				if (g.isResolved()) {
+					continue;
+				}
+
+				while (LJGM.instance().getViewingArea().isLoading()) {
+					Thread.sleep(IDLE_CHECK_INTERVAL);
+				}
+
+				g.getAllImages();
+				Platform.runLater(new Runnable() {
+
+					@Override
+					public void run() {
+						LJGM.instance().getGallerySidebar().updateCount(g);
+					}
+				});
+			}
+		} catch (InterruptedException e) {
+			return;
+		}
+
+		LJGM.instance().getLogger().debug("Resolved " + galleries.size() + " galleries in the background in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		if (onFinished != null) {
+			onFinished.run();
+		}
+	}
+
+	/**
+	 * Starts pre-warming on a new low priority background thread.
+	 * 
+	 * @param prewarmer
+	 *            The GalleryPrewarmer to run
+	 */
+	public static void startInBackground(GalleryPrewarmer prewarmer) {
+		Thread t = new Thread(prewarmer, "Gallery pre-warmer");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		t.start();
+	}
+}
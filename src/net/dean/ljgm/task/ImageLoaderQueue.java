@@ -1,35 +1,58 @@
 package net.dean.ljgm.task;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
-import javafx.application.Platform;
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.concurrent.Worker;
 import javafx.concurrent.Worker.State;
+import javafx.scene.image.Image;
 import net.dean.ljgm.LJGM;
 import net.dean.ljgm.LJGMDefaults;
+import net.dean.ljgm.LJGMUtils;
 import net.dean.ljgm.gui.ImageDisplay;
 import net.dean.ljgm.gui.StatusBar;
+import net.dean.ljgm.image.ThumbnailPack;
+import net.dean.ljgm.logging.PipelineEvents;
 
 // TODO: Auto-generated Javadoc
 /**
- * This class is responsible for queuing {@link ImageDisplay} objects for
- * loading their images. Once {@link #queue(ImageDisplay)} is called, the
- * {@link ImageDisplay} is put into a list of queued displays. If there busy
- * workers, then a separate thread calls {@link #pollReadyWorkers()}.<br>
+ * This class is responsible for queuing {@link Queueable} objects for loading
+ * their images. Once {@link #queue(Queueable, Lane)} is called, the Queueable
+ * is put into a lane of a {@link LaneScheduler}. {@link #start()} starts the
+ * services, which take jobs from the highest lane on their own threads until
+ * all of them are empty.<br>
+ * <br>
+ * Loaded images are not handed to their Queueables right away. Instead, they
+ * are collected in a buffer that is emptied once per frame by an
+ * {@link AnimationTimer}, so the JavaFX application thread sees one batch of
+ * images per pulse instead of one event per image. The progress and the
+ * message of the {@link StatusBar} are updated at most once per frame too.<br>
  * <br>
  * This basic process is followed:
  * <ol>
- * <li>An {@link ImageDisplay} is queued.
- * <li>If a service is available, it starts working. If one is not, then it will
- * sit in the queue.
- * <li>If at this point the {@link ImageDisplay} is still in the queue, it is
- * removed.
- * <li>Once the worker is finished, it passes on the image to the ImageDisplay.
- * <li>The service is declared ready for a new task.
+ * <li>A {@link Queueable} is queued.
+ * <li>When the queue is started, every service starts taking jobs from the
+ * queue.
+ * <li>A service reads the image file into memory, hands it to the
+ * {@link DecodeStage} and takes the next job.
+ * <li>Once a decoder has decoded an image, it adds it to the buffer.
+ * <li>On the next frame, every image in the buffer is passed on to its
+ * Queueable.
+ * <li>A service stops once there are no jobs left.
  * </ol>
  * 
  * @author Matthew Dean
@@ -37,6 +60,12 @@ import net.dean.ljgm.gui.StatusBar;
  */
 public class ImageLoaderQueue {
 
+	/**
+	 * The icons that are being loaded by any queue, so an image that is asked
+	 * for by several Queueables at once is only loaded once.
+	 */
+	private static final SingleFlight<Object, Image> FLIGHTS = new SingleFlight<>();
+
 	/** A list of the load times of the last loaded gallery. */
 	private List<Long> loadTimes;
 
@@ -47,66 +76,189 @@ public class ImageLoaderQueue {
 	private SimpleDoubleProperty progressProperty;
 
 	/** The amount of total images. */
-	private long totalImages;
+	private volatile long totalImages;
 
 	/** The amount of loaded images. */
-	private long loadedImages;
+	private volatile long loadedImages;
 
-	/** A list of all the available services. */
-	private final List<ImageLoaderService> availableServices;
-	
 	private boolean stopped;
 
 	/**
-	 * A list of all the Queueables that are not being worked on by a worker.
+	 * The amount of services this queue should have.
+	 */
+	private int poolSize;
+
+	/**
+	 * The lanes of all the Queueables that are not being worked on by a
+	 * service. Services take jobs from it on their own threads.
+	 */
+	private final LaneScheduler<Queueable> queuedDisplays;
+
+	/**
+	 * The images that have been loaded but not handed to their Queueables yet.
+	 * Services add to it on their own threads, {@link #applier} empties it on
+	 * the JavaFX application thread.
+	 */
+	private final Queue<LoadedImage> loaded;
+
+	/**
+	 * Increased every time the queue is reset. Images loaded for an older
+	 * generation are thrown away.
 	 */
-	private List<Queueable> queuedDisplays;
+	private volatile long generation;
+
+	/** The timer that hands the loaded images to their Queueables every frame. */
+	private final AnimationTimer applier;
+
+	/** True while {@link #applier} is running. */
+	private boolean applying;
+
+	/**
+	 * The thumbnail pack of the gallery being loaded, or null if it doesn't
+	 * have one.
+	 */
+	private volatile ThumbnailPack pack;
+
+	/** The size, in pixels, the icons are loaded at. */
+	private volatile int tier;
+
+	/** The name of the gallery being loaded, which is added to its events. */
+	private volatile String gallery;
+
+	/**
+	 * The queue wait events of the Queueables in {@link #queuedDisplays},
+	 * which are only started while a recording asks for them.
+	 */
+	private final Map<Queueable, PipelineEvents.Span> waiting;
+
+	/** Limits how many images are loaded at the same time from each disk. */
+	private volatile ConcurrencyController concurrency;
+
+	/** The value of background_threads {@link #concurrency} was created with. */
+	private int backgroundThreads;
+
+	/** Decodes the files the services have read. */
+	private final DecodeStage decodeStage;
 
 	/**
 	 * Instantiates a new {@link ImageLoaderQueue}.
 	 */
 	public ImageLoaderQueue() {
 		services = new ArrayList<>();
-		for (int i = 0; i < LJGMDefaults.BACKGROUND_THREADS; i++) {
+		this.backgroundThreads = LJGM.instance().getConfigManager().getBackgroundThreads();
+		this.concurrency = new ConcurrencyController(backgroundThreads);
+		this.poolSize = concurrency.getMaxLimit();
+		this.decodeStage = new DecodeStage(this);
+		for (int i = 0; i < poolSize; i++) {
 			services.add(new ImageLoaderService(this));
 		}
-		availableServices = new ArrayList<>(services);
-		this.queuedDisplays = new ArrayList<>();
+		this.queuedDisplays = new LaneScheduler<>();
+		this.waiting = new IdentityHashMap<>();
+		this.loaded = new ConcurrentLinkedQueue<>();
 		this.progressProperty = new SimpleDoubleProperty(0);
 		this.loadTimes = new ArrayList<>();
 		this.totalImages = 0;
+		this.tier = LJGMUtils.getIconTier(LJGM.instance().getConfigManager().getIconWidth());
 		this.loadedImages = 0;
+		this.generation = 0;
 		this.stopped = true;
+		this.applier = new AnimationTimer() {
+
+			@Override
+			public void handle(long now) {
+				applyLoaded();
+			}
+		};
+
+		// Resize the pool when background_threads is changed in the settings
+		LJGM.instance().getConfigManager().iniFileProperty().addListener(new InvalidationListener() {
+
+			@Override
+			public void invalidated(Observable observable) {
+				int threads = LJGM.instance().getConfigManager().getBackgroundThreads();
+				if (threads < 0) {
+					LJGM.instance().getLogger().warn("Ignoring an invalid amount of background threads: " + threads);
+					return;
+				}
+				if (threads == backgroundThreads) {
+					// Another setting changed; keep the limits that were tuned
+					return;
+				}
+				// Images that are being loaded are still counted by the old controller
+				backgroundThreads = threads;
+				concurrency = new ConcurrencyController(threads);
+				setPoolSize(concurrency.getMaxLimit());
+			}
+		});
+	}
+
+	/**
+	 * Sets the amount of services that load images. If there are more services
+	 * than needed, the extra ones stop once they have finished the image they
+	 * are currently loading. If there are less, new services are created and
+	 * started if there are any queued images.
+	 * 
+	 * @param size
+	 *            The new amount of services
+	 */
+	public void setPoolSize(int size) {
+		if (size < 1) {
+			LJGM.instance().getLogger().warn("Ignoring an invalid amount of background threads: " + size);
+			return;
+		}
+
+		if (size == poolSize) {
+			return;
+		}
+
+		LJGM.instance().getLogger().info("Changing the amount of background threads from " + poolSize + " to " + size);
+		this.poolSize = size;
+
+		// Add services until there are enough
+		while (services.size() < poolSize) {
+			ImageLoaderService service = new ImageLoaderService(this);
+			services.add(service);
+
+			if (!stopped && !queuedDisplays.isEmpty()) {
+				service.start();
+			}
+		}
+
+		// Remove the extra services. Busy ones finish their current image first.
+		while (services.size() > poolSize) {
+			services.remove(services.size() - 1).retire();
+		}
 	}
 
 	/**
-	 * Starts the {@link ServiceDeployer}.
+	 * Starts every service that is not already running.
 	 */
 	public void start() {
 		stopped = false;
-		Platform.runLater(new Runnable() {
-			@Override
-			public void run() {
-				LJGM.instance().getLogger().debug("Assigning all available services");
-
-				// Check for a higher amount of queued images than available
-				// workers.
-				// If so, then don't iterate through all the services because
-				// that would cause
-				// an IndexOutOfBoundsException.
-				List<ImageLoaderService> availableServices = getAvailableServices();
-				int amountWorkersNeeded = (queuedDisplays.size() > availableServices.size() ? availableServices.size()
-						: queuedDisplays.size());
-
-				for (int i = amountWorkersNeeded; i > 0; i--) {
-					ImageLoaderService service = availableServices.get(i - 1);
-					if (queuedDisplays.get(i - 1) != null) {
-						service.assignJob(queuedDisplays.get(i - 1));
-					}
-				}
-			}
+		LJGM.instance().getLogger().debug("Assigning all available services");
 
-		});
+		for (ImageLoaderService service : services) {
+			startService(service);
+		}
+
+		if (!applying) {
+			applier.start();
+			applying = true;
+		}
+	}
+
+	/**
+	 * Starts a service if it is not running.
+	 * 
+	 * @param service
+	 *            The service to start
+	 */
+	private void startService(ImageLoaderService service) {
+		if (service.getState() == State.READY) {
+			service.start();
+		} else if (service.getState() != State.RUNNING && service.getState() != State.SCHEDULED) {
+			service.restart();
+		}
 	}
 
 	/**
@@ -116,33 +268,35 @@ public class ImageLoaderQueue {
 		if (stopped) {
 			LJGM.instance().getLogger().warn("ImageLoaderQueue was not running when the cancel signal was given.");
 		} else {
-			// Stop services from getting new jobs in the finished(...) method
+			// Stop services from taking new jobs
 			stopped = true;
 		}
-		
+
 		reset();
 	}
 
 	/**
 	 * Resets this {@link ImageLoaderQueue}. This method resets the services,
-	 * queued displays, load times, the loaded images counter, and the total
-	 * images counter.
+	 * queued displays, loaded images, load times, the loaded images counter,
+	 * and the total images counter.
 	 */
 	private void reset() {
 		LJGM.instance().getLogger().debug("Resetting queue...");
-	
-		// Clear the list of available services.
-		availableServices.clear();
-		// Cancel the services if they are scheduled and reset them to
-		// State.READY.
+
+		// Images that are still being loaded belong to the old generation and
+		// will be thrown away
+		generation++;
 		resetServices();
-		// Services are guaranteed to be ready, add them to the list
-		availableServices.addAll(services);
 		// Reset the queued
 		queuedDisplays.clear();
+		synchronized (waiting) {
+			waiting.clear();
+		}
+		decodeStage.clear();
+		loaded.clear();
 		// Reset the load times
 		loadTimes.clear();
-	
+
 		loadedImages = 0;
 		totalImages = 0;
 	}
@@ -151,22 +305,10 @@ public class ImageLoaderQueue {
 	 * Cancels and resets all the services.
 	 */
 	private void resetServices() {
-//		for (ImageLoaderService service : services) {
-		for (int i = 0; i < services.size(); i++) {
-			ImageLoaderService service = services.get(i);
-			System.out.println("State is " + service.getState());
-			System.out.println("Cancelling service.");
+		for (ImageLoaderService service : services) {
 			service.cancel();
-		}
-		
-		for (int i = 0; i < services.size(); i++) {
-			ImageLoaderService service = services.get(i);
-			System.out.println("State is " + service.getState());
-			System.out.println("Resetting service.");
 			service.reset();
-			System.out.println("State is " + service.getState());
 		}
-		
 	}
 
 	/**
@@ -179,62 +321,313 @@ public class ImageLoaderQueue {
 	}
 
 	/**
-	 * Called when a worker has finished it's job. First, the
-	 *
-	 * @param service The worker that has finished it's job.
-	 * {@link ImageDisplay} who's image the service was working on is added to
-	 * it. Then, if the queue is not empty, it assigns the service another
-	 * {@link ImageDisplay} to work on. Finally, it updates the
-	 * {@link StatusBar} to show how many images have been loaded.
+	 * Gets the current generation of this queue. Services use it to tell if
+	 * their jobs are still wanted.
+	 * 
+	 * @return The current generation
+	 */
+	long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Gets the next job for a service. This is called on the service's own
+	 * thread.
+	 * 
+	 * @param serviceGeneration
+	 *            The generation the service was started in
+	 * @return The next Queueable, or <code>null</code> if there are no jobs
+	 *         left or the queue was reset since the service was started.
+	 */
+	Queueable nextJob(long serviceGeneration) {
+		if (serviceGeneration != generation) {
+			return null;
+		}
+		LaneScheduler.Entry<Queueable> entry = queuedDisplays.poll();
+		if (entry == null) {
+			return null;
+		}
+
+		Queueable job = entry.getItem();
+		if (PipelineEvents.isEnabled(PipelineEvents.Type.QUEUE_WAIT)) {
+			PipelineEvents.Span span;
+			synchronized (waiting) {
+				span = waiting.remove(job);
+			}
+			if (span != null) {
+				span.commit(job.getImageFile(), entry.getLane().ordinal(), gallery);
+			}
+		}
+		return job;
+	}
+
+	/**
+	 * Called by a service on its own thread when it has loaded an image. The
+	 * image is passed on to the Queueable on the next frame.
+	 * 
+	 * @param target
+	 *            The Queueable whose image was loaded
+	 * @param image
+	 *            The image, or <code>null</code> if it could not be loaded
+	 * @param loadTime
+	 *            The time it took to load the image, in milliseconds
+	 * @param serviceGeneration
+	 *            The generation the service was started in
+	 */
+	void loaded(Queueable target, Image image, long loadTime, long serviceGeneration) {
+		if (serviceGeneration == generation) {
+			loaded.add(new LoadedImage(target, image, loadTime, serviceGeneration, PipelineEvents
+					.begin(PipelineEvents.Type.FX_HANDOFF)));
+		}
+	}
+
+	/**
+	 * Called when a service has run out of jobs. If more images were queued in
+	 * the meantime, the service is started again.
+	 * 
+	 * @param service
+	 *            The service that has finished.
 	 */
 	void finished(ImageLoaderService service) {
-		if (stopped) {
-			// Don't do anything after the stop signal has been given.
-			// Don't want to waste any more valuable memory.
-			return;
+		if (!stopped && !service.isRetired() && !queuedDisplays.isEmpty()) {
+			startService(service);
 		}
-		
-		/*
-		 * Call the display's imageLoaded() method
-		 */
-		service.getJobTarget().onLoaded(service.imageProperty().get());
-		loadedImages++;
-		progressProperty.set((double) loadedImages / totalImages);
-		if (!queuedDisplays.isEmpty()) {
-			service.assignJob(queuedDisplays.get(0));
-			loadTimes.add(service.getLoadTime());
-			queuedDisplays.remove(0);
+	}
+
+	/**
+	 * Hands all the loaded images to their Queueables and updates the
+	 * {@link StatusBar}. This is called once per frame by {@link #applier}.
+	 */
+	private void applyLoaded() {
+		int applied = 0;
+		LoadedImage img;
+		while ((img = loaded.poll()) != null) {
+			if (img.generation != generation) {
+				// Belongs to a gallery that isn't shown anymore
+				continue;
+			}
+
+			if (img.image != null) {
+				img.target.onLoaded(img.image);
+			}
+			img.handoff.commit(img.target.getImageFile(), img.image == null ? 0 : (long) img.image.getWidth(),
+					gallery);
+			loadTimes.add(img.loadTime);
+			applied++;
+		}
+
+		if (applied > 0) {
+			loadedImages += applied;
+			progressProperty.set((double) loadedImages / totalImages);
 
 			// @formatter:off
 			LJGM.instance() .getStatusBar() .setMessage("Loading images.. (" + getLoadedImages() + "/"
 									+ getTotalImages() + ")" + ((LJGM.instance().getConfigManager()
-											.isDebug()) ? ", average " + getAverageLoadTime() + "ms" : ""));
+											.isDebug()) ? ", average " + getAverageLoadTime() + "ms, threads "
+											+ concurrency.describe() : ""));
 			// @formatter:on
 		}
+
+		if (isDone() || stopped) {
+			applier.stop();
+			applying = false;
+
+			// Everything that wasn't packed yet has been loaded now
+			if (!stopped && pack != null) {
+				pack.rebuildInBackground();
+			}
+			if (!stopped && LJGM.instance().getConfigManager().isDebug()) {
+				for (ConcurrencyController.StorageRoot root : concurrency.getRoots()) {
+					LJGM.instance().getLogger().debug("Concurrent loads from " + root.getName() + ": "
+							+ root.getHistory());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the size icons are loaded at. It applies to the services started
+	 * after this call.
+	 * 
+	 * @param tier
+	 *            One of {@link LJGMDefaults#ICON_TIERS}
+	 */
+	public void setTier(int tier) {
+		this.tier = tier;
+	}
+
+	/**
+	 * Gets the size icons are loaded at.
+	 * 
+	 * @return The tier
+	 */
+	public int getTier() {
+		return tier;
+	}
+
+	/**
+	 * Sets the name of the gallery being loaded, which is added to the events
+	 * of its images.
+	 * 
+	 * @param gallery
+	 *            The name of the gallery
+	 */
+	public void setGallery(String gallery) {
+		this.gallery = gallery;
 	}
 
 	/**
-	 * Gets a list of services whose state is equal to {@link State#READY}.
+	 * Gets the name of the gallery being loaded.
 	 * 
-	 * @return A {@link List} of available workers whose
-	 *         <code>stateProperty()</code> is equal to {@link State#READY}.
+	 * @return The name, or <code>null</code> if it wasn't set
+	 */
+	public String getGallery() {
+		return gallery;
+	}
+
+	/**
+	 * Gets the controller that limits how many images are loaded at the same
+	 * time from each disk.
 	 * 
-	 * @see State
-	 * @see Worker
+	 * @return The ConcurrencyController
 	 */
-	private List<ImageLoaderService> getAvailableServices() {
-		return availableServices;
+	public ConcurrencyController getConcurrency() {
+		return concurrency;
 	}
 
 	/**
-	 * Queues an ImageDisplay to be loaded by a service.
+	 * Gets the icons that are being loaded by any queue.
+	 * 
+	 * @return The SingleFlight of icons
+	 */
+	static SingleFlight<Object, Image> getFlights() {
+		return FLIGHTS;
+	}
+
+	/**
+	 * Gets the key an icon is loaded under in {@link #getFlights()}. The same
+	 * file reached through different paths, for instance a link, has the same
+	 * key if the file system can tell.
+	 * 
+	 * @param file
+	 *            The image file
+	 * @param size
+	 *            The size the icon is loaded at
+	 * @return The key
+	 */
+	static Object getFlightKey(File file, double size) {
+		Object identity = null;
+		try {
+			identity = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+		} catch (IOException e) {
+			// Reading the file will report the problem
+		}
+		if (identity == null) {
+			identity = file.getAbsolutePath();
+		}
+		return Arrays.asList(identity, size);
+	}
+
+	/**
+	 * Gets the stage that decodes the files the services have read.
+	 * 
+	 * @return The DecodeStage
+	 */
+	DecodeStage getDecodeStage() {
+		return decodeStage;
+	}
+
+	/**
+	 * Sets the thumbnail pack that services take icons from before decoding
+	 * images. It applies to the services started after this call.
+	 * 
+	 * @param pack
+	 *            The pack of the gallery being loaded, or <code>null</code>
+	 */
+	public void setPack(ThumbnailPack pack) {
+		this.pack = pack;
+	}
+
+	/**
+	 * Gets the thumbnail pack of the gallery being loaded.
+	 * 
+	 * @return The pack, or <code>null</code> if the gallery doesn't have one
+	 */
+	public ThumbnailPack getPack() {
+		return pack;
+	}
+
+	/**
+	 * Queues an ImageDisplay to be loaded by a service in the
+	 * {@link Lane#PREFETCH} lane.
 	 * 
 	 * @param queueable
 	 *            the img disp
 	 */
 	public void queue(Queueable queueable) {
-		queuedDisplays.add(queueable);
-		totalImages++;
+		queue(queueable, Lane.PREFETCH);
+	}
+
+	/**
+	 * Queues a Queueable to be loaded by a service. If it is queued already,
+	 * it is moved to the lane if that is higher.
+	 * 
+	 * @param queueable
+	 *            The Queueable
+	 * @param lane
+	 *            The lane to queue it in
+	 */
+	public void queue(Queueable queueable, Lane lane) {
+		if (queuedDisplays.add(queueable, lane)) {
+			totalImages++;
+			if (PipelineEvents.isEnabled(PipelineEvents.Type.QUEUE_WAIT)) {
+				synchronized (waiting) {
+					waiting.put(queueable, PipelineEvents.begin(PipelineEvents.Type.QUEUE_WAIT));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves a queued Queueable to a higher lane, for instance when it scrolls
+	 * into view. Nothing happens if it isn't queued anymore.
+	 * 
+	 * @param queueable
+	 *            The Queueable
+	 * @param lane
+	 *            The lane to move it to
+	 */
+	public void promote(Queueable queueable, Lane lane) {
+		queuedDisplays.promote(queueable, lane);
+	}
+
+	/**
+	 * Moves a queued Queueable to a lower lane, for instance when it isn't
+	 * shown anymore. Nothing happens if it isn't queued anymore.
+	 * 
+	 * @param queueable
+	 *            The Queueable
+	 * @param lane
+	 *            The lane to move it to
+	 */
+	public void demote(Queueable queueable, Lane lane) {
+		queuedDisplays.demote(queueable, lane);
+	}
+
+	/**
+	 * Takes a Queueable out of the queue, so its image is not loaded. Nothing
+	 * happens if a service has taken it already.
+	 * 
+	 * @param queueable
+	 *            The Queueable
+	 */
+	public void dequeue(Queueable queueable) {
+		if (queuedDisplays.remove(queueable)) {
+			totalImages--;
+			synchronized (waiting) {
+				waiting.remove(queueable);
+			}
+		}
 	}
 
 	/**
@@ -281,7 +674,7 @@ public class ImageLoaderQueue {
 		}
 		return total / loadTimes.size();
 	}
-	
+
 	/**
 	 * Checks if the queued displays list is empty.
 	 * 
@@ -291,4 +684,47 @@ public class ImageLoaderQueue {
 		return queuedDisplays.isEmpty();
 	}
 
+	/**
+	 * An image that was loaded by a service, waiting to be handed to its
+	 * {@link ImageDisplay}.
+	 */
+	private static class LoadedImage {
+
+		/** The Queueable whose image was loaded. */
+		private final Queueable target;
+
+		/** The loaded image, or <code>null</code> if it could not be loaded. */
+		private final Image image;
+
+		/** The time it took to load the image. */
+		private final long loadTime;
+
+		/** The generation of the queue the image was loaded in. */
+		private final long generation;
+
+		/** The event of handing the image to the JavaFX application thread. */
+		private final PipelineEvents.Span handoff;
+
+		/**
+		 * Instantiates a new LoadedImage.
+		 * 
+		 * @param target
+		 *            The Queueable whose image was loaded
+		 * @param image
+		 *            The loaded image
+		 * @param loadTime
+		 *            The time it took to load the image
+		 * @param generation
+		 *            The generation of the queue the image was loaded in
+		 * @param handoff
+		 *            The event of handing the image over
+		 */
+		private LoadedImage(Queueable target, Image image, long loadTime, long generation, PipelineEvents.Span handoff) {
+			this.target = target;
+			this.image = image;
+			this.loadTime = loadTime;
+			this.generation = generation;
+			this.handoff = handoff;
+		}
+	}
 }
@@ -1,57 +1,58 @@
 package net.dean.ljgm.task;
 
-import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleObjectProperty;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.EventHandler;
-import net.dean.gui.fx.ImageWithFile;
+import javafx.scene.image.Image;
+import net.dean.ljgm.ConfigManager;
 import net.dean.ljgm.LJGM;
-import net.dean.ljgm.LJGMDefaults;
-import net.dean.ljgm.gui.ImageDisplay;
+import net.dean.ljgm.duplicates.PerceptualHashIndex;
+import net.dean.ljgm.image.IconDecoder;
+import net.dean.ljgm.image.ThumbnailPack;
+import net.dean.ljgm.logging.PipelineEvents;
 
 // TODO: Auto-generated Javadoc
 /**
- * This class is responsible for starting a background thread to load an image.
+ * This class is responsible for starting a background thread to load images.
+ * Once started, the thread keeps taking jobs from its {@link ImageLoaderQueue}
+ * until there are none left. Icons found in the thumbnail pack are handed back
+ * to the queue right away. Otherwise the thread only reads the file into
+ * memory and hands it to the {@link DecodeStage}, so it can read the next file
+ * while the last one is decoded.
  */
-public class ImageLoaderService extends Service<ImageWithFile> {
-	
-	/** The start time. */
-	private long startTime;
-	
-	/** The end time. */
-	private long endTime;
-	
-	/** The time it took to load the last image. */
-	private long loadTime;
-
-	/** The image that will be returned. */
-	private ObjectProperty<ImageWithFile> image;
-
-	/** The Queueable whose image will be loaded. */
-	private Queueable queueable;
-	
+public class ImageLoaderService extends Service<Void> {
+
+	/** Files larger than this are decoded straight from disk instead. */
+	private static final long MAX_READ_SIZE = 256L * 1024 * 1024;
+
 	/** The {@link ImageLoaderQueue} who is in charge of this service. */
 	private ImageLoaderQueue imageLoaderQueue;
 
+	/**
+	 * True if this service should stop after its current image because the
+	 * pool was made smaller.
+	 */
+	private volatile boolean retired;
+
 	/**
 	 * Instantiates a new {@link ImageLoaderService}.
 	 *
 	 * @param imageLoaderQueue The ImageLoaderQueue
 	 */
 	public ImageLoaderService(final ImageLoaderQueue imageLoaderQueue) {
-		this.image = new SimpleObjectProperty<ImageWithFile>();
 		this.imageLoaderQueue = imageLoaderQueue;
-		this.queueable = null;
+		this.retired = false;
 		setOnSucceeded(new EventHandler<WorkerStateEvent>() {
 
 			@Override
 			public void handle(WorkerStateEvent wse) {
-				queueable.onLoaded(image.get());
-				endTime = System.currentTimeMillis();
-				loadTime = (endTime - startTime);
-				LJGM.instance().getLogger().debug("Loaded file \"" + image.get().getFile().getName() + "\" in " + loadTime + "ms. Average " + imageLoaderQueue.getAverageLoadTime() + "ms.");
 				reset();
 				ImageLoaderService.this.imageLoaderQueue.finished(ImageLoaderService.this);
 			}
@@ -64,74 +65,179 @@ public class ImageLoaderService extends Service<ImageWithFile> {
 	 * @see javafx.concurrent.Service#createTask()
 	 */
 	@Override
-	protected Task<ImageWithFile> createTask() {
-		return new Task<ImageWithFile>() {
-			protected ImageWithFile call() {
-				ImageWithFile i = new ImageWithFile(queueable.getImageFile(), LJGMDefaults.ICON_WIDTH,
-						LJGMDefaults.ICON_HEIGHT, true, true);
-				image.set(i);
-				return image.get();
+	protected Task<Void> createTask() {
+		// Read the icon settings on the application thread so that a reload of
+		// the settings can't change them halfway through the task
+		ConfigManager config = LJGM.instance().getConfigManager();
+		// Icons are loaded at the size of a tier and scaled to the zoom of the grid
+		final double width = imageLoaderQueue.getTier();
+		final double height = width;
+		final boolean preserveRatio = config.isIconPreserveRatio();
+		final boolean smooth = config.isIconSmooth();
+		final String[] subsampleFormats = config.getIconSubsampleFormats();
+		final boolean fullPreserveRatio = config.isFullscreenImagesPreserveRatio();
+		final boolean fullSmooth = config.isFullscreenImagesSmooth();
+		final long generation = imageLoaderQueue.getGeneration();
+		final PerceptualHashIndex hashIndex = LJGM.instance().getPerceptualHashIndex();
+		final ThumbnailPack pack = imageLoaderQueue.getPack();
+		final String gallery = imageLoaderQueue.getGallery();
+		final ConcurrencyController concurrency = imageLoaderQueue.getConcurrency();
+		final DecodeStage decoder = imageLoaderQueue.getDecodeStage();
+		final SingleFlight<Object, Image> flights = ImageLoaderQueue.getFlights();
+		return new Task<Void>() {
+			protected Void call() {
+				Queueable job;
+				while (!isCancelled() && !retired && (job = imageLoaderQueue.nextJob(generation)) != null) {
+					final long startTime = System.currentTimeMillis();
+					final Queueable follower = job;
+					File file = job.getImageFile();
+					// Full size images are loaded at a size of 0, and are not
+					// packed or hashed
+					boolean full = job.isFullSize();
+					double w = full ? 0 : width;
+					double h = full ? 0 : height;
+					ThumbnailPack jobPack = full ? null : pack;
+					PerceptualHashIndex jobHashes = full ? null : hashIndex;
+
+					Image i = null;
+					try {
+						i = jobPack == null ? null : jobPack.get(file);
+					} catch (RuntimeException e) {
+						// Loaded without the pack instead
+						LJGM.instance().getLogger().err("Could not read the packed icon of " + file.getName() + ": "
+								+ e.getMessage());
+					}
+					if (jobPack != null) {
+						PipelineEvents.instant(i != null ? PipelineEvents.Type.CACHE_HIT
+								: PipelineEvents.Type.CACHE_MISS, file, 0, gallery);
+					}
+					if (i != null) {
+						DecodeStage.finish(job, i, jobHashes, startTime, generation, imageLoaderQueue);
+						continue;
+					}
+
+					Object key = ImageLoaderQueue.getFlightKey(file, w);
+					boolean leader = flights.join(key, new SingleFlight.Callback<Image>() {
+
+						@Override
+						public void done(Image image) {
+							imageLoaderQueue.loaded(follower, image, System.currentTimeMillis() - startTime, generation);
+						}
+					});
+					if (!leader) {
+						// Another service is already loading this icon
+						continue;
+					}
+
+					// Only reading touches the disk, so only it is limited
+					ConcurrencyController.StorageRoot root;
+					try {
+						root = concurrency.acquire(file);
+					} catch (InterruptedException e) {
+						// Cancelled while waiting
+						giveUp(key);
+						break;
+					}
+					long readStart = System.nanoTime();
+					PipelineEvents.Span span = PipelineEvents.begin(PipelineEvents.Type.READ);
+					byte[] preview = null;
+					ByteBuffer data = null;
+					try {
+						preview = full ? null : IconDecoder.readPreview(file, w, h, preserveRatio);
+						if (preview == null) {
+							data = read(file, decoder.getBuffers());
+						}
+						span.commit(file, preview != null ? preview.length : data != null ? data.remaining() : 0,
+								gallery);
+					} catch (IOException | RuntimeException e) {
+						// The job and anyone waiting for its flight are finished
+						// either way, so the rest of the batch is still loaded
+						LJGM.instance().getLogger().err("Could not read " + file.getName() + ": " + e.getMessage());
+						flights.complete(key, null);
+						DecodeStage.finish(job, null, jobHashes, startTime, generation, imageLoaderQueue);
+						continue;
+					} finally {
+						concurrency.release(root, System.nanoTime() - readStart);
+					}
+
+					try {
+						decoder.submit(new DecodeStage.Request(job, key, data, preview, w, h, full ? fullPreserveRatio
+								: preserveRatio, full ? fullSmooth : smooth, subsampleFormats, jobPack, jobHashes,
+								startTime, generation));
+					} catch (InterruptedException e) {
+						// Cancelled while waiting for the decoders
+						giveUp(key);
+						break;
+					}
+				}
+				return null;
 			}
 		};
 	}
 
 	/**
-	 * Assigns an {@link ImageDisplay} for this service to work on and starts
-	 * the service.
+	 * Stops loading an icon that was cancelled. If Queueables of other queues
+	 * are waiting for it, they are told it could not be loaded.
 	 * 
-	 * @param queueable
-	 *            The ImageDisplay whose image will be loaded by this service.
+	 * @param key
+	 *            The key the icon is loaded under
 	 */
-	public void assignJob(Queueable queueable) {
-		this.queueable = queueable;
-		start();
-	}
-	
-	/* (non-Javadoc)
-	 * @see javafx.concurrent.Service#start()
-	 */
-	@Override
-	public void start() {
-		startTime = System.currentTimeMillis();
-		super.start();
+	private static void giveUp(Object key) {
+		SingleFlight<Object, Image> flights = ImageLoaderQueue.getFlights();
+		if (!flights.abandon(key)) {
+			flights.complete(key, null);
+		}
 	}
 
 	/**
-	 * Gets the {@link Queueable} whose image will be loaded by this service.
+	 * Reads a whole file into a buffer from a pool.
 	 * 
-	 * @return The {@link Queueable}.
+	 * @param file
+	 *            The file
+	 * @param buffers
+	 *            The pool to take the buffer from
+	 * @return The contents of the file, from position 0 to the limit, or
+	 *         <code>null</code> if the file is too large to be read into memory
+	 * @throws IOException
+	 *             If the file could not be read
 	 */
-	public Queueable getJobTarget() {
-		return queueable;
+	static ByteBuffer read(File file, BufferPool buffers) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > MAX_READ_SIZE) {
+				return null;
+			}
+
+			ByteBuffer buffer = buffers.acquire((int) size);
+			try {
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0) {
+						// The file got shorter while it was read
+						break;
+					}
+				}
+			} catch (IOException e) {
+				buffers.release(buffer);
+				throw e;
+			}
+			buffer.flip();
+			return buffer;
+		}
 	}
 
 	/**
-	 * Assigns an {@link ImageDisplay} for this service to work on.
-	 * 
-	 * @param imgDisp
-	 *            The new target
+	 * Makes this service stop after the image it is currently loading.
 	 */
-	public void setJobTarget(ImageDisplay imgDisp) {
-		this.queueable = imgDisp;
+	void retire() {
+		this.retired = true;
 	}
 
 	/**
-	 * The property assigned to the loaded {@link ImageWithFile} that is loaded
-	 * by this service.
+	 * Checks if this service was told to stop.
 	 * 
-	 * @return The {@link ObjectProperty} that wraps the {@link ImageWithFile}.
+	 * @return True, if {@link #retire()} was called.
 	 */
-	public ObjectProperty<ImageWithFile> imageProperty() {
-		return image;
+	boolean isRetired() {
+		return retired;
 	}
-	
-	/**
-	 * Gets the time it took to load the last image.
-	 *
-	 * @return The load time.
-	 */
-	public long getLoadTime() {
-		return loadTime;
-	}
-
 }
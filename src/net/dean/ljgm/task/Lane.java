@@ -0,0 +1,26 @@
+package net.dean.ljgm.task;
+
+/*
+ * Lane.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.task)
+ */
+/**
+ * The lanes of an {@link ImageLoaderQueue}, from the highest priority to the
+ * lowest. Images in a higher lane are always loaded first, except that a lower
+ * lane that has waited too long gets a turn now and then.
+ */
+public enum Lane {
+
+	/** The image the user is looking at in full screen. */
+	FULLSCREEN,
+
+	/** Icons that can be seen in the grid. */
+	VISIBLE,
+
+	/** Icons and images the user will probably look at next. */
+	PREFETCH,
+
+	/** Work the user isn't waiting for, like refreshing icons that are showing. */
+	BACKGROUND
+}
@@ -0,0 +1,236 @@
+package net.dean.ljgm.task;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*
+ * LaneScheduler.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.task)
+ */
+/**
+ * This class is a queue with a {@link Lane} for every priority. The highest
+ * lane that isn't empty is served first. So lower lanes can't starve, every
+ * time one is passed over it ages, and once it has been passed over
+ * {@link #AGING_LIMIT} times it is served once.<br>
+ * <br>
+ * An item that is queued already can be moved to a higher lane with
+ * {@link #promote(Object, Lane)}, for instance once it scrolls into view.
+ * Promoting doesn't search the lower lane; the old entry is left behind and
+ * skipped when it comes up. The same goes for items that are demoted with
+ * {@link #demote(Object, Lane)} or taken out with {@link #remove(Object)}.
+ * 
+ * @param <T>
+ *            The type of the items
+ */
+public class LaneScheduler<T> {
+
+	/** How many times a lane can be passed over before it is served. */
+	private static final int AGING_LIMIT = 8;
+
+	/** The entries of every lane, in the order of {@link Lane}. */
+	private final Deque<Entry<T>>[] lanes;
+
+	/** How many times every lane has been passed over since it was served. */
+	private final int[] waits;
+
+	/** The lane every queued item is in. Items are compared by identity. */
+	private final Map<T, Lane> queued;
+
+	/**
+	 * Instantiates a new, empty LaneScheduler.
+	 */
+	@SuppressWarnings("unchecked")
+	public LaneScheduler() {
+		this.lanes = new Deque[Lane.values().length];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new ArrayDeque<>();
+		}
+		this.waits = new int[lanes.length];
+		this.queued = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Queues an item. If it is queued already, it is promoted instead.
+	 * 
+	 * @param item
+	 *            The item
+	 * @param lane
+	 *            The lane to put it in
+	 * @return True if the item was not queued already
+	 */
+	public synchronized boolean add(T item, Lane lane) {
+		boolean added = !queued.containsKey(item);
+		promote(item, lane, added);
+		return added;
+	}
+
+	/**
+	 * Moves a queued item to a higher lane. Nothing happens if the item isn't
+	 * queued or is in that lane or a higher one already.
+	 * 
+	 * @param item
+	 *            The item
+	 * @param lane
+	 *            The lane to move it to
+	 */
+	public synchronized void promote(T item, Lane lane) {
+		promote(item, lane, false);
+	}
+
+	/**
+	 * Moves a queued item to a lower lane, for instance once it isn't shown
+	 * anymore. Nothing happens if the item isn't queued or is in that lane or
+	 * a lower one already.
+	 * 
+	 * @param item
+	 *            The item
+	 * @param lane
+	 *            The lane to move it to
+	 */
+	public synchronized void demote(T item, Lane lane) {
+		Lane current = queued.get(item);
+		if (current == null || current.ordinal() >= lane.ordinal()) {
+			return;
+		}
+		queued.put(item, lane);
+		lanes[lane.ordinal()].add(new Entry<>(item, lane));
+	}
+
+	/**
+	 * Takes an item out of the queue.
+	 * 
+	 * @param item
+	 *            The item
+	 * @return True if the item was queued
+	 */
+	public synchronized boolean remove(T item) {
+		return queued.remove(item) != null;
+	}
+
+	/**
+	 * Puts an item in a lane if it is higher than its current one.
+	 * 
+	 * @param item
+	 *            The item
+	 * @param lane
+	 *            The lane
+	 * @param add
+	 *            True to add the item if it isn't queued
+	 */
+	private void promote(T item, Lane lane, boolean add) {
+		Lane current = queued.get(item);
+		if (current == null ? !add : current.ordinal() <= lane.ordinal()) {
+			return;
+		}
+		queued.put(item, lane);
+		lanes[lane.ordinal()].add(new Entry<>(item, lane));
+	}
+
+	/**
+	 * Takes the next item.
+	 * 
+	 * @return The entry of the next item, or <code>null</code> if there are
+	 *         none
+	 */
+	public synchronized Entry<T> poll() {
+		int highest = -1;
+		int aged = -1;
+		for (int i = 0; i < lanes.length; i++) {
+			if (!hasNext(i)) {
+				continue;
+			}
+
+			if (highest < 0) {
+				highest = i;
+			} else if (++waits[i] >= AGING_LIMIT && (aged < 0 || waits[i] > waits[aged])) {
+				aged = i;
+			}
+		}
+
+		if (highest < 0) {
+			return null;
+		}
+
+		int lane = aged < 0 ? highest : aged;
+		waits[lane] = 0;
+		Entry<T> entry = lanes[lane].poll();
+		queued.remove(entry.item);
+		return entry;
+	}
+
+	/**
+	 * Checks if a lane has an entry that is still wanted, dropping the entries
+	 * of items that were promoted away from it.
+	 * 
+	 * @param lane
+	 *            The index of the lane
+	 * @return True if the head of the lane is an item that is queued in it
+	 */
+	private boolean hasNext(int lane) {
+		Deque<Entry<T>> entries = lanes[lane];
+		Entry<T> head;
+		while ((head = entries.peek()) != null && queued.get(head.item) != head.lane) {
+			entries.poll();
+		}
+		return head != null;
+	}
+
+	/**
+	 * Removes every item.
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i].clear();
+			waits[i] = 0;
+		}
+		queued.clear();
+	}
+
+	/**
+	 * Checks if no items are queued.
+	 * 
+	 * @return True, if it is empty
+	 */
+	public synchronized boolean isEmpty() {
+		return queued.isEmpty();
+	}
+
+	/**
+	 * An item that was taken from a LaneScheduler and the lane it was in.
+	 * 
+	 * @param <T>
+	 *            The type of the item
+	 */
+	public static class Entry<T> {
+
+		/** The item. */
+		private final T item;
+
+		/** The lane the item was in. */
+		private final Lane lane;
+
+		/**
+		 * Instantiates a new Entry.
+		 * 
+		 * @param item
+		 *            The item
+		 * @param lane
+		 *            The lane the item is in
+		 */
+		private Entry(T item, Lane lane) {
+			this.item = item;
+			this.lane = lane;
+		}
+
+		public T getItem() {
+			return item;
+		}
+
+		public Lane getLane() {
+			return lane;
+		}
+	}
+}
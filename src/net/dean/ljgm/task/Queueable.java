@@ -2,7 +2,7 @@ package net.dean.ljgm.task;
 
 import java.io.File;
 
-import net.dean.gui.fx.ImageWithFile;
+import javafx.scene.image.Image;
 
 // TODO: Auto-generated Javadoc
 /*
@@ -22,7 +22,7 @@ public interface Queueable {
 	 *
 	 * @param img the img
 	 */
-	public abstract void onLoaded(ImageWithFile img);
+	public abstract void onLoaded(Image img);
 	
 	/**
 	 * Gets the image file.
@@ -30,4 +30,11 @@ public interface Queueable {
 	 * @return the image file
 	 */
 	public abstract File getImageFile();
+
+	/**
+	 * Checks if the image is loaded at its full size instead of as an icon.
+	 * 
+	 * @return True, if the full image is needed
+	 */
+	public abstract boolean isFullSize();
 }
@@ -0,0 +1,159 @@
+package net.dean.ljgm.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * SingleFlight.java
+ *
+ * Part of project LJGM (Lightweight Java Gallery Manager) (net.dean.ljgm.task)
+ */
+/**
+ * This class makes sure that only one thread computes the value of a key at a
+ * time. The first thread to {@link #join(Object, Callback)} a key leads, and
+ * has to call {@link #complete(Object, Object)} once it has the value. Threads
+ * that join the key in the meantime don't compute it again or wait for it.
+ * Their callbacks are called with the leader's value instead.
+ * 
+ * @param <K>
+ *            The type of the keys
+ * @param <V>
+ *            The type of the values
+ */
+public class SingleFlight<K, V> {
+
+	/** The keys that are being computed. */
+	private final ConcurrentHashMap<K, Flight<V>> flights;
+
+	/**
+	 * Instantiates a new SingleFlight.
+	 */
+	public SingleFlight() {
+		this.flights = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Joins the computation of a key.
+	 * 
+	 * @param key
+	 *            The key
+	 * @param callback
+	 *            What to call with the value if another thread is already
+	 *            computing it
+	 * @return True if the calling thread leads and has to compute the value.
+	 *         False if the callback will be called by the leader.
+	 */
+	public boolean join(K key, Callback<V> callback) {
+		while (true) {
+			Flight<V> flight = flights.get(key);
+			if (flight == null) {
+				if (flights.putIfAbsent(key, new Flight<V>()) == null) {
+					return true;
+				}
+				continue;
+			}
+
+			synchronized (flight) {
+				if (!flight.done) {
+					flight.callbacks.add(callback);
+					return false;
+				}
+			}
+			// The flight ended before the callback could be added, so try again
+		}
+	}
+
+	/**
+	 * Ends the computation of a key and calls the callbacks of the threads
+	 * that joined it, on the calling thread.
+	 * 
+	 * @param key
+	 *            The key
+	 * @param value
+	 *            The value
+	 */
+	public void complete(K key, V value) {
+		Flight<V> flight = flights.get(key);
+		if (flight == null) {
+			return;
+		}
+
+		List<Callback<V>> callbacks;
+		synchronized (flight) {
+			flight.done = true;
+			flights.remove(key, flight);
+			callbacks = flight.callbacks;
+		}
+
+		for (Callback<V> callback : callbacks) {
+			callback.done(value);
+		}
+	}
+
+	/**
+	 * Ends the computation of a key without a value, but only if no other
+	 * thread has joined it.
+	 * 
+	 * @param key
+	 *            The key
+	 * @return True if the computation was ended. False if other threads are
+	 *         waiting for the value, so the leader has to compute it anyway.
+	 */
+	public boolean abandon(K key) {
+		Flight<V> flight = flights.get(key);
+		if (flight == null) {
+			return true;
+		}
+
+		synchronized (flight) {
+			if (!flight.callbacks.isEmpty()) {
+				return false;
+			}
+			flight.done = true;
+			flights.remove(key, flight);
+			return true;
+		}
+	}
+
+	/**
+	 * Gets the amount of keys that are being computed.
+	 * 
+	 * @return The amount of keys
+	 */
+	public int size() {
+		return flights.size();
+	}
+
+	/**
+	 * Called with the value of a key another thread has computed.
+	 * 
+	 * @param <V>
+	 *            The type of the value
+	 */
+	public interface Callback<V> {
+
+		/**
+		 * Called by the leader once it has the value.
+		 * 
+		 * @param value
+		 *            The value
+		 */
+		void done(V value);
+	}
+
+	/**
+	 * A key that is being computed.
+	 * 
+	 * @param <V>
+	 *            The type of the value
+	 */
+	private static class Flight<V> {
+
+		/** The callbacks of the threads that joined. */
+		private final List<Callback<V>> callbacks = new ArrayList<>();
+
+		/** True once the value has been handed out. */
+		private boolean done;
+	}
+}